@@ -1,7 +1,9 @@
 package com.consistency.annotation;
 
 import com.consistency.enums.PerformanceEnum;
+import com.consistency.enums.TaskPriorityEnum;
 import com.consistency.enums.ThreadWayEnum;
+import com.consistency.enums.TransactionModeEnum;
 
 import java.lang.annotation.*;
 
@@ -70,4 +72,67 @@ public @interface ConsistencyTask {
      * @return 线程模型
      */
     ThreadWayEnum threadWay() default ThreadWayEnum.ASYNC;
+
+    /**
+     * 幂等键的SpEL表达式 基于方法入参计算，如 #orderInfo.orderId 或者 #p0.orderId
+     * 相同任务的幂等键相同时，只会保存一个任务，重复提交的任务会被直接丢弃
+     *
+     * @return 幂等键的SpEL表达式
+     */
+    String idempotentKey() default "";
+
+    /**
+     * 任务所属的隔离舱名称 需要在tend.consistency.bulkheads中配置，不同隔离舱的任务使用各自独立的执行线程和待执行队列
+     * 不指定时使用默认的任务执行线程池
+     *
+     * @return 隔离舱名称
+     */
+    String bulkhead() default "";
+
+    /**
+     * 任务方法的执行超时时间 单位毫秒 超时后执行线程会被中断，任务按照执行失败处理并进入正常的重试流程
+     * 不指定(0)时使用tend.consistency.execution-timeout.default-timeout-ms
+     *
+     * @return 执行超时时间
+     */
+    long timeoutMs() default 0L;
+
+    /**
+     * 任务执行失败后的重试策略id 内置的有fixed、linear、exponential、full-jitter、exponential-jitter
+     * 也可以是业务服务自定义的RetryPolicy的id 不指定时使用tend.consistency.retry.default-policy
+     *
+     * @return 重试策略id
+     */
+    String retryPolicy() default "";
+
+    /**
+     * 任务最多执行的次数 达到该次数后仍然失败的任务不再重试，会执行降级逻辑并停止调度
+     * 不指定(0)时使用tend.consistency.retry.max-attempts
+     *
+     * @return 最多执行的次数
+     */
+    int maxAttempts() default 0;
+
+    /**
+     * 任务每秒最多执行的次数(单个实例) 用于调用有QPS配额的第三方接口的任务 超过限流的任务等待令牌而不是执行后失败重试
+     * 不指定(0)时不限流 tend.consistency.rate-limit.limits中按照taskId配置的限流优先
+     *
+     * @return 每秒最多执行的次数
+     */
+    double rateLimit() default 0D;
+
+    /**
+     * 任务的优先级 调度器优先查询高优先级的任务，分发器按照各优先级的权重轮流分发，任务积压时高优先级的任务仍然可以及时执行
+     *
+     * @return 任务的优先级
+     */
+    TaskPriorityEnum priority() default TaskPriorityEnum.NORMAL;
+
+    /**
+     * 执行任务时的事务模式 默认加入当前事务，任务方法中的数据库操作与标记任务成功在同一个事务中提交
+     * 只调用远程接口的任务可以使用NONE，执行期间不会占用数据库连接
+     *
+     * @return 事务模式
+     */
+    TransactionModeEnum transactionMode() default TransactionModeEnum.REQUIRED;
 }
@@ -26,5 +26,10 @@ public class ShardModeConfigProperties {
      * 生成任务表分片key的ClassName 这里要配置类型全路径且类要实现com.consistency.custom.shard.ShardingKeyGenerator接口
      */
     private String shardingKeyGeneratorClassName = "";
+    /**
+     * 框架自带的雪花算法分片键生成器的序列号分段数 必须是2的N次幂且不超过64 1表示不分段
+     * 分段后每个线程使用各自的序列号子空间，高并发生成分片键时彼此之间没有竞争，但每个分段每毫秒可用的序列号也会相应减少
+     */
+    private Integer snowflakeStripes = 1;
 
 }
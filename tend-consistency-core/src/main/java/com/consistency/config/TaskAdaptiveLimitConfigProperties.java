@@ -0,0 +1,42 @@
+package com.consistency.config;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * 任务执行自适应并发限制相关的配置
+ *
+ * @author xiayang
+ **/
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@ConfigurationProperties(prefix = "tend.consistency.adaptive-limit")
+public class TaskAdaptiveLimitConfigProperties {
+
+    /**
+     * 是否开启自适应并发限制 开启后每个隔离舱同时执行的任务数根据任务的执行耗时和失败情况自动调整，上限为隔离舱的执行线程数
+     */
+    public Boolean enabled = false;
+    /**
+     * 并发数的下限
+     */
+    public Integer minLimit = 1;
+    /**
+     * 初始的并发数 不能超过执行线程数
+     */
+    public Integer initialLimit = 4;
+    /**
+     * 任务执行失败或者超时时 并发数乘以该比例 取值范围(0,1)
+     */
+    public Double backoffRatio = 0.9;
+    /**
+     * [单位毫秒] 任务执行耗时超过该值时 视为下游过载 与执行失败一样减小并发数
+     */
+    public Integer latencyThresholdMillis = 5000;
+
+}
@@ -0,0 +1,54 @@
+package com.consistency.config;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 任务隔离舱相关的配置 每个隔离舱有独立的执行线程和待执行队列
+ *
+ * @author xiayang
+ **/
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@ConfigurationProperties(prefix = "tend.consistency")
+public class TaskBulkheadConfigProperties {
+
+    /**
+     * 隔离舱配置 key为隔离舱名称 对应@ConsistencyTask注解中的bulkhead 如：tend.consistency.bulkheads.sms.max-concurrency=3
+     */
+    public Map<String, Bulkhead> bulkheads = new LinkedHashMap<>();
+
+    /**
+     * 单个隔离舱的配置
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Bulkhead {
+
+        /**
+         * 隔离舱同时执行的最大任务数
+         */
+        public Integer maxConcurrency = 5;
+        /**
+         * 隔离舱待执行队列的大小
+         */
+        public Integer queueSize = 100;
+        /**
+         * 归属于该隔离舱的taskId 用于没有在注解中指定bulkhead的任务
+         */
+        public List<String> taskIds = new ArrayList<>();
+
+    }
+
+}
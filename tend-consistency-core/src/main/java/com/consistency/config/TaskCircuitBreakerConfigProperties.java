@@ -0,0 +1,38 @@
+package com.consistency.config;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * 任务熔断相关的配置
+ *
+ * @author xiayang
+ **/
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@ConfigurationProperties(prefix = "tend.consistency.circuit-breaker")
+public class TaskCircuitBreakerConfigProperties {
+
+    /**
+     * 是否开启任务熔断 开启后同一个任务方法连续失败达到阈值时熔断，熔断期间到期的任务不再执行，而是用一条语句批量推迟执行时间
+     */
+    public Boolean enabled = false;
+    /**
+     * 连续失败多少次后熔断
+     */
+    public Integer failureThreshold = 5;
+    /**
+     * [单位秒] 熔断的持续时间 到期后进入半开状态放行探测任务 探测成功后恢复 失败后再次熔断
+     */
+    public Integer openSeconds = 30;
+    /**
+     * 半开状态下每个熔断周期放行的探测任务数
+     */
+    public Integer halfOpenProbes = 1;
+
+}
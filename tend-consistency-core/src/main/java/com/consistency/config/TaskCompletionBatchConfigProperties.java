@@ -0,0 +1,34 @@
+package com.consistency.config;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * 任务执行结果批量写入相关的配置
+ *
+ * @author xiayang
+ **/
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@ConfigurationProperties(prefix = "tend.consistency.completion-batch")
+public class TaskCompletionBatchConfigProperties {
+
+    /**
+     * 是否开启任务执行结果的批量写入 开启后执行成功的删除和执行失败的更新会在几毫秒内合并为一条语句写入任务表
+     */
+    public Boolean enabled = false;
+    /**
+     * 一次批量写入最多合并的任务条数
+     */
+    public Integer maxBatchSize = 200;
+    /**
+     * [单位毫秒] 一次批量写入最多等待多长时间
+     */
+    public Integer maxWaitMillis = 5;
+
+}
@@ -0,0 +1,34 @@
+package com.consistency.config;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * 任务执行超时相关的配置
+ *
+ * @author xiayang
+ **/
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@ConfigurationProperties(prefix = "tend.consistency.execution-timeout")
+public class TaskExecutionTimeoutConfigProperties {
+
+    /**
+     * [单位毫秒] 任务方法默认的执行超时时间 注解中没有指定timeoutMs时使用 0表示不限制
+     */
+    public Long defaultTimeoutMs = 0L;
+    /**
+     * [单位毫秒] 超时中断后 任务方法仍然没有返回时 再等待多长时间放弃该次执行 放弃后任务按照执行失败记录，执行线程的并发名额被归还
+     */
+    public Long abandonAfterMs = 5000L;
+    /**
+     * [单位毫秒] 看门狗检查超时任务的间隔
+     */
+    public Long checkIntervalMs = 100L;
+
+}
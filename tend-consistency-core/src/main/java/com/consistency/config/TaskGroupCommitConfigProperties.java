@@ -0,0 +1,38 @@
+package com.consistency.config;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * 任务初始化组提交相关的配置
+ *
+ * @author xiayang
+ **/
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@ConfigurationProperties(prefix = "tend.consistency.group-commit")
+public class TaskGroupCommitConfigProperties {
+
+    /**
+     * 是否开启任务初始化的组提交模式 开启后并发调用方的任务会被合并为一条多行INSERT写入任务表
+     */
+    public Boolean enabled = false;
+    /**
+     * 一次组提交最多合并的任务条数
+     */
+    public Integer maxBatchSize = 100;
+    /**
+     * [单位毫秒] 一次组提交最多等待多长时间
+     */
+    public Integer maxWaitMillis = 5;
+    /**
+     * [单位毫秒] 调用方等待组提交结果的最长时间 超时后改为单条写入任务表
+     */
+    public Integer maxBlockMillis = 1000;
+
+}
@@ -0,0 +1,30 @@
+package com.consistency.config;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * 任务幂等相关的配置
+ *
+ * @author xiayang
+ **/
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@ConfigurationProperties(prefix = "tend.consistency.idempotent")
+public class TaskIdempotentConfigProperties {
+
+    /**
+     * 本地缓存最近提交过的幂等键的个数 命中缓存的重复任务不需要访问数据库即可丢弃
+     */
+    public Integer cacheSize = 10000;
+    /**
+     * [单位秒] 幂等键在本地缓存中的保留时间
+     */
+    public Integer cacheExpireSeconds = 600;
+
+}
@@ -0,0 +1,26 @@
+package com.consistency.config;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * 任务租约相关的配置
+ *
+ * @author xiayang
+ **/
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@ConfigurationProperties(prefix = "tend.consistency.lease")
+public class TaskLeaseConfigProperties {
+
+    /**
+     * [单位秒] 任务租约的时长 执行任务前节点会领取租约，租约有效期内其他节点和其他途径不能再领取该任务，应大于任务的最长执行时间
+     */
+    public Integer leaseSeconds = 300;
+
+}
@@ -0,0 +1,34 @@
+package com.consistency.config;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * 立即执行任务的本地优先模式相关的配置
+ *
+ * @author xiayang
+ **/
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@ConfigurationProperties(prefix = "tend.consistency.local-first")
+public class TaskLocalFirstConfigProperties {
+
+    /**
+     * 是否开启本地优先模式 开启后立即执行的任务先保存到RocksDB中，只有执行失败或者超时未确认时才写入任务表
+     */
+    public Boolean enabled = false;
+    /**
+     * [单位秒] 任务保存到本地后超过该时间仍未执行成功，则转存到任务表中由调度器执行
+     */
+    public Integer ackDeadlineSeconds = 30;
+    /**
+     * 保存到RocksDB后是否同步刷盘 不刷盘时只能保证进程崩溃后任务不丢失，机器宕机时可能丢失
+     */
+    public Boolean syncWrite = false;
+
+}
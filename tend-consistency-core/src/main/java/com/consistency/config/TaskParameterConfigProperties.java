@@ -0,0 +1,34 @@
+package com.consistency.config;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * 任务参数存储相关的配置
+ *
+ * @author xiayang
+ **/
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@ConfigurationProperties(prefix = "tend.consistency.parameter")
+public class TaskParameterConfigProperties {
+
+    /**
+     * 编码任务参数时使用的编解码器id 框架内置的有 binary、json 自定义的编解码器需要实现com.consistency.custom.codec.TaskParameterCodec接口
+     */
+    public String codec = "binary";
+    /**
+     * 编码后的任务参数超过该长度时进行压缩 小于等于0表示不压缩
+     */
+    public Integer compressThreshold = 128;
+    /**
+     * 压缩后的任务参数仍超过该长度时存储到tend_consistency_task_payload溢出表中 不能超过任务表task_parameter字段的长度 小于等于0表示不使用溢出表
+     */
+    public Integer overflowThreshold = 200;
+
+}
@@ -0,0 +1,34 @@
+package com.consistency.config;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * 任务优先级相关的配置
+ *
+ * @author xiayang
+ **/
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@ConfigurationProperties(prefix = "tend.consistency.priority")
+public class TaskPriorityConfigProperties {
+
+    /**
+     * 高优先级任务的分发权重 待执行队列中有多个优先级的任务时 按照权重的比例轮流分发
+     */
+    public Integer highWeight = 6;
+    /**
+     * 普通优先级任务的分发权重
+     */
+    public Integer normalWeight = 3;
+    /**
+     * 低优先级任务的分发权重
+     */
+    public Integer lowWeight = 1;
+
+}
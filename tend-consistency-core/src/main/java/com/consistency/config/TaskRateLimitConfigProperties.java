@@ -0,0 +1,33 @@
+package com.consistency.config;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 任务限流相关的配置
+ *
+ * @author xiayang
+ **/
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@ConfigurationProperties(prefix = "tend.consistency.rate-limit")
+public class TaskRateLimitConfigProperties {
+
+    /**
+     * 各个任务每秒最多执行的次数 key为taskId 优先于注解中的rateLimit 限流是针对单个实例的
+     */
+    public Map<String, Double> limits = new LinkedHashMap<>();
+    /**
+     * [单位毫秒] 超过限流的任务在内存中等待的最长时间 需要等待更久的任务推迟到下一个可以执行的时间，由调度器重新查询执行
+     */
+    public Long maxWaitMillis = 1000L;
+
+}
@@ -0,0 +1,34 @@
+package com.consistency.config;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * 任务重试策略相关的配置
+ *
+ * @author xiayang
+ **/
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@ConfigurationProperties(prefix = "tend.consistency.retry")
+public class TaskRetryConfigProperties {
+
+    /**
+     * 默认的重试策略id 注解中没有指定retryPolicy时使用
+     */
+    public String defaultPolicy = "linear";
+    /**
+     * [单位秒] 重试间隔的上限 重试策略计算出的间隔超过该值时按照该值重试 0表示不限制
+     */
+    public Integer maxDelaySec = 3600;
+    /**
+     * 任务默认最多执行的次数 注解中没有指定maxAttempts时使用 0表示不限制
+     */
+    public Integer maxAttempts = 0;
+
+}
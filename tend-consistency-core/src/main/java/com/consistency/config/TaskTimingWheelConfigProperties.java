@@ -0,0 +1,42 @@
+package com.consistency.config;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * 调度任务时间轮相关的配置
+ *
+ * @author xiayang
+ **/
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@ConfigurationProperties(prefix = "tend.consistency.timing-wheel")
+public class TaskTimingWheelConfigProperties {
+
+    /**
+     * 是否开启时间轮 开启后即将到期的调度任务会放入时间轮中，到达执行时间后立即执行，不再等待下一次调度
+     */
+    public Boolean enabled = false;
+    /**
+     * [单位毫秒] 时间轮每一格的时间跨度 即任务执行时间的精度
+     */
+    public Integer tickMillis = 10;
+    /**
+     * 时间轮的格数 会向上取整为2的N次幂
+     */
+    public Integer wheelSize = 512;
+    /**
+     * [单位秒] 执行时间在该时间范围内的任务才会放入时间轮
+     */
+    public Integer horizonSeconds = 300;
+    /**
+     * 时间轮中最多保存的任务数 超出后由调度器按照原有方式查询执行
+     */
+    public Integer maxPendingTasks = 10000;
+
+}
@@ -4,6 +4,9 @@ import cn.hutool.core.util.NumberUtil;
 import cn.hutool.core.util.ObjectUtil;
 import com.consistency.custom.query.TaskTimeRangeQuery;
 import com.consistency.custom.shard.ShardingKeyGenerator;
+import com.consistency.custom.shard.SnowflakeShardingKeyGenerator;
+import com.consistency.enums.ExecutorModeEnum;
+import com.consistency.enums.OverloadPolicyEnum;
 import com.consistency.exceptions.ConsistencyException;
 import com.consistency.utils.ReflectTools;
 import lombok.extern.slf4j.Slf4j;
@@ -17,7 +20,9 @@ import org.springframework.util.StringUtils;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
@@ -37,7 +42,21 @@ import static com.consistency.utils.DefaultValueUtils.getOrDefault;
         SchedulerConfigProperties.class,
         ShardModeConfigProperties.class,
         PeerNodeConfigProperties.class,
-        RocksDBConfigProperties.class
+        RocksDBConfigProperties.class,
+        TaskGroupCommitConfigProperties.class,
+        TaskParameterConfigProperties.class,
+        TaskIdempotentConfigProperties.class,
+        TaskLocalFirstConfigProperties.class,
+        TaskTimingWheelConfigProperties.class,
+        TaskBulkheadConfigProperties.class,
+        TaskAdaptiveLimitConfigProperties.class,
+        TaskCompletionBatchConfigProperties.class,
+        TaskLeaseConfigProperties.class,
+        TaskExecutionTimeoutConfigProperties.class,
+        TaskRetryConfigProperties.class,
+        TaskCircuitBreakerConfigProperties.class,
+        TaskRateLimitConfigProperties.class,
+        TaskPriorityConfigProperties.class
 })
 public class TendConsistencyAutoConfiguration {
 
@@ -76,6 +95,76 @@ public class TendConsistencyAutoConfiguration {
      */
     @Autowired
     private SchedulerConfigProperties schedulerConfigProperties;
+    /**
+     * 任务初始化组提交相关的配置
+     */
+    @Autowired
+    private TaskGroupCommitConfigProperties taskGroupCommitConfigProperties;
+    /**
+     * 任务参数存储相关的配置
+     */
+    @Autowired
+    private TaskParameterConfigProperties taskParameterConfigProperties;
+    /**
+     * 任务幂等相关的配置
+     */
+    @Autowired
+    private TaskIdempotentConfigProperties taskIdempotentConfigProperties;
+    /**
+     * 本地优先模式相关的配置
+     */
+    @Autowired
+    private TaskLocalFirstConfigProperties taskLocalFirstConfigProperties;
+    /**
+     * 调度任务时间轮相关的配置
+     */
+    @Autowired
+    private TaskTimingWheelConfigProperties taskTimingWheelConfigProperties;
+    /**
+     * 任务隔离舱相关的配置
+     */
+    @Autowired
+    private TaskBulkheadConfigProperties taskBulkheadConfigProperties;
+    /**
+     * 任务执行自适应并发限制相关的配置
+     */
+    @Autowired
+    private TaskAdaptiveLimitConfigProperties taskAdaptiveLimitConfigProperties;
+    /**
+     * 任务执行结果批量写入相关的配置
+     */
+    @Autowired
+    private TaskCompletionBatchConfigProperties taskCompletionBatchConfigProperties;
+    /**
+     * 任务租约相关的配置
+     */
+    @Autowired
+    private TaskLeaseConfigProperties taskLeaseConfigProperties;
+    /**
+     * 任务执行超时相关的配置
+     */
+    @Autowired
+    private TaskExecutionTimeoutConfigProperties taskExecutionTimeoutConfigProperties;
+    /**
+     * 任务重试策略相关的配置
+     */
+    @Autowired
+    private TaskRetryConfigProperties taskRetryConfigProperties;
+    /**
+     * 任务熔断相关的配置
+     */
+    @Autowired
+    private TaskCircuitBreakerConfigProperties taskCircuitBreakerConfigProperties;
+    /**
+     * 任务限流相关的配置
+     */
+    @Autowired
+    private TaskRateLimitConfigProperties taskRateLimitConfigProperties;
+    /**
+     * 任务优先级相关的配置
+     */
+    @Autowired
+    private TaskPriorityConfigProperties taskPriorityConfigProperties;
 
     /**
      *
@@ -98,10 +187,22 @@ public class TendConsistencyAutoConfiguration {
                 .threadPoolQueueSize(getOrDefault(consistencyParallelTaskConfigProperties.getThreadPoolQueueSize(), 100))
                 .threadPoolKeepAliveTime(getOrDefault(consistencyParallelTaskConfigProperties.getThreadPoolKeepAliveTime(), 60L))
                 .threadPoolKeepAliveTimeUnit(getOrDefault(consistencyParallelTaskConfigProperties.getThreadPoolKeepAliveTimeUnit(), "SECONDS"))
+                .threadPoolMode(getOrDefault(consistencyParallelTaskConfigProperties.getMode(), ExecutorModeEnum.PLATFORM.getCode()))
+                .virtualMaxConcurrency(getOrDefault(consistencyParallelTaskConfigProperties.getVirtualMaxConcurrency(), 1000))
+                .submitThreadPoolSize(getOrDefault(consistencyParallelTaskConfigProperties.getSubmitThreadPoolSize(), 8))
+                .submitThreadPoolQueueSize(getOrDefault(consistencyParallelTaskConfigProperties.getSubmitThreadPoolQueueSize(), 10000))
+                .submitWatchTimeoutSeconds(getOrDefault(consistencyParallelTaskConfigProperties.getWatchTimeoutSeconds(), 600))
+                .submitMaxWatchedTasks(getOrDefault(consistencyParallelTaskConfigProperties.getMaxWatchedTasks(), 10000))
+                .readyQueueSize(getOrDefault(consistencyParallelTaskConfigProperties.getReadyQueueSize(), 200))
+                .readyQueueLowWaterMark(getOrDefault(consistencyParallelTaskConfigProperties.getReadyQueueLowWaterMark(), 50))
+                .overloadPolicy(getOrDefault(consistencyParallelTaskConfigProperties.getOverloadPolicy(), OverloadPolicyEnum.DEFER.getCode()))
+                .overflowQueueSize(getOrDefault(consistencyParallelTaskConfigProperties.getOverflowQueueSize(), 1000))
+                .callerRunsWaitMillis(getOrDefault(consistencyParallelTaskConfigProperties.getCallerRunsWaitMillis(), 100L))
                 .taskScheduleTimeRangeClassName(getOrDefault(consistencyParallelTaskConfigProperties.getTaskScheduleTimeRangeClassName(), ""))
                 .failCountThreshold(getOrDefault(tendConsistencyFallbackConfigProperties.getFailCountThreshold(), 2))
                 .taskSharded(getOrDefault(shardModeConfigProperties.getTaskSharded(), false))
                 .shardingKeyGeneratorClassName(getOrDefault(shardModeConfigProperties.getShardingKeyGeneratorClassName(), ""))
+                .snowflakeStripes(getOrDefault(shardModeConfigProperties.getSnowflakeStripes(), 1))
                 .peersConfig(peerNodeConfigProperties.getPeersConfig())
                 .taskShardingCount(getTaskShardingCountOrDefault(taskExecuteEngineConfigProperties))
                 .rocksPath(getOrCreate(rocksDBConfigProperties.rocksPath))
@@ -112,6 +213,48 @@ public class TendConsistencyAutoConfiguration {
                 .leaderToFollowerHeartbeatIntervalSeconds(getOrDefault(schedulerConfigProperties.getLeaderToFollowerHeartbeatIntervalSeconds(), 10))
                 .judgeFollowerDownSecondsThreshold(getOrDefault(schedulerConfigProperties.getJudgeFollowerDownSecondsThreshold(), 120))
                 .judgeLeaderDownSecondsThreshold(getOrDefault(schedulerConfigProperties.getJudgeLeaderDownSecondsThreshold(), 120))
+                .groupCommitEnabled(getOrDefault(taskGroupCommitConfigProperties.getEnabled(), false))
+                .groupCommitMaxBatchSize(getOrDefault(taskGroupCommitConfigProperties.getMaxBatchSize(), 100))
+                .groupCommitMaxWaitMillis(getOrDefault(taskGroupCommitConfigProperties.getMaxWaitMillis(), 5))
+                .groupCommitMaxBlockMillis(getOrDefault(taskGroupCommitConfigProperties.getMaxBlockMillis(), 1000))
+                .parameterCodec(getOrDefault(taskParameterConfigProperties.getCodec(), "binary"))
+                .parameterCompressThreshold(getOrDefault(taskParameterConfigProperties.getCompressThreshold(), 128))
+                .parameterOverflowThreshold(getOrDefault(taskParameterConfigProperties.getOverflowThreshold(), 200))
+                .idempotentCacheSize(getOrDefault(taskIdempotentConfigProperties.getCacheSize(), 10000))
+                .idempotentCacheExpireSeconds(getOrDefault(taskIdempotentConfigProperties.getCacheExpireSeconds(), 600))
+                .localFirstEnabled(getOrDefault(taskLocalFirstConfigProperties.getEnabled(), false))
+                .localFirstAckDeadlineSeconds(getOrDefault(taskLocalFirstConfigProperties.getAckDeadlineSeconds(), 30))
+                .localFirstSyncWrite(getOrDefault(taskLocalFirstConfigProperties.getSyncWrite(), false))
+                .timingWheelEnabled(getOrDefault(taskTimingWheelConfigProperties.getEnabled(), false))
+                .timingWheelTickMillis(getOrDefault(taskTimingWheelConfigProperties.getTickMillis(), 10))
+                .timingWheelSize(getOrDefault(taskTimingWheelConfigProperties.getWheelSize(), 512))
+                .timingWheelHorizonSeconds(getOrDefault(taskTimingWheelConfigProperties.getHorizonSeconds(), 300))
+                .timingWheelMaxPendingTasks(getOrDefault(taskTimingWheelConfigProperties.getMaxPendingTasks(), 10000))
+                .bulkheads(getOrDefault(taskBulkheadConfigProperties.getBulkheads(), new LinkedHashMap<>()))
+                .adaptiveLimitEnabled(getOrDefault(taskAdaptiveLimitConfigProperties.getEnabled(), false))
+                .adaptiveLimitMinLimit(getOrDefault(taskAdaptiveLimitConfigProperties.getMinLimit(), 1))
+                .adaptiveLimitInitialLimit(getOrDefault(taskAdaptiveLimitConfigProperties.getInitialLimit(), 4))
+                .adaptiveLimitBackoffRatio(getOrDefault(taskAdaptiveLimitConfigProperties.getBackoffRatio(), 0.9))
+                .adaptiveLimitLatencyThresholdMillis(getOrDefault(taskAdaptiveLimitConfigProperties.getLatencyThresholdMillis(), 5000))
+                .completionBatchEnabled(getOrDefault(taskCompletionBatchConfigProperties.getEnabled(), false))
+                .completionBatchMaxBatchSize(getOrDefault(taskCompletionBatchConfigProperties.getMaxBatchSize(), 200))
+                .completionBatchMaxWaitMillis(getOrDefault(taskCompletionBatchConfigProperties.getMaxWaitMillis(), 5))
+                .leaseSeconds(getOrDefault(taskLeaseConfigProperties.getLeaseSeconds(), 300))
+                .executionDefaultTimeoutMs(getOrDefault(taskExecutionTimeoutConfigProperties.getDefaultTimeoutMs(), 0L))
+                .executionAbandonAfterMs(getOrDefault(taskExecutionTimeoutConfigProperties.getAbandonAfterMs(), 5000L))
+                .executionTimeoutCheckIntervalMs(getOrDefault(taskExecutionTimeoutConfigProperties.getCheckIntervalMs(), 100L))
+                .retryDefaultPolicy(getOrDefault(taskRetryConfigProperties.getDefaultPolicy(), "linear"))
+                .retryMaxDelaySec(getOrDefault(taskRetryConfigProperties.getMaxDelaySec(), 3600))
+                .retryMaxAttempts(getOrDefault(taskRetryConfigProperties.getMaxAttempts(), 0))
+                .circuitBreakerEnabled(getOrDefault(taskCircuitBreakerConfigProperties.getEnabled(), false))
+                .circuitBreakerFailureThreshold(getOrDefault(taskCircuitBreakerConfigProperties.getFailureThreshold(), 5))
+                .circuitBreakerOpenSeconds(getOrDefault(taskCircuitBreakerConfigProperties.getOpenSeconds(), 30))
+                .circuitBreakerHalfOpenProbes(getOrDefault(taskCircuitBreakerConfigProperties.getHalfOpenProbes(), 1))
+                .rateLimits(getOrDefault(taskRateLimitConfigProperties.getLimits(), new LinkedHashMap<>()))
+                .rateLimitMaxWaitMillis(getOrDefault(taskRateLimitConfigProperties.getMaxWaitMillis(), 1000L))
+                .priorityHighWeight(getOrDefault(taskPriorityConfigProperties.getHighWeight(), 6))
+                .priorityNormalWeight(getOrDefault(taskPriorityConfigProperties.getNormalWeight(), 3))
+                .priorityLowWeight(getOrDefault(taskPriorityConfigProperties.getLowWeight(), 1))
                 .build();
     }
 
@@ -152,6 +295,15 @@ public class TendConsistencyAutoConfiguration {
             }
         }
 
+        String mode = consistencyParallelTaskConfigProperties.getMode();
+        if (!StringUtils.isEmpty(mode) && !ExecutorModeEnum.PLATFORM.getCode().equals(mode) && !ExecutorModeEnum.VIRTUAL.getCode().equals(mode)) {
+            throw new ConsistencyException("mode配置错误！注意：请在[platform,virtual]任选其中之一，配置项为：tend.consistency.parallel.pool.mode");
+        }
+        Integer virtualMaxConcurrency = consistencyParallelTaskConfigProperties.getVirtualMaxConcurrency();
+        if (!ObjectUtils.isEmpty(virtualMaxConcurrency) && virtualMaxConcurrency <= 0) {
+            throw new ConsistencyException("virtualMaxConcurrency配置错误！注意：必须大于0，配置项为：tend.consistency.parallel.pool.virtual-max-concurrency");
+        }
+
         if (!StringUtils.isEmpty(consistencyParallelTaskConfigProperties.getTaskScheduleTimeRangeClassName())) {
             // 校验是否存在该类
             Class<?> taskScheduleTimeRangeClass = ReflectTools.checkClassByName(consistencyParallelTaskConfigProperties.getTaskScheduleTimeRangeClassName());
@@ -184,6 +336,101 @@ public class TendConsistencyAutoConfiguration {
             }
         }
 
+        Integer snowflakeStripes = shardModeConfigProperties.getSnowflakeStripes();
+        if (!ObjectUtils.isEmpty(snowflakeStripes) && (snowflakeStripes <= 0
+                || snowflakeStripes > SnowflakeShardingKeyGenerator.MAX_STRIPES || (snowflakeStripes & (snowflakeStripes - 1)) != 0)) {
+            String errMsg = String.format("snowflakeStripes配置错误！注意：必须是2的N次幂且不超过%d，配置项为：tend.consistency.shard.snowflake-stripes",
+                    SnowflakeShardingKeyGenerator.MAX_STRIPES);
+            throw new ConsistencyException(errMsg);
+        }
+
+        Integer watchTimeoutSeconds = consistencyParallelTaskConfigProperties.getWatchTimeoutSeconds();
+        Integer maxWatchedTasks = consistencyParallelTaskConfigProperties.getMaxWatchedTasks();
+        if ((!ObjectUtils.isEmpty(watchTimeoutSeconds) && watchTimeoutSeconds <= 0) || (!ObjectUtils.isEmpty(maxWatchedTasks) && maxWatchedTasks <= 0)) {
+            throw new ConsistencyException("watchTimeoutSeconds和maxWatchedTasks配置错误！注意：必须大于0，" +
+                    "配置项为：tend.consistency.parallel.pool.watch-timeout-seconds和tend.consistency.parallel.pool.max-watched-tasks");
+        }
+
+        Integer readyQueueSize = getOrDefault(consistencyParallelTaskConfigProperties.getReadyQueueSize(), 200);
+        Integer readyQueueLowWaterMark = getOrDefault(consistencyParallelTaskConfigProperties.getReadyQueueLowWaterMark(), 50);
+        if (readyQueueSize <= 0 || readyQueueLowWaterMark < 0 || readyQueueLowWaterMark >= readyQueueSize) {
+            throw new ConsistencyException("readyQueueSize和readyQueueLowWaterMark配置错误！注意：readyQueueSize必须大于0，readyQueueLowWaterMark必须大于等于0且小于readyQueueSize，" +
+                    "配置项为：tend.consistency.parallel.pool.ready-queue-size和tend.consistency.parallel.pool.ready-queue-low-water-mark");
+        }
+
+        Integer groupCommitMaxBlockMillis = taskGroupCommitConfigProperties.getMaxBlockMillis();
+        if (!ObjectUtils.isEmpty(groupCommitMaxBlockMillis) && groupCommitMaxBlockMillis <= 0) {
+            throw new ConsistencyException("maxBlockMillis配置错误！注意：必须大于0，配置项为：tend.consistency.group-commit.max-block-millis");
+        }
+
+        Long checkIntervalMs = taskExecutionTimeoutConfigProperties.getCheckIntervalMs();
+        if (!ObjectUtils.isEmpty(checkIntervalMs) && checkIntervalMs <= 0) {
+            throw new ConsistencyException("checkIntervalMs配置错误！注意：必须大于0，配置项为：tend.consistency.execution-timeout.check-interval-ms");
+        }
+
+        Integer leaseSeconds = taskLeaseConfigProperties.getLeaseSeconds();
+        if (!ObjectUtils.isEmpty(leaseSeconds) && leaseSeconds <= 0) {
+            throw new ConsistencyException("leaseSeconds配置错误！注意：必须大于0，配置项为：tend.consistency.lease.lease-seconds");
+        }
+
+        Integer retryMaxDelaySec = taskRetryConfigProperties.getMaxDelaySec();
+        if (!ObjectUtils.isEmpty(retryMaxDelaySec) && retryMaxDelaySec < 0) {
+            throw new ConsistencyException("maxDelaySec配置错误！注意：必须大于等于0，配置项为：tend.consistency.retry.max-delay-sec");
+        }
+        Integer retryMaxAttempts = taskRetryConfigProperties.getMaxAttempts();
+        if (!ObjectUtils.isEmpty(retryMaxAttempts) && retryMaxAttempts < 0) {
+            throw new ConsistencyException("maxAttempts配置错误！注意：必须大于等于0，配置项为：tend.consistency.retry.max-attempts");
+        }
+
+        Integer failureThreshold = taskCircuitBreakerConfigProperties.getFailureThreshold();
+        if (!ObjectUtils.isEmpty(failureThreshold) && failureThreshold <= 0) {
+            throw new ConsistencyException("failureThreshold配置错误！注意：必须大于0，配置项为：tend.consistency.circuit-breaker.failure-threshold");
+        }
+        Integer openSeconds = taskCircuitBreakerConfigProperties.getOpenSeconds();
+        if (!ObjectUtils.isEmpty(openSeconds) && openSeconds <= 0) {
+            throw new ConsistencyException("openSeconds配置错误！注意：必须大于0，配置项为：tend.consistency.circuit-breaker.open-seconds");
+        }
+        Integer halfOpenProbes = taskCircuitBreakerConfigProperties.getHalfOpenProbes();
+        if (!ObjectUtils.isEmpty(halfOpenProbes) && halfOpenProbes <= 0) {
+            throw new ConsistencyException("halfOpenProbes配置错误！注意：必须大于0，配置项为：tend.consistency.circuit-breaker.half-open-probes");
+        }
+
+        Map<String, Double> rateLimits = taskRateLimitConfigProperties.getLimits();
+        if (!ObjectUtils.isEmpty(rateLimits)) {
+            rateLimits.forEach((taskId, rateLimit) -> {
+                if (ObjectUtils.isEmpty(rateLimit) || rateLimit <= 0) {
+                    throw new ConsistencyException(String.format("limits配置错误！注意：必须大于0，配置项为：tend.consistency.rate-limit.limits.%s", taskId));
+                }
+            });
+        }
+        Long rateLimitMaxWaitMillis = taskRateLimitConfigProperties.getMaxWaitMillis();
+        if (!ObjectUtils.isEmpty(rateLimitMaxWaitMillis) && rateLimitMaxWaitMillis < 0) {
+            throw new ConsistencyException("maxWaitMillis配置错误！注意：必须大于等于0，配置项为：tend.consistency.rate-limit.max-wait-millis");
+        }
+
+        Integer highWeight = taskPriorityConfigProperties.getHighWeight();
+        Integer normalWeight = taskPriorityConfigProperties.getNormalWeight();
+        Integer lowWeight = taskPriorityConfigProperties.getLowWeight();
+        if ((!ObjectUtils.isEmpty(highWeight) && highWeight <= 0) || (!ObjectUtils.isEmpty(normalWeight) && normalWeight <= 0)
+                || (!ObjectUtils.isEmpty(lowWeight) && lowWeight <= 0)) {
+            throw new ConsistencyException("优先级权重配置错误！注意：必须大于0，配置项为：tend.consistency.priority.high-weight、" +
+                    "tend.consistency.priority.normal-weight和tend.consistency.priority.low-weight");
+        }
+
+        String overloadPolicy = consistencyParallelTaskConfigProperties.getOverloadPolicy();
+        if (!StringUtils.isEmpty(overloadPolicy) && !OverloadPolicyEnum.DEFER.getCode().equals(overloadPolicy)
+                && !OverloadPolicyEnum.SPILL.getCode().equals(overloadPolicy) && !OverloadPolicyEnum.CALLER_RUNS.getCode().equals(overloadPolicy)) {
+            throw new ConsistencyException("overloadPolicy配置错误！注意：请在[defer,spill,caller-runs]任选其中之一，配置项为：tend.consistency.parallel.pool.overload-policy");
+        }
+        Integer overflowQueueSize = consistencyParallelTaskConfigProperties.getOverflowQueueSize();
+        if (!ObjectUtils.isEmpty(overflowQueueSize) && overflowQueueSize <= 0) {
+            throw new ConsistencyException("overflowQueueSize配置错误！注意：必须大于0，配置项为：tend.consistency.parallel.pool.overflow-queue-size");
+        }
+        Long callerRunsWaitMillis = consistencyParallelTaskConfigProperties.getCallerRunsWaitMillis();
+        if (!ObjectUtils.isEmpty(callerRunsWaitMillis) && callerRunsWaitMillis < 0) {
+            throw new ConsistencyException("callerRunsWaitMillis配置错误！注意：必须大于等于0，配置项为：tend.consistency.parallel.pool.caller-runs-wait-millis");
+        }
+
         if (StringUtils.isEmpty(rocksDBConfigProperties.rocksPath)) {
             throw new ConsistencyException("请指定RocksDB文件存储的路径，配置文件中的配置项为：tend.consistency.rocksdb.rocks-path");
         }
@@ -5,6 +5,9 @@ import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 /**
  * 框架级配置参数
  *
@@ -36,6 +39,50 @@ public class TendConsistencyConfiguration {
      * 可选值:[SECONDS,MINUTES,HOURS,DAYS,NANOSECONDS,MICROSECONDS,MILLISECONDS] 线程池中无任务时线程存活时间单位
      */
     public String threadPoolKeepAliveTimeUnit;
+    /**
+     * 可选值:[platform,virtual] 任务执行的线程模式
+     */
+    public String threadPoolMode;
+    /**
+     * virtual模式下同时执行的最大任务数
+     */
+    public Integer virtualMaxConcurrency;
+    /**
+     * 编程式提交任务时 持久化任务的线程池的线程数
+     */
+    public Integer submitThreadPoolSize;
+    /**
+     * 编程式提交任务时 持久化任务的线程池的队列大小
+     */
+    public Integer submitThreadPoolQueueSize;
+    /**
+     * [单位秒] 编程式提交任务时 观察任务执行结果的最长时间
+     */
+    public Integer submitWatchTimeoutSeconds;
+    /**
+     * 编程式提交任务时 同时观察执行结果的最大任务数
+     */
+    public Integer submitMaxWatchedTasks;
+    /**
+     * 调度器待执行任务队列的大小
+     */
+    public Integer readyQueueSize;
+    /**
+     * 待执行任务队列的低水位 任务积压时 低于该值后会立即查询下一批任务
+     */
+    public Integer readyQueueLowWaterMark;
+    /**
+     * 可选值:[defer,spill,caller-runs] 立即执行的任务提交时待执行队列已满的过载策略
+     */
+    public String overloadPolicy;
+    /**
+     * spill策略下溢出队列的大小
+     */
+    public Integer overflowQueueSize;
+    /**
+     * caller-runs策略下调用方等待队列空位的最长时间 单位毫秒
+     */
+    public Long callerRunsWaitMillis;
     /**
      * 触发降级逻辑的阈值 任务执行次数 如果大于该值 就会进行降级
      */
@@ -52,6 +99,10 @@ public class TendConsistencyConfiguration {
      * 生成任务表分片key的ClassName 这里要配置类型全路径且类要实现com.consistency.custom.shard.ShardingKeyGenerator接口
      */
     private String shardingKeyGeneratorClassName = "";
+    /**
+     * 框架自带的雪花算法分片键生成器的序列号分段数 1表示不分段
+     */
+    public Integer snowflakeStripes = 1;
     /**
      * 集群节点的配置信息 格式: ip1:port:peerId1,ip2:port:peerId2,ip3:port:peerId3
      */
@@ -95,4 +146,214 @@ public class TendConsistencyConfiguration {
      */
     public Integer consistencyTaskExecuteIntervalSeconds = 10;
 
+
+    // ------------------------------------------------组提交相关的配置--------------------------------------------------
+    /**
+     * 是否开启任务初始化的组提交模式
+     */
+    public Boolean groupCommitEnabled = false;
+    /**
+     * 一次组提交最多合并的任务条数
+     */
+    public Integer groupCommitMaxBatchSize = 100;
+    /**
+     * [单位毫秒] 一次组提交最多等待多长时间
+     */
+    public Integer groupCommitMaxWaitMillis = 5;
+    /**
+     * [单位毫秒] 调用方等待组提交结果的最长时间
+     */
+    public Integer groupCommitMaxBlockMillis = 1000;
+
+
+    // ------------------------------------------------任务参数相关的配置--------------------------------------------------
+    /**
+     * 编码任务参数时使用的编解码器id
+     */
+    public String parameterCodec = "binary";
+    /**
+     * 编码后的任务参数超过该长度时进行压缩
+     */
+    public Integer parameterCompressThreshold = 128;
+    /**
+     * 压缩后的任务参数仍超过该长度时存储到溢出表中
+     */
+    public Integer parameterOverflowThreshold = 200;
+
+
+    // ------------------------------------------------任务幂等相关的配置--------------------------------------------------
+    /**
+     * 本地缓存最近提交过的幂等键的个数
+     */
+    public Integer idempotentCacheSize = 10000;
+    /**
+     * [单位秒] 幂等键在本地缓存中的保留时间
+     */
+    public Integer idempotentCacheExpireSeconds = 600;
+
+
+    // ------------------------------------------------本地优先模式相关的配置--------------------------------------------------
+    /**
+     * 是否开启立即执行任务的本地优先模式
+     */
+    public Boolean localFirstEnabled = false;
+    /**
+     * [单位秒] 任务保存到本地后超过该时间仍未执行成功，则转存到任务表中
+     */
+    public Integer localFirstAckDeadlineSeconds = 30;
+    /**
+     * 保存到RocksDB后是否同步刷盘
+     */
+    public Boolean localFirstSyncWrite = false;
+
+
+    // ------------------------------------------------调度任务时间轮相关的配置--------------------------------------------------
+    /**
+     * 是否开启调度任务的时间轮
+     */
+    public Boolean timingWheelEnabled = false;
+    /**
+     * [单位毫秒] 时间轮每一格的时间跨度
+     */
+    public Integer timingWheelTickMillis = 10;
+    /**
+     * 时间轮的格数
+     */
+    public Integer timingWheelSize = 512;
+    /**
+     * [单位秒] 执行时间在该时间范围内的任务才会放入时间轮
+     */
+    public Integer timingWheelHorizonSeconds = 300;
+    /**
+     * 时间轮中最多保存的任务数
+     */
+    public Integer timingWheelMaxPendingTasks = 10000;
+
+
+    // ------------------------------------------------任务隔离舱相关的配置--------------------------------------------------
+    /**
+     * 隔离舱配置 key为隔离舱名称
+     */
+    public Map<String, TaskBulkheadConfigProperties.Bulkhead> bulkheads = new LinkedHashMap<>();
+
+
+    // ------------------------------------------------任务执行自适应并发限制相关的配置--------------------------------------------------
+    /**
+     * 是否开启任务执行的自适应并发限制
+     */
+    public Boolean adaptiveLimitEnabled = false;
+    /**
+     * 并发数的下限
+     */
+    public Integer adaptiveLimitMinLimit = 1;
+    /**
+     * 初始的并发数
+     */
+    public Integer adaptiveLimitInitialLimit = 4;
+    /**
+     * 任务执行失败或者超时时 并发数乘以该比例
+     */
+    public Double adaptiveLimitBackoffRatio = 0.9;
+    /**
+     * [单位毫秒] 任务执行耗时超过该值时 视为下游过载
+     */
+    public Integer adaptiveLimitLatencyThresholdMillis = 5000;
+
+
+    // ------------------------------------------------任务执行结果批量写入相关的配置--------------------------------------------------
+    /**
+     * 是否开启任务执行结果的批量写入
+     */
+    public Boolean completionBatchEnabled = false;
+    /**
+     * 一次批量写入最多合并的任务条数
+     */
+    public Integer completionBatchMaxBatchSize = 200;
+    /**
+     * [单位毫秒] 一次批量写入最多等待多长时间
+     */
+    public Integer completionBatchMaxWaitMillis = 5;
+
+
+    // ------------------------------------------------任务租约相关的配置--------------------------------------------------
+    /**
+     * [单位秒] 任务租约的时长
+     */
+    public Integer leaseSeconds = 300;
+
+
+    // ------------------------------------------------任务执行超时相关的配置--------------------------------------------------
+    /**
+     * [单位毫秒] 任务方法默认的执行超时时间 0表示不限制
+     */
+    public Long executionDefaultTimeoutMs = 0L;
+    /**
+     * [单位毫秒] 超时中断后再等待多长时间放弃该次执行
+     */
+    public Long executionAbandonAfterMs = 5000L;
+    /**
+     * [单位毫秒] 看门狗检查超时任务的间隔
+     */
+    public Long executionTimeoutCheckIntervalMs = 100L;
+
+
+    // ------------------------------------------------任务重试策略相关的配置--------------------------------------------------
+    /**
+     * 默认的重试策略id 注解中没有指定retryPolicy时使用
+     */
+    public String retryDefaultPolicy = "linear";
+    /**
+     * [单位秒] 重试间隔的上限 0表示不限制
+     */
+    public Integer retryMaxDelaySec = 3600;
+    /**
+     * 任务默认最多执行的次数 0表示不限制
+     */
+    public Integer retryMaxAttempts = 0;
+
+
+    // ------------------------------------------------任务熔断相关的配置--------------------------------------------------
+    /**
+     * 是否开启任务熔断
+     */
+    public Boolean circuitBreakerEnabled = false;
+    /**
+     * 连续失败多少次后熔断
+     */
+    public Integer circuitBreakerFailureThreshold = 5;
+    /**
+     * [单位秒] 熔断的持续时间
+     */
+    public Integer circuitBreakerOpenSeconds = 30;
+    /**
+     * 半开状态下每个熔断周期放行的探测任务数
+     */
+    public Integer circuitBreakerHalfOpenProbes = 1;
+
+
+    // ------------------------------------------------任务限流相关的配置--------------------------------------------------
+    /**
+     * 各个任务每秒最多执行的次数 key为taskId
+     */
+    public Map<String, Double> rateLimits = new LinkedHashMap<>();
+    /**
+     * [单位毫秒] 超过限流的任务在内存中等待的最长时间
+     */
+    public Long rateLimitMaxWaitMillis = 1000L;
+
+
+    // ------------------------------------------------任务优先级相关的配置--------------------------------------------------
+    /**
+     * 高优先级任务的分发权重
+     */
+    public Integer priorityHighWeight = 6;
+    /**
+     * 普通优先级任务的分发权重
+     */
+    public Integer priorityNormalWeight = 3;
+    /**
+     * 低优先级任务的分发权重
+     */
+    public Integer priorityLowWeight = 1;
+
 }
\ No newline at end of file
@@ -38,6 +38,50 @@ public class TendConsistencyParallelTaskConfigProperties {
      * 可选值:[SECONDS,MINUTES,HOURS,DAYS,NANOSECONDS,MICROSECONDS,MILLISECONDS] 线程池中无任务时线程存活时间单位
      */
     public String threadPoolKeepAliveTimeUnit = "SECONDS";
+    /**
+     * 可选值:[platform,virtual] 任务执行的线程模式 virtual表示每个任务运行在一个虚拟线程上，需要JDK21及以上版本，低版本JDK会使用platform
+     */
+    public String mode = "platform";
+    /**
+     * virtual模式下同时执行的最大任务数
+     */
+    public Integer virtualMaxConcurrency = 1000;
+    /**
+     * 编程式提交任务(TaskSubmitter)时 持久化任务的线程池的线程数
+     */
+    public Integer submitThreadPoolSize = 8;
+    /**
+     * 编程式提交任务(TaskSubmitter)时 持久化任务的线程池的队列大小
+     */
+    public Integer submitThreadPoolQueueSize = 10000;
+    /**
+     * [单位秒] 编程式提交任务(TaskSubmitter)时 观察任务执行结果的最长时间 超时后executed异常完成
+     */
+    public Integer watchTimeoutSeconds = 600;
+    /**
+     * 编程式提交任务(TaskSubmitter)时 同时观察执行结果的最大任务数 超过后最早的观察异常完成
+     */
+    public Integer maxWatchedTasks = 10000;
+    /**
+     * 调度器待执行任务队列的大小 调度器查询出的任务先放入该队列 再由执行线程持续取出执行
+     */
+    public Integer readyQueueSize = 200;
+    /**
+     * 待执行任务队列的低水位 任务积压时 队列中的任务数低于该值后会立即查询下一批任务
+     */
+    public Integer readyQueueLowWaterMark = 50;
+    /**
+     * 可选值:[defer,spill,caller-runs] 立即执行的任务提交时待执行队列已满的过载策略
+     */
+    public String overloadPolicy = "defer";
+    /**
+     * spill策略下溢出队列的大小 溢出队列也满时按照defer策略处理
+     */
+    public Integer overflowQueueSize = 1000;
+    /**
+     * caller-runs策略下调用方等待队列空位的最长时间 单位毫秒 超过后由调用方线程直接执行
+     */
+    public Long callerRunsWaitMillis = 100L;
     /**
      * 这里要配置类型全路径且类要实现com.consistency.custom.query.TaskTimeRangeQuery接口 如：com.xxx.TaskTimeLineQuery
      */
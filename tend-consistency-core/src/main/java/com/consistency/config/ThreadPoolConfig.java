@@ -1,8 +1,13 @@
 package com.consistency.config;
 
+import com.consistency.enums.ExecutorModeEnum;
+import com.consistency.exceptions.ConsistencyException;
 import com.consistency.model.ConsistencyTaskInstance;
 import com.consistency.remote.message.RegisterOrCancelResponse;
+import com.consistency.utils.VirtualThreadUtils;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.context.annotation.Bean;
 import org.springframework.stereotype.Component;
 
@@ -14,6 +19,7 @@ import java.util.concurrent.atomic.AtomicInteger;
  *
  * @author xiayang
  */
+@Slf4j
 @Component
 public class ThreadPoolConfig {
 
@@ -31,6 +37,11 @@ public class ThreadPoolConfig {
      */
     private static final String ALERT_THREAD_POOL_PREFIX = "AlertThreadPool_";
 
+    /**
+     * 编程式提交任务的线程名称的前缀
+     */
+    private static final String TASK_SUBMIT_THREAD_POOL_PREFIX = "TaskSubmitPool_";
+
     /**
      * 获取框架级的配置
      */
@@ -38,15 +49,26 @@ public class ThreadPoolConfig {
     private TendConsistencyConfiguration tendConsistencyConfiguration;
 
     /**
-     * 一致性任务执行的并行任务执行线程池
+     * 一致性任务执行的线程池 virtual模式下每个任务运行在一个虚拟线程上
      *
-     * @return 并行任务线程池
+     * @return 任务执行线程池
      */
     @Bean
-    public CompletionService<ConsistencyTaskInstance> consistencyTaskPool() {
+    public ExecutorService consistencyTaskExecutor() {
+        if (ExecutorModeEnum.VIRTUAL.getCode().equals(tendConsistencyConfiguration.getThreadPoolMode())) {
+            // 配置了virtual模式但运行在不支持虚拟线程的JDK上时 启动失败 避免在不知情的情况下使用了平台线程池
+            if (!VirtualThreadUtils.isSupported()) {
+                throw new ConsistencyException(String.format("当前JDK不支持虚拟线程，virtual模式需要JDK21及以上版本 java.version=%s，" +
+                        "请升级JDK或者修改配置项：tend.consistency.parallel.pool.mode=platform", System.getProperty("java.version")));
+            }
+            ExecutorService virtualThreadExecutor = VirtualThreadUtils.newVirtualThreadPerTaskExecutor(CONSISTENCY_TASK_THREAD_POOL_PREFIX);
+            log.info("[一致性任务框架] 任务执行使用虚拟线程 最大并发数为 {}", tendConsistencyConfiguration.getVirtualMaxConcurrency());
+            return new VirtualThreadTaskExecutor(virtualThreadExecutor,
+                    tendConsistencyConfiguration.getVirtualMaxConcurrency(), tendConsistencyConfiguration.getThreadPoolQueueSize());
+        }
         LinkedBlockingQueue<Runnable> asyncConsistencyTaskThreadPoolQueue =
                 new LinkedBlockingQueue<>(tendConsistencyConfiguration.getThreadPoolQueueSize());
-        ThreadPoolExecutor asyncReleaseResourceExecutorPool = new ThreadPoolExecutor(
+        return new ThreadPoolExecutor(
                 tendConsistencyConfiguration.getThreadCorePoolSize(),
                 tendConsistencyConfiguration.getThreadCorePoolSize(),
                 tendConsistencyConfiguration.getThreadPoolKeepAliveTime(),
@@ -54,7 +76,18 @@ public class ThreadPoolConfig {
                 asyncConsistencyTaskThreadPoolQueue,
                 createThreadFactory(CONSISTENCY_TASK_THREAD_POOL_PREFIX)
         );
-        return new ExecutorCompletionService<>(asyncReleaseResourceExecutorPool);
+    }
+
+    /**
+     * 一致性任务执行的并行任务执行线程池
+     *
+     * @param consistencyTaskExecutor 任务执行线程池
+     * @return 并行任务线程池
+     */
+    @Bean
+    public CompletionService<ConsistencyTaskInstance> consistencyTaskPool(
+            @Qualifier("consistencyTaskExecutor") ExecutorService consistencyTaskExecutor) {
+        return new ExecutorCompletionService<>(consistencyTaskExecutor);
     }
 
     @Bean
@@ -91,6 +124,25 @@ public class ThreadPoolConfig {
         );
     }
 
+    /**
+     * 编程式提交任务时 用于持久化任务的线程池 队列满时直接拒绝 由调用方的future感知
+     *
+     * @return 提交任务的线程池
+     */
+    @Bean
+    public ThreadPoolExecutor taskSubmitPool() {
+        LinkedBlockingQueue<Runnable> taskSubmitThreadPoolQueue =
+                new LinkedBlockingQueue<>(tendConsistencyConfiguration.getSubmitThreadPoolQueueSize());
+        return new ThreadPoolExecutor(
+                tendConsistencyConfiguration.getSubmitThreadPoolSize(),
+                tendConsistencyConfiguration.getSubmitThreadPoolSize(),
+                60,
+                TimeUnit.SECONDS,
+                taskSubmitThreadPoolQueue,
+                createThreadFactory(TASK_SUBMIT_THREAD_POOL_PREFIX)
+        );
+    }
+
     /**
      * 创建线程池工厂
      *
@@ -0,0 +1,84 @@
+package com.consistency.config;
+
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 限制并发数的虚拟线程任务执行器
+ * 每个任务运行在独立的虚拟线程上，同时运行的任务数不超过maxConcurrency，
+ * 超出的任务在虚拟线程中等待(不占用平台线程)，等待的任务数超过queueSize后拒绝，与平台线程池队列满时的行为一致。
+ *
+ * @author xiayang
+ **/
+public class VirtualThreadTaskExecutor extends AbstractExecutorService {
+
+    /**
+     * 每个任务一个虚拟线程的线程池
+     */
+    private final ExecutorService delegate;
+    /**
+     * 同时运行的任务数
+     */
+    private final Semaphore runningPermits;
+    /**
+     * 已经接收的任务数 包括运行中和等待中的任务
+     */
+    private final Semaphore admittedPermits;
+
+    public VirtualThreadTaskExecutor(ExecutorService delegate, int maxConcurrency, int queueSize) {
+        this.delegate = delegate;
+        this.runningPermits = new Semaphore(maxConcurrency);
+        this.admittedPermits = new Semaphore(maxConcurrency + queueSize);
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        if (!admittedPermits.tryAcquire()) {
+            throw new RejectedExecutionException("虚拟线程任务执行器等待执行的任务数已达上限");
+        }
+        try {
+            delegate.execute(() -> {
+                runningPermits.acquireUninterruptibly();
+                try {
+                    command.run();
+                } finally {
+                    runningPermits.release();
+                    admittedPermits.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            admittedPermits.release();
+            throw e;
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        delegate.shutdown();
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        return delegate.shutdownNow();
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return delegate.isShutdown();
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return delegate.isTerminated();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return delegate.awaitTermination(timeout, unit);
+    }
+
+}
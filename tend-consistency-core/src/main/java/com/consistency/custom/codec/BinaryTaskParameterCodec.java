@@ -0,0 +1,613 @@
+package com.consistency.custom.codec;
+
+import com.consistency.exceptions.ConsistencyException;
+import org.springframework.stereotype.Component;
+import org.springframework.util.ClassUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.*;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 基于方法泛型参数类型的二进制任务参数编解码器（框架默认的编解码器）
+ * 参数的类型信息来自于方法签名，所以只有当实际类型与声明类型不一致时才会写入类名，编码结果比json更紧凑，且能保留List<OrderInfoDTO>这类泛型信息
+ * 普通对象的字段结构(字段名、字段类型的校验值)在编码结果的头部每个类只写入一次，对象只写入值不为null的字段，每个字段按照 字段在结构中的序号、字段值的长度、字段值 进行编码
+ * DTO的字段发生变更后，变更前创建且未执行完成的任务仍然可以解码：新增的字段保持无参构造方法中的默认值，删除的字段直接跳过，类型发生变更的字段按照删除处理，同样保持默认值
+ *
+ * @author xiayang
+ **/
+@Component
+public class BinaryTaskParameterCodec implements TaskParameterCodec {
+
+    /**
+     * 编解码器的id
+     */
+    public static final String CODEC_ID = "binary";
+    /**
+     * 编码格式的版本号
+     */
+    private static final byte VERSION = 3;
+    /**
+     * 值为null
+     */
+    private static final byte NULL_FLAG = 0;
+    /**
+     * 值的类型与声明的类型一致
+     */
+    private static final byte VALUE_FLAG = 1;
+    /**
+     * 值的类型与声明的类型不一致 后面会跟着实际的类名
+     */
+    private static final byte TYPED_VALUE_FLAG = 2;
+
+    /**
+     * 普通对象的字段结构缓存
+     */
+    private final Map<Class<?>, ClassSchema> schemaCache = new ConcurrentHashMap<>(64);
+
+    @Override
+    public String codecId() {
+        return CODEC_ID;
+    }
+
+    @Override
+    public String encode(Object[] args, Method method) {
+        Type[] parameterTypes = method.getGenericParameterTypes();
+        try {
+            EncodeContext context = new EncodeContext();
+            ByteArrayOutputStream body = new ByteArrayOutputStream(128);
+            DataOutputStream bodyOut = new DataOutputStream(body);
+            writeVarLong(bodyOut, args.length);
+            for (int i = 0; i < args.length; i++) {
+                writeValue(bodyOut, args[i], parameterTypes[i], context);
+            }
+            bodyOut.flush();
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(body.size() + 64);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(VERSION);
+            // 编码过程中用到的字段结构 每个类只写入一次
+            writeVarLong(out, context.schemas.size());
+            for (ClassSchema schema : context.schemas) {
+                writeVarLong(out, schema.fields.length);
+                for (FieldSchema fieldSchema : schema.fields) {
+                    writeString(out, fieldSchema.field.getName());
+                    out.writeInt(fieldSchema.typeHash);
+                }
+            }
+            out.flush();
+            body.writeTo(bytes);
+            return Base64.getEncoder().encodeToString(bytes.toByteArray());
+        } catch (IOException | ReflectiveOperationException e) {
+            throw new ConsistencyException(e);
+        }
+    }
+
+    @Override
+    public Object[] decode(String taskParameter, Method method) {
+        Type[] parameterTypes = method.getGenericParameterTypes();
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(Base64.getDecoder().decode(taskParameter)));
+            byte version = in.readByte();
+            if (version != VERSION) {
+                throw new ConsistencyException("不支持的任务参数编码版本: " + version);
+            }
+            int schemaCount = (int) readVarLong(in);
+            DecodeContext context = new DecodeContext(schemaCount);
+            for (int i = 0; i < schemaCount; i++) {
+                int fieldCount = (int) readVarLong(in);
+                String[] fieldNames = new String[fieldCount];
+                int[] typeHashes = new int[fieldCount];
+                for (int j = 0; j < fieldCount; j++) {
+                    fieldNames[j] = readString(in);
+                    typeHashes[j] = in.readInt();
+                }
+                context.fieldNames[i] = fieldNames;
+                context.typeHashes[i] = typeHashes;
+            }
+            int count = (int) readVarLong(in);
+            if (count != parameterTypes.length) {
+                throw new ConsistencyException("任务参数个数与方法参数个数不一致, 方法为: " + method);
+            }
+            Object[] args = new Object[count];
+            for (int i = 0; i < count; i++) {
+                args[i] = readValue(in, parameterTypes[i], context);
+            }
+            return args;
+        } catch (IOException | ReflectiveOperationException e) {
+            throw new ConsistencyException(e);
+        }
+    }
+
+    // ------------------------------------------------编码--------------------------------------------------
+
+    private void writeValue(DataOutputStream out, Object value, Type type, EncodeContext context) throws IOException, ReflectiveOperationException {
+        Class<?> declaredClass = rawClass(type);
+        // 基础数据类型不会为null 直接写入值
+        if (declaredClass.isPrimitive()) {
+            writeBody(out, value, ClassUtils.resolvePrimitiveIfNecessary(declaredClass), type, context);
+            return;
+        }
+        if (value == null) {
+            out.writeByte(NULL_FLAG);
+            return;
+        }
+        if (isDeclaredType(declaredClass, value)) {
+            out.writeByte(VALUE_FLAG);
+            writeBody(out, value, declaredClass, type, context);
+            return;
+        }
+        Class<?> actualClass = value instanceof Enum ? ((Enum<?>) value).getDeclaringClass() : value.getClass();
+        out.writeByte(TYPED_VALUE_FLAG);
+        writeString(out, actualClass.getName());
+        writeBody(out, value, actualClass, actualClass, context);
+    }
+
+    private void writeBody(DataOutputStream out, Object value, Class<?> clazz, Type type, EncodeContext context) throws IOException, ReflectiveOperationException {
+        if (clazz == String.class) {
+            writeString(out, (String) value);
+        } else if (clazz == Integer.class) {
+            writeVarLong(out, zigZag((Integer) value));
+        } else if (clazz == Long.class) {
+            writeVarLong(out, zigZag((Long) value));
+        } else if (clazz == Boolean.class) {
+            out.writeBoolean((Boolean) value);
+        } else if (clazz == Double.class) {
+            out.writeDouble((Double) value);
+        } else if (clazz == Float.class) {
+            out.writeFloat((Float) value);
+        } else if (clazz == Short.class) {
+            out.writeShort((Short) value);
+        } else if (clazz == Byte.class) {
+            out.writeByte((Byte) value);
+        } else if (clazz == Character.class) {
+            out.writeChar((Character) value);
+        } else if (clazz == BigDecimal.class || clazz == BigInteger.class
+                || clazz == LocalDate.class || clazz == LocalDateTime.class
+                || clazz == LocalTime.class || clazz == Instant.class) {
+            writeString(out, value.toString());
+        } else if (clazz == Date.class) {
+            writeVarLong(out, zigZag(((Date) value).getTime()));
+        } else if (clazz.isEnum()) {
+            writeString(out, ((Enum<?>) value).name());
+        } else if (clazz == byte[].class) {
+            byte[] bytes = (byte[]) value;
+            writeVarLong(out, bytes.length);
+            out.write(bytes);
+        } else if (clazz.isArray()) {
+            Type componentType = componentType(type, clazz);
+            int length = Array.getLength(value);
+            writeVarLong(out, length);
+            for (int i = 0; i < length; i++) {
+                writeValue(out, Array.get(value, i), componentType, context);
+            }
+        } else if (Collection.class.isAssignableFrom(clazz)) {
+            Type elementType = typeArgument(type, 0);
+            Collection<?> collection = (Collection<?>) value;
+            writeVarLong(out, collection.size());
+            for (Object element : collection) {
+                writeValue(out, element, elementType, context);
+            }
+        } else if (Map.class.isAssignableFrom(clazz)) {
+            Type keyType = typeArgument(type, 0);
+            Type valueType = typeArgument(type, 1);
+            Map<?, ?> map = (Map<?, ?>) value;
+            writeVarLong(out, map.size());
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                writeValue(out, entry.getKey(), keyType, context);
+                writeValue(out, entry.getValue(), valueType, context);
+            }
+        } else {
+            ClassSchema schema = getSchema(clazz);
+            writeVarLong(out, context.indexOf(schema));
+            // 值为null的字段不写入 解码时保持默认值
+            Object[] fieldValues = new Object[schema.fields.length];
+            int presentCount = 0;
+            for (int i = 0; i < schema.fields.length; i++) {
+                fieldValues[i] = schema.fields[i].field.get(value);
+                if (fieldValues[i] != null) {
+                    presentCount++;
+                }
+            }
+            writeVarLong(out, presentCount);
+            ByteArrayOutputStream fieldBytes = new ByteArrayOutputStream(32);
+            DataOutputStream fieldOut = new DataOutputStream(fieldBytes);
+            for (int i = 0; i < schema.fields.length; i++) {
+                if (fieldValues[i] == null) {
+                    continue;
+                }
+                // 字段值带上长度 解码时可以跳过已经不存在或者类型发生变更的字段
+                fieldBytes.reset();
+                writeValue(fieldOut, fieldValues[i], schema.fields[i].field.getGenericType(), context);
+                fieldOut.flush();
+                writeVarLong(out, i);
+                writeVarLong(out, fieldBytes.size());
+                fieldBytes.writeTo(out);
+            }
+        }
+    }
+
+    // ------------------------------------------------解码--------------------------------------------------
+
+    private Object readValue(DataInputStream in, Type type, DecodeContext context) throws IOException, ReflectiveOperationException {
+        Class<?> declaredClass = rawClass(type);
+        if (declaredClass.isPrimitive()) {
+            return readBody(in, ClassUtils.resolvePrimitiveIfNecessary(declaredClass), type, context);
+        }
+        byte flag = in.readByte();
+        if (flag == NULL_FLAG) {
+            return null;
+        }
+        if (flag == TYPED_VALUE_FLAG) {
+            Class<?> actualClass = ClassUtils.forName(readString(in), ClassUtils.getDefaultClassLoader());
+            return readBody(in, actualClass, actualClass, context);
+        }
+        return readBody(in, declaredClass, type, context);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private Object readBody(DataInputStream in, Class<?> clazz, Type type, DecodeContext context) throws IOException, ReflectiveOperationException {
+        if (clazz == String.class) {
+            return readString(in);
+        } else if (clazz == Integer.class) {
+            return (int) unZigZag(readVarLong(in));
+        } else if (clazz == Long.class) {
+            return unZigZag(readVarLong(in));
+        } else if (clazz == Boolean.class) {
+            return in.readBoolean();
+        } else if (clazz == Double.class) {
+            return in.readDouble();
+        } else if (clazz == Float.class) {
+            return in.readFloat();
+        } else if (clazz == Short.class) {
+            return in.readShort();
+        } else if (clazz == Byte.class) {
+            return in.readByte();
+        } else if (clazz == Character.class) {
+            return in.readChar();
+        } else if (clazz == BigDecimal.class) {
+            return new BigDecimal(readString(in));
+        } else if (clazz == BigInteger.class) {
+            return new BigInteger(readString(in));
+        } else if (clazz == LocalDate.class) {
+            return LocalDate.parse(readString(in));
+        } else if (clazz == LocalDateTime.class) {
+            return LocalDateTime.parse(readString(in));
+        } else if (clazz == LocalTime.class) {
+            return LocalTime.parse(readString(in));
+        } else if (clazz == Instant.class) {
+            return Instant.parse(readString(in));
+        } else if (clazz == Date.class) {
+            return new Date(unZigZag(readVarLong(in)));
+        } else if (clazz.isEnum()) {
+            return Enum.valueOf((Class) clazz, readString(in));
+        } else if (clazz == byte[].class) {
+            byte[] bytes = new byte[(int) readVarLong(in)];
+            in.readFully(bytes);
+            return bytes;
+        } else if (clazz.isArray()) {
+            Type componentType = componentType(type, clazz);
+            int length = (int) readVarLong(in);
+            Object array = Array.newInstance(clazz.getComponentType(), length);
+            for (int i = 0; i < length; i++) {
+                Array.set(array, i, readValue(in, componentType, context));
+            }
+            return array;
+        } else if (Collection.class.isAssignableFrom(clazz)) {
+            Type elementType = typeArgument(type, 0);
+            int size = (int) readVarLong(in);
+            Collection<Object> collection = newCollection(clazz, size);
+            for (int i = 0; i < size; i++) {
+                collection.add(readValue(in, elementType, context));
+            }
+            return collection;
+        } else if (Map.class.isAssignableFrom(clazz)) {
+            Type keyType = typeArgument(type, 0);
+            Type valueType = typeArgument(type, 1);
+            int size = (int) readVarLong(in);
+            Map<Object, Object> map = newMap(clazz, size);
+            for (int i = 0; i < size; i++) {
+                Object key = readValue(in, keyType, context);
+                map.put(key, readValue(in, valueType, context));
+            }
+            return map;
+        } else {
+            ClassSchema schema = getSchema(clazz);
+            FieldSchema[] fields = context.resolve((int) readVarLong(in), schema);
+            Object instance = schema.constructor.newInstance();
+            int presentCount = (int) readVarLong(in);
+            for (int i = 0; i < presentCount; i++) {
+                int index = (int) readVarLong(in);
+                byte[] fieldBytes = new byte[(int) readVarLong(in)];
+                in.readFully(fieldBytes);
+                FieldSchema fieldSchema = index < fields.length ? fields[index] : null;
+                // 已经删除或者类型发生变更的字段 保持默认值
+                if (fieldSchema == null) {
+                    continue;
+                }
+                DataInputStream fieldIn = new DataInputStream(new ByteArrayInputStream(fieldBytes));
+                fieldSchema.field.set(instance, readValue(fieldIn, fieldSchema.field.getGenericType(), context));
+            }
+            return instance;
+        }
+    }
+
+    // ------------------------------------------------类型相关--------------------------------------------------
+
+    /**
+     * 值的实际类型是否可以按照声明的类型进行编解码
+     */
+    private boolean isDeclaredType(Class<?> declaredClass, Object value) {
+        if (value.getClass() == declaredClass) {
+            return true;
+        }
+        if (declaredClass.isEnum()) {
+            return declaredClass.isInstance(value);
+        }
+        // 集合接口按照默认实现进行解码
+        return (declaredClass == List.class || declaredClass == Collection.class || declaredClass == Set.class
+                || declaredClass == Map.class) && declaredClass.isInstance(value);
+    }
+
+    private Class<?> rawClass(Type type) {
+        if (type instanceof Class) {
+            return (Class<?>) type;
+        }
+        if (type instanceof ParameterizedType) {
+            return (Class<?>) ((ParameterizedType) type).getRawType();
+        }
+        if (type instanceof GenericArrayType) {
+            return Array.newInstance(rawClass(((GenericArrayType) type).getGenericComponentType()), 0).getClass();
+        }
+        if (type instanceof WildcardType) {
+            return rawClass(((WildcardType) type).getUpperBounds()[0]);
+        }
+        if (type instanceof TypeVariable) {
+            return rawClass(((TypeVariable<?>) type).getBounds()[0]);
+        }
+        return Object.class;
+    }
+
+    private Type typeArgument(Type type, int index) {
+        if (type instanceof ParameterizedType) {
+            Type[] arguments = ((ParameterizedType) type).getActualTypeArguments();
+            if (arguments.length > index) {
+                return arguments[index];
+            }
+        }
+        return Object.class;
+    }
+
+    private Type componentType(Type type, Class<?> clazz) {
+        if (type instanceof GenericArrayType) {
+            return ((GenericArrayType) type).getGenericComponentType();
+        }
+        return clazz.getComponentType();
+    }
+
+    @SuppressWarnings("unchecked")
+    private Collection<Object> newCollection(Class<?> clazz, int size) throws ReflectiveOperationException {
+        if (!clazz.isInterface() && !Modifier.isAbstract(clazz.getModifiers())) {
+            return (Collection<Object>) newInstance(clazz);
+        }
+        if (SortedSet.class.isAssignableFrom(clazz)) {
+            return new TreeSet<>();
+        }
+        if (Set.class.isAssignableFrom(clazz)) {
+            return new LinkedHashSet<>(size * 2);
+        }
+        return new ArrayList<>(size);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<Object, Object> newMap(Class<?> clazz, int size) throws ReflectiveOperationException {
+        if (!clazz.isInterface() && !Modifier.isAbstract(clazz.getModifiers())) {
+            return (Map<Object, Object>) newInstance(clazz);
+        }
+        if (SortedMap.class.isAssignableFrom(clazz)) {
+            return new TreeMap<>();
+        }
+        return new LinkedHashMap<>(size * 2);
+    }
+
+    private Object newInstance(Class<?> clazz) throws ReflectiveOperationException {
+        Constructor<?> constructor = clazz.getDeclaredConstructor();
+        constructor.setAccessible(true);
+        return constructor.newInstance();
+    }
+
+    /**
+     * 获取普通对象的字段结构
+     */
+    private ClassSchema getSchema(Class<?> clazz) {
+        ClassSchema schema = schemaCache.get(clazz);
+        if (schema == null) {
+            schema = schemaCache.computeIfAbsent(clazz, this::buildSchema);
+        }
+        return schema;
+    }
+
+    private ClassSchema buildSchema(Class<?> clazz) {
+        if (clazz.isInterface() || Modifier.isAbstract(clazz.getModifiers())) {
+            throw new ConsistencyException(String.format("%s 为接口或抽象类，无法进行二进制编解码", clazz.getName()));
+        }
+        Constructor<?> constructor;
+        try {
+            constructor = clazz.getDeclaredConstructor();
+            constructor.setAccessible(true);
+        } catch (NoSuchMethodException | RuntimeException e) {
+            throw new ConsistencyException(String.format("%s 类没有无参构造方法，无法进行二进制编解码", clazz.getName()));
+        }
+        // 父类的字段在前，同一个类中的字段按名称排序，保证字段的顺序是确定的
+        Deque<Class<?>> hierarchy = new ArrayDeque<>();
+        for (Class<?> current = clazz; current != null && current != Object.class; current = current.getSuperclass()) {
+            hierarchy.push(current);
+        }
+        List<FieldSchema> fields = new ArrayList<>();
+        for (Class<?> current : hierarchy) {
+            Field[] declaredFields = current.getDeclaredFields();
+            Arrays.sort(declaredFields, Comparator.comparing(Field::getName));
+            for (Field field : declaredFields) {
+                int modifiers = field.getModifiers();
+                if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers) || field.isSynthetic()) {
+                    continue;
+                }
+                field.setAccessible(true);
+                fields.add(new FieldSchema(field));
+            }
+        }
+        return new ClassSchema(constructor, fields.toArray(new FieldSchema[0]));
+    }
+
+    // ------------------------------------------------基础编码--------------------------------------------------
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(out, bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[(int) readVarLong(in)];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long readVarLong(DataInputStream in) throws IOException {
+        long result = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.readByte();
+            result |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+        throw new IOException("varint格式错误");
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * 普通对象的字段结构
+     */
+    private static final class ClassSchema {
+
+        private final Constructor<?> constructor;
+
+        private final FieldSchema[] fields;
+        /**
+         * 字段 key为字段名 父类与子类存在同名字段时使用子类的字段
+         */
+        private final Map<String, FieldSchema> fieldsByName;
+
+        ClassSchema(Constructor<?> constructor, FieldSchema[] fields) {
+            this.constructor = constructor;
+            this.fields = fields;
+            this.fieldsByName = new HashMap<>(fields.length * 2);
+            for (FieldSchema fieldSchema : fields) {
+                fieldsByName.put(fieldSchema.field.getName(), fieldSchema);
+            }
+        }
+    }
+
+    /**
+     * 一次编码过程中用到的字段结构 按照第一次用到的顺序编号
+     */
+    private static final class EncodeContext {
+
+        private final Map<ClassSchema, Integer> indexes = new IdentityHashMap<>();
+
+        private final List<ClassSchema> schemas = new ArrayList<>();
+
+        int indexOf(ClassSchema schema) {
+            Integer index = indexes.get(schema);
+            if (index == null) {
+                index = schemas.size();
+                indexes.put(schema, index);
+                schemas.add(schema);
+            }
+            return index;
+        }
+    }
+
+    /**
+     * 一次解码过程中编码结果头部的字段结构 与当前类的字段按照字段名和类型的校验值进行匹配
+     */
+    private static final class DecodeContext {
+
+        private final String[][] fieldNames;
+
+        private final int[][] typeHashes;
+        /**
+         * 匹配后的字段 下标为字段在编码结构中的序号 已经删除或者类型发生变更的字段为null
+         */
+        private final FieldSchema[][] resolvedFields;
+
+        DecodeContext(int schemaCount) {
+            this.fieldNames = new String[schemaCount][];
+            this.typeHashes = new int[schemaCount][];
+            this.resolvedFields = new FieldSchema[schemaCount][];
+        }
+
+        FieldSchema[] resolve(int index, ClassSchema schema) {
+            if (index < 0 || index >= fieldNames.length) {
+                throw new ConsistencyException("任务参数的字段结构序号错误: " + index);
+            }
+            FieldSchema[] fields = resolvedFields[index];
+            if (fields == null) {
+                fields = new FieldSchema[fieldNames[index].length];
+                for (int i = 0; i < fields.length; i++) {
+                    FieldSchema fieldSchema = schema.fieldsByName.get(fieldNames[index][i]);
+                    if (fieldSchema != null && fieldSchema.typeHash == typeHashes[index][i]) {
+                        fields[i] = fieldSchema;
+                    }
+                }
+                resolvedFields[index] = fields;
+            }
+            return fields;
+        }
+    }
+
+    /**
+     * 普通对象的一个字段
+     */
+    private static final class FieldSchema {
+
+        private final Field field;
+        /**
+         * 字段类型的校验值 字段的类型发生变更后会发生变化
+         */
+        private final int typeHash;
+
+        FieldSchema(Field field) {
+            this.field = field;
+            this.typeHash = field.getGenericType().getTypeName().hashCode();
+        }
+    }
+
+}
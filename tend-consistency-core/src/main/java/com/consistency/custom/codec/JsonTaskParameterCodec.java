@@ -0,0 +1,38 @@
+package com.consistency.custom.codec;
+
+import cn.hutool.json.JSONUtil;
+import com.consistency.utils.ReflectTools;
+import org.springframework.stereotype.Component;
+
+import java.lang.reflect.Method;
+
+/**
+ * 基于json的任务参数编解码器
+ * 框架早期的任务参数都是使用json进行存储的，parameter_codec字段为空的任务也使用该编解码器进行解码
+ *
+ * @author xiayang
+ **/
+@Component
+public class JsonTaskParameterCodec implements TaskParameterCodec {
+
+    /**
+     * 编解码器的id
+     */
+    public static final String CODEC_ID = "json";
+
+    @Override
+    public String codecId() {
+        return CODEC_ID;
+    }
+
+    @Override
+    public String encode(Object[] args, Method method) {
+        return JSONUtil.toJsonStr(args);
+    }
+
+    @Override
+    public Object[] decode(String taskParameter, Method method) {
+        return ReflectTools.buildArgs(taskParameter, method.getParameterTypes());
+    }
+
+}
@@ -0,0 +1,39 @@
+package com.consistency.custom.codec;
+
+import java.lang.reflect.Method;
+
+/**
+ * 任务参数编解码器接口
+ * 如业务服务需要定制，实现该接口并注入spring容器，然后在配置文件中通过 tend.consistency.parameter.codec 指定codecId即可
+ * 编码时使用的codecId会和任务参数一起存储，解码时使用存储的codecId找到对应的编解码器
+ *
+ * @author xiayang
+ **/
+public interface TaskParameterCodec {
+
+    /**
+     * 编解码器的id 会存储到任务表的parameter_codec字段中
+     *
+     * @return 编解码器的id
+     */
+    String codecId();
+
+    /**
+     * 将方法入参编码为字符串
+     *
+     * @param args   方法入参
+     * @param method 被注解的方法 可以根据方法的泛型参数类型来进行编码
+     * @return 编码后的任务参数 不能以@开头，@开头的任务参数被框架用来标识压缩以及存储到溢出表中的参数
+     */
+    String encode(Object[] args, Method method);
+
+    /**
+     * 将任务参数解码为方法入参
+     *
+     * @param taskParameter 编码后的任务参数
+     * @param method        要执行的方法 可以根据方法的泛型参数类型来进行解码
+     * @return 方法入参
+     */
+    Object[] decode(String taskParameter, Method method);
+
+}
@@ -0,0 +1,35 @@
+package com.consistency.custom.retry;
+
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 带下限的指数抖动重试策略 第N次失败后在 [executeIntervalSec, executeIntervalSec * 3^(N-1)] 中随机选择间隔
+ * 与全抖动相比，间隔不会小于executeIntervalSec
+ *
+ * @author xiayang
+ **/
+@Component
+public class ExponentialJitterRetryPolicy implements RetryPolicy {
+
+    /**
+     * 重试策略的id
+     */
+    public static final String POLICY_ID = "exponential-jitter";
+
+    @Override
+    public String policyId() {
+        return POLICY_ID;
+    }
+
+    @Override
+    public long nextDelayMillis(int failedTimes, long intervalMillis) {
+        if (failedTimes <= 1 || intervalMillis <= 0) {
+            return intervalMillis;
+        }
+        long ceiling = ExponentialRetryPolicy.exponentialDelay(failedTimes, intervalMillis, 3);
+        return ThreadLocalRandom.current().nextLong(intervalMillis, ceiling);
+    }
+
+}
@@ -0,0 +1,52 @@
+package com.consistency.custom.retry;
+
+import org.springframework.stereotype.Component;
+
+/**
+ * 指数退避的重试策略 第N次失败后间隔 executeIntervalSec * 2^(N-1) 再执行
+ * 多个任务在同一时刻失败时(如下游服务故障)，会在同一时刻一起重试，下游恢复时压力较大，可以使用带抖动的指数退避策略
+ *
+ * @author xiayang
+ **/
+@Component
+public class ExponentialRetryPolicy implements RetryPolicy {
+
+    /**
+     * 重试策略的id
+     */
+    public static final String POLICY_ID = "exponential";
+    /**
+     * 指数的上限 避免间隔溢出 超过上限后间隔不再增长
+     */
+    private static final int MAX_EXPONENT = 30;
+
+    @Override
+    public String policyId() {
+        return POLICY_ID;
+    }
+
+    @Override
+    public long nextDelayMillis(int failedTimes, long intervalMillis) {
+        return exponentialDelay(failedTimes, intervalMillis, 2);
+    }
+
+    /**
+     * 计算指数增长的间隔 intervalMillis * multiplier^(failedTimes-1)
+     *
+     * @param failedTimes    任务已经失败的次数
+     * @param intervalMillis 执行间隔
+     * @param multiplier     每次失败后间隔增长的倍数
+     * @return 间隔 单位毫秒
+     */
+    static long exponentialDelay(int failedTimes, long intervalMillis, int multiplier) {
+        long delay = intervalMillis;
+        for (int i = 1; i < Math.min(failedTimes, MAX_EXPONENT); i++) {
+            if (delay > Long.MAX_VALUE / multiplier) {
+                return Long.MAX_VALUE;
+            }
+            delay *= multiplier;
+        }
+        return delay;
+    }
+
+}
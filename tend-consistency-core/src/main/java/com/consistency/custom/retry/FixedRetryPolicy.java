@@ -0,0 +1,28 @@
+package com.consistency.custom.retry;
+
+import org.springframework.stereotype.Component;
+
+/**
+ * 固定间隔的重试策略 每次失败后都间隔executeIntervalSec再执行
+ *
+ * @author xiayang
+ **/
+@Component
+public class FixedRetryPolicy implements RetryPolicy {
+
+    /**
+     * 重试策略的id
+     */
+    public static final String POLICY_ID = "fixed";
+
+    @Override
+    public String policyId() {
+        return POLICY_ID;
+    }
+
+    @Override
+    public long nextDelayMillis(int failedTimes, long intervalMillis) {
+        return intervalMillis;
+    }
+
+}
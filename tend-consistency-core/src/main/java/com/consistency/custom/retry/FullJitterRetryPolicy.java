@@ -0,0 +1,35 @@
+package com.consistency.custom.retry;
+
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 带全抖动的指数退避重试策略 第N次失败后在 [0, executeIntervalSec * 2^(N-1)] 中随机选择间隔
+ * 同一时刻失败的任务会被打散到整个退避窗口中重试，避免下游恢复时被集中重试的请求再次打垮
+ *
+ * @author xiayang
+ **/
+@Component
+public class FullJitterRetryPolicy implements RetryPolicy {
+
+    /**
+     * 重试策略的id
+     */
+    public static final String POLICY_ID = "full-jitter";
+
+    @Override
+    public String policyId() {
+        return POLICY_ID;
+    }
+
+    @Override
+    public long nextDelayMillis(int failedTimes, long intervalMillis) {
+        long ceiling = ExponentialRetryPolicy.exponentialDelay(failedTimes, intervalMillis, 2);
+        if (ceiling <= 0) {
+            return 0L;
+        }
+        return ThreadLocalRandom.current().nextLong(ceiling == Long.MAX_VALUE ? ceiling : ceiling + 1);
+    }
+
+}
@@ -0,0 +1,29 @@
+package com.consistency.custom.retry;
+
+import org.springframework.stereotype.Component;
+
+/**
+ * 线性增长的重试策略 第N次失败后间隔 N * executeIntervalSec 再执行
+ * 框架早期的任务都是按照该策略进行重试的，是默认的重试策略
+ *
+ * @author xiayang
+ **/
+@Component
+public class LinearRetryPolicy implements RetryPolicy {
+
+    /**
+     * 重试策略的id
+     */
+    public static final String POLICY_ID = "linear";
+
+    @Override
+    public String policyId() {
+        return POLICY_ID;
+    }
+
+    @Override
+    public long nextDelayMillis(int failedTimes, long intervalMillis) {
+        return failedTimes * intervalMillis;
+    }
+
+}
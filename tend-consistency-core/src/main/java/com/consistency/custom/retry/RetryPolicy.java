@@ -0,0 +1,28 @@
+package com.consistency.custom.retry;
+
+/**
+ * 任务重试策略接口 决定任务执行失败后距离下一次执行的间隔
+ * 如业务服务需要定制，实现该接口并注入spring容器，然后在@ConsistencyTask注解的retryPolicy中或者通过
+ * tend.consistency.retry.default-policy 指定policyId即可
+ *
+ * @author xiayang
+ **/
+public interface RetryPolicy {
+
+    /**
+     * 重试策略的id
+     *
+     * @return 重试策略的id
+     */
+    String policyId();
+
+    /**
+     * 计算距离下一次执行的间隔
+     *
+     * @param failedTimes    任务已经失败的次数 包括本次 从1开始
+     * @param intervalMillis 注解中配置的执行间隔 单位毫秒
+     * @return 距离下一次执行的间隔 单位毫秒 框架会再按照tend.consistency.retry.max-delay-sec进行截断
+     */
+    long nextDelayMillis(int failedTimes, long intervalMillis);
+
+}
@@ -3,14 +3,17 @@ package com.consistency.custom.shard;
 import com.google.common.base.Preconditions;
 import lombok.Getter;
 import lombok.Setter;
-import lombok.SneakyThrows;
 
 import java.util.Calendar;
 import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * 任务分片键生成器实现类
  * 如业务服务在配置文件中，没有配置任务分片键生成器的实现类，则使用该类作为分片键生成器
+ * 生成时不加锁：时间戳和序列号打包在一个long中，通过CAS进行更新；开启分段模式后，不同线程会使用各自的序列号子空间，彼此之间没有竞争
  *
  * @author xiayang
  **/
@@ -36,6 +39,16 @@ public final class SnowflakeShardingKeyGenerator implements ShardingKeyGenerator
 
     private static final int MAX_TOLERATE_TIME_DIFFERENCE_MILLISECONDS = 10;
 
+    /**
+     * 最大分段数 每个分段每毫秒至少还有64个序列号可用
+     */
+    public static final int MAX_STRIPES = 64;
+
+    /**
+     * 相邻分段的状态在数组中间隔的槽位数 8个long正好是一个缓存行 避免伪共享
+     */
+    private static final int STRIPE_PADDING = 8;
+
     private SnowflakeShardingKeyGenerator() {
     }
 
@@ -43,14 +56,22 @@ public final class SnowflakeShardingKeyGenerator implements ShardingKeyGenerator
     private static TimeService timeService = new TimeService();
 
     @Getter
-    @Setter
-    private Properties properties = new Properties();
+    private volatile Properties properties = new Properties();
 
-    private byte sequenceOffset;
+    /**
+     * 缓存的已经左移好的workerId 避免每次生成时都从properties中解析
+     */
+    private volatile long workerIdBits = WORKER_ID << WORKER_ID_LEFT_SHIFT_BITS;
 
-    private long sequence;
+    /**
+     * 缓存的最大容忍的时钟回拨毫秒数
+     */
+    private volatile long maxTolerateTimeDifferenceMilliseconds = MAX_TOLERATE_TIME_DIFFERENCE_MILLISECONDS;
 
-    private long lastMilliseconds;
+    /**
+     * 序列号的分段状态
+     */
+    private volatile Stripes stripes = new Stripes(1, 0L);
 
     static {
         Calendar calendar = Calendar.getInstance();
@@ -64,59 +85,50 @@ public final class SnowflakeShardingKeyGenerator implements ShardingKeyGenerator
 
     /**
      * 生产一致性任务分片键
+     * 1、当前毫秒的序列号用完时，借用下一毫秒继续生成，而不是自旋等待时钟前进，借用的时间不会超过最大容忍的时钟回拨时间
+     * 2、时钟回拨在容忍范围内时，沿用上次的时间戳继续生成，超出容忍范围则抛出异常
      *
      * @return 一致性任务分片键
      */
     @Override
-    public synchronized long generateShardKey() {
-        long currentMilliseconds = timeService.getCurrentMillis();
-        if (waitTolerateTimeDifferenceIfNeed(currentMilliseconds)) {
-            currentMilliseconds = timeService.getCurrentMillis();
-        }
-        if (lastMilliseconds == currentMilliseconds) {
-            if (0L == (sequence = (sequence + 1) & SEQUENCE_MASK)) {
-                currentMilliseconds = waitUntilNextTime(currentMilliseconds);
+    public long generateShardKey() {
+        Stripes current = stripes;
+        int stripeIndex = current.indexOf(Thread.currentThread());
+        int slot = stripeIndex * STRIPE_PADDING;
+        AtomicLongArray states = current.states;
+        while (true) {
+            long state = states.get(slot);
+            long lastTimestamp = state >>> SEQUENCE_BITS;
+            long lastSequence = state & SEQUENCE_MASK;
+            long currentTimestamp = timeService.getCurrentMillis() - EPOCH;
+            long nextTimestamp;
+            long nextSequence;
+            if (currentTimestamp > lastTimestamp) {
+                nextTimestamp = currentTimestamp;
+                // 每个新的毫秒序列号的起始值在0和1之间交替 避免并发较低时生成的分片键都是偶数
+                nextSequence = ~lastSequence & 1;
+            } else {
+                long timeDifferenceMilliseconds = lastTimestamp - currentTimestamp;
+                Preconditions.checkState(timeDifferenceMilliseconds < maxTolerateTimeDifferenceMilliseconds,
+                        "Clock is moving backwards, last time is %d milliseconds, current time is %d milliseconds",
+                        lastTimestamp + EPOCH, currentTimestamp + EPOCH);
+                nextTimestamp = lastTimestamp;
+                nextSequence = (lastSequence + 1) & current.sequenceMask;
+                if (nextSequence == 0L) {
+                    // 借用下一毫秒后会超出容忍范围 说明生成速度持续超过了序列号的上限 等待时钟前进
+                    if (timeDifferenceMilliseconds + 1 >= maxTolerateTimeDifferenceMilliseconds) {
+                        LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+                        continue;
+                    }
+                    nextTimestamp = lastTimestamp + 1;
+                }
+            }
+            if (states.compareAndSet(slot, state, (nextTimestamp << SEQUENCE_BITS) | nextSequence)) {
+                // 分段的索引放在序列号的高位 低位仍然随序列号变化 按照分片键取模的分库和分片规则不会只取决于线程
+                long sequence = ((long) stripeIndex << (SEQUENCE_BITS - current.stripeBits)) | nextSequence;
+                return (nextTimestamp << TIMESTAMP_LEFT_SHIFT_BITS) | workerIdBits | sequence;
             }
-        } else {
-            vibrateSequenceOffset();
-            sequence = sequenceOffset;
-        }
-        lastMilliseconds = currentMilliseconds;
-        return ((currentMilliseconds - EPOCH) << TIMESTAMP_LEFT_SHIFT_BITS) | (getWorkerId() << WORKER_ID_LEFT_SHIFT_BITS) | sequence;
-    }
-
-    @SneakyThrows
-    private boolean waitTolerateTimeDifferenceIfNeed(final long currentMilliseconds) {
-        if (lastMilliseconds <= currentMilliseconds) {
-            return false;
-        }
-        long timeDifferenceMilliseconds = lastMilliseconds - currentMilliseconds;
-        Preconditions.checkState(timeDifferenceMilliseconds < getMaxTolerateTimeDifferenceMilliseconds(),
-                "Clock is moving backwards, last time is %d milliseconds, current time is %d milliseconds", lastMilliseconds, currentMilliseconds);
-        Thread.sleep(timeDifferenceMilliseconds);
-        return true;
-    }
-
-    private long getWorkerId() {
-        long result = Long.valueOf(properties.getProperty("worker.id", String.valueOf(WORKER_ID)));
-        Preconditions.checkArgument(result >= 0L && result < WORKER_ID_MAX_VALUE);
-        return result;
-    }
-
-    private int getMaxTolerateTimeDifferenceMilliseconds() {
-        return Integer.valueOf(properties.getProperty("max.tolerate.time.difference.milliseconds", String.valueOf(MAX_TOLERATE_TIME_DIFFERENCE_MILLISECONDS)));
-    }
-
-    private long waitUntilNextTime(final long lastTime) {
-        long result = timeService.getCurrentMillis();
-        while (result <= lastTime) {
-            result = timeService.getCurrentMillis();
         }
-        return result;
-    }
-
-    private void vibrateSequenceOffset() {
-        sequenceOffset = (byte) (~sequenceOffset & 1);
     }
 
     /**
@@ -137,6 +149,80 @@ public final class SnowflakeShardingKeyGenerator implements ShardingKeyGenerator
 
     public void setWorkerId(String value) {
         properties.put("worker.id", value);
+        workerIdBits = parseWorkerId(properties) << WORKER_ID_LEFT_SHIFT_BITS;
+    }
+
+    public void setProperties(Properties properties) {
+        long workerId = parseWorkerId(properties);
+        long maxTolerate = parseMaxTolerateTimeDifferenceMilliseconds(properties);
+        this.properties = properties;
+        this.workerIdBits = workerId << WORKER_ID_LEFT_SHIFT_BITS;
+        this.maxTolerateTimeDifferenceMilliseconds = maxTolerate;
+    }
+
+    /**
+     * 设置序列号的分段数 需要在应用启动时 生成分片键之前设置
+     * 分段数为2的N次幂，每个线程按照线程id固定使用其中一个分段，分段的索引占用序列号的高N位，所以不同分段生成的分片键不会重复
+     *
+     * @param stripeCount 分段数 1表示不分段
+     */
+    public synchronized void setStripes(int stripeCount) {
+        Preconditions.checkArgument(stripeCount > 0 && stripeCount <= MAX_STRIPES && (stripeCount & (stripeCount - 1)) == 0,
+                "stripe count must be a power of 2 between 1 and %s", MAX_STRIPES);
+        Stripes current = stripes;
+        if (current.count == stripeCount) {
+            return;
+        }
+        // 新的分段从已经使用过的最大时间戳之后开始 保证切换前后生成的分片键不会重复
+        stripes = new Stripes(stripeCount, current.maxTimestamp());
+    }
+
+    private static long parseWorkerId(Properties properties) {
+        long result = Long.parseLong(properties.getProperty("worker.id", String.valueOf(WORKER_ID)));
+        Preconditions.checkArgument(result >= 0L && result < WORKER_ID_MAX_VALUE);
+        return result;
+    }
+
+    private static long parseMaxTolerateTimeDifferenceMilliseconds(Properties properties) {
+        return Integer.parseInt(properties.getProperty("max.tolerate.time.difference.milliseconds",
+                String.valueOf(MAX_TOLERATE_TIME_DIFFERENCE_MILLISECONDS)));
+    }
+
+    /**
+     * 序列号的分段状态 每个分段的状态为 (时间戳 << 12) | 分段内的序列号
+     */
+    private static final class Stripes {
+
+        private final int count;
+
+        private final int stripeBits;
+
+        private final long sequenceMask;
+
+        private final AtomicLongArray states;
+
+        Stripes(int count, long startTimestamp) {
+            this.count = count;
+            this.stripeBits = Integer.numberOfTrailingZeros(count);
+            this.sequenceMask = SEQUENCE_MASK >>> stripeBits;
+            this.states = new AtomicLongArray(count * STRIPE_PADDING);
+            // 序列号置为最大值 下次生成时会从startTimestamp的下一毫秒开始
+            for (int i = 0; i < count; i++) {
+                states.set(i * STRIPE_PADDING, (startTimestamp << SEQUENCE_BITS) | sequenceMask);
+            }
+        }
+
+        int indexOf(Thread thread) {
+            return count == 1 ? 0 : (int) (thread.getId() & (count - 1));
+        }
+
+        long maxTimestamp() {
+            long result = 0L;
+            for (int i = 0; i < count; i++) {
+                result = Math.max(result, states.get(i * STRIPE_PADDING) >>> SEQUENCE_BITS);
+            }
+            return result;
+        }
     }
 
-}
\ No newline at end of file
+}
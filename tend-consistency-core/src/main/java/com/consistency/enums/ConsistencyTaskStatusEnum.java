@@ -8,12 +8,13 @@ package com.consistency.enums;
 public enum ConsistencyTaskStatusEnum {
 
     /**
-     * 0:初始化 1:开始执行 2:执行失败 3:执行成功
+     * 0:初始化 1:开始执行 2:执行失败 3:执行成功 4:重试次数用尽 不再被调度
      */
     INIT(0),
     START(1),
     FAIL(2),
-    SUCCESS(3);
+    SUCCESS(3),
+    EXHAUSTED(4);
 
     private final Integer code;
 
@@ -0,0 +1,37 @@
+package com.consistency.enums;
+
+/**
+ * 任务执行线程模式枚举
+ *
+ * @author xiayang
+ **/
+public enum ExecutorModeEnum {
+
+    /**
+     * 固定大小的平台线程池
+     */
+    PLATFORM("platform", "平台线程池"),
+    /**
+     * 每个任务一个虚拟线程 需要JDK21及以上版本
+     */
+    VIRTUAL("virtual", "虚拟线程");
+
+    private final String code;
+
+    private final String desc;
+
+    ExecutorModeEnum(String code, String desc) {
+        this.code = code;
+        this.desc = desc;
+    }
+
+    public String getCode() {
+        return code;
+    }
+
+
+    public String getDesc() {
+        return desc;
+    }
+
+}
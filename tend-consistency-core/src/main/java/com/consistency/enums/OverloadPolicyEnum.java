@@ -0,0 +1,41 @@
+package com.consistency.enums;
+
+/**
+ * 待执行队列已满时的过载策略枚举
+ *
+ * @author xiayang
+ **/
+public enum OverloadPolicyEnum {
+
+    /**
+     * 交给调度器 标记为积压状态 队列低于低水位后立即查询补充
+     */
+    DEFER("defer", "交给调度器"),
+    /**
+     * 放入溢出队列 执行线程空闲后从溢出队列中取回
+     */
+    SPILL("spill", "放入溢出队列"),
+    /**
+     * 调用方等待一段时间 仍然没有空位时由调用方线程直接执行
+     */
+    CALLER_RUNS("caller-runs", "调用方执行");
+
+    private final String code;
+
+    private final String desc;
+
+    OverloadPolicyEnum(String code, String desc) {
+        this.code = code;
+        this.desc = desc;
+    }
+
+    public String getCode() {
+        return code;
+    }
+
+
+    public String getDesc() {
+        return desc;
+    }
+
+}
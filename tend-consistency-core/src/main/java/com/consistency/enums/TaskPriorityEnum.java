@@ -0,0 +1,42 @@
+package com.consistency.enums;
+
+/**
+ * 任务优先级枚举 数值越大优先级越高
+ *
+ * @author xiayang
+ **/
+public enum TaskPriorityEnum {
+
+    /**
+     * 高优先级 如支付补偿等关键任务
+     */
+    HIGH(1, "高优先级"),
+    /**
+     * 普通优先级 任务表中priority字段的默认值
+     */
+    NORMAL(0, "普通优先级"),
+    /**
+     * 低优先级 如营销等可以延后执行的任务
+     */
+    LOW(-1, "低优先级");
+
+
+    private final Integer code;
+
+    private final String desc;
+
+    TaskPriorityEnum(int code, String desc) {
+        this.code = code;
+        this.desc = desc;
+    }
+
+    public Integer getCode() {
+        return code;
+    }
+
+
+    public String getDesc() {
+        return desc;
+    }
+
+}
@@ -0,0 +1,42 @@
+package com.consistency.enums;
+
+/**
+ * 执行任务时的事务模式枚举
+ *
+ * @author xiayang
+ **/
+public enum TransactionModeEnum {
+
+    /**
+     * 不开启事务 只调用远程接口的任务使用 执行期间不占用数据库连接
+     */
+    NONE(0, "不开启事务"),
+    /**
+     * 加入当前事务 没有事务时开启新事务 任务方法中的数据库操作与标记任务成功在同一个事务中提交
+     */
+    REQUIRED(1, "加入或开启事务"),
+    /**
+     * 总是开启新事务
+     */
+    REQUIRES_NEW(2, "开启新事务");
+
+
+    private final Integer code;
+
+    private final String desc;
+
+    TransactionModeEnum(int code, String desc) {
+        this.code = code;
+        this.desc = desc;
+    }
+
+    public Integer getCode() {
+        return code;
+    }
+
+
+    public String getDesc() {
+        return desc;
+    }
+
+}
@@ -0,0 +1,14 @@
+package com.consistency.exceptions;
+
+/**
+ * 重复任务异常 相同幂等键的任务已经提交过，本次提交的任务被丢弃
+ *
+ * @author xiayang
+ **/
+public class DuplicateTaskException extends ConsistencyException {
+
+    public DuplicateTaskException(String message) {
+        super(message);
+    }
+
+}
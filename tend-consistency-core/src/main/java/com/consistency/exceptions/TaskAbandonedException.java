@@ -0,0 +1,14 @@
+package com.consistency.exceptions;
+
+/**
+ * 任务执行被看门狗放弃异常 看门狗放弃执行时已经按照执行失败记录了任务，执行线程返回后不再重复记录执行结果
+ *
+ * @author xiayang
+ **/
+public class TaskAbandonedException extends ConsistencyException {
+
+    public TaskAbandonedException(String message) {
+        super(message);
+    }
+
+}
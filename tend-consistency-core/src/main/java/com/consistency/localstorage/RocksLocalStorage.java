@@ -11,7 +11,9 @@ import org.springframework.util.StringUtils;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Queue;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
@@ -25,6 +27,11 @@ import java.util.concurrent.PriorityBlockingQueue;
 @Slf4j
 public class RocksLocalStorage {
 
+    /**
+     * 本地优先模式下 立即执行的任务所在的列族
+     */
+    public static final String LOCAL_FIRST_COLUMN_FAMILY = "local_first";
+
     private static RocksDB rocksDB;
     /**
      * 数据库列族(表)集合
@@ -63,8 +70,11 @@ public class RocksLocalStorage {
         // 会把列族的数据存储在一起，一个底层磁盘文件里，列族存储
         List<ColumnFamilyDescriptor> columnFamilyDescriptors = new ArrayList<>();
         columnFamilyDescriptors.add(new ColumnFamilyDescriptor(RocksDB.DEFAULT_COLUMN_FAMILY, new ColumnFamilyOptions()));
+        columnFamilyDescriptors.add(new ColumnFamilyDescriptor(LOCAL_FIRST_COLUMN_FAMILY.getBytes(), new ColumnFamilyOptions()));
         DBOptions dbOptions = new DBOptions();
         dbOptions.setCreateIfMissing(true);
+        // 从旧版本升级时 本地优先模式使用的列族还不存在
+        dbOptions.setCreateMissingColumnFamilies(true);
 
         // ColumnFamilyHandle集合
         List<ColumnFamilyHandle> columnFamilyHandles = new ArrayList<>();
@@ -230,6 +240,72 @@ public class RocksLocalStorage {
     }
 
 
+    /**
+     * 本地优先模式下 保存立即执行的任务
+     *
+     * @param localKey     任务在本地的key
+     * @param taskInstance 任务实例信息
+     * @param sync         是否在写入后同步刷盘 不刷盘时只能保证进程崩溃后不丢失
+     * @return 是否保存成功
+     */
+    public boolean putLocalFirst(String localKey, ConsistencyTaskInstance taskInstance, boolean sync) {
+        try (WriteOptions writeOptions = new WriteOptions().setSync(sync)) {
+            rocksDB.put(columnFamilyHandleMap.get(LOCAL_FIRST_COLUMN_FAMILY), writeOptions, localKey.getBytes(), getRocksValue(taskInstance));
+            return true;
+        } catch (Exception e) {
+            log.error("本地优先模式保存key={}时，发生异常", localKey, e);
+            return false;
+        }
+    }
+
+    /**
+     * 本地优先模式下 删除已经执行完成或者已经转存到数据库中的任务
+     *
+     * @param localKey 任务在本地的key
+     */
+    public void deleteLocalFirst(String localKey) {
+        try {
+            rocksDB.delete(columnFamilyHandleMap.get(LOCAL_FIRST_COLUMN_FAMILY), localKey.getBytes());
+        } catch (Exception e) {
+            log.error("本地优先模式删除key={}时，发生异常", localKey, e);
+        }
+    }
+
+    /**
+     * 本地优先模式下 任务是否仍然保存在本地
+     *
+     * @param localKey 任务在本地的key
+     * @return 是否存在 读取失败时按照存在处理
+     */
+    public boolean containsLocalFirst(String localKey) {
+        try {
+            return rocksDB.get(columnFamilyHandleMap.get(LOCAL_FIRST_COLUMN_FAMILY), localKey.getBytes()) != null;
+        } catch (Exception e) {
+            log.error("本地优先模式读取key={}时，发生异常", localKey, e);
+            return true;
+        }
+    }
+
+    /**
+     * 本地优先模式下 获取所有还没有确认的任务
+     *
+     * @return key为任务在本地的key
+     */
+    public Map<String, ConsistencyTaskInstance> listLocalFirst() {
+        Map<String, ConsistencyTaskInstance> result = new LinkedHashMap<>();
+        try (RocksIterator rocksIterator = rocksDB.newIterator(columnFamilyHandleMap.get(LOCAL_FIRST_COLUMN_FAMILY))) {
+            for (rocksIterator.seekToFirst(); rocksIterator.isValid(); rocksIterator.next()) {
+                ConsistencyTaskInstance instance = JSONUtil.toBean(new String(rocksIterator.value()), ConsistencyTaskInstance.class);
+                if (!ObjectUtil.isEmpty(instance)) {
+                    result.put(new String(rocksIterator.key()), instance);
+                }
+            }
+        } catch (Exception e) {
+            log.error("本地优先模式获取所有任务时，发生异常", e);
+        }
+        return result;
+    }
+
     /**
      * 根据一致性任务信息获取key
      *
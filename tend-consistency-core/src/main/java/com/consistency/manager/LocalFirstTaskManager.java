@@ -0,0 +1,326 @@
+package com.consistency.manager;
+
+import com.consistency.config.TendConsistencyConfiguration;
+import com.consistency.custom.shard.SnowflakeShardingKeyGenerator;
+import com.consistency.enums.ConsistencyTaskStatusEnum;
+import com.consistency.enums.ThreadWayEnum;
+import com.consistency.localstorage.RocksLocalStorage;
+import com.consistency.mapper.TaskStoreMapper;
+import com.consistency.model.ConsistencyTaskInstance;
+import com.consistency.utils.TimeUtils;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Date;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 立即执行任务的本地优先模式
+ * 1、任务先保存到RocksDB中(调用方处于事务中时在事务提交前保存，事务回滚后删除)，事务提交后直接执行，执行成功后从本地删除，整个过程不写任务表
+ * 2、执行失败时将任务写入任务表，由调度器按照正常流程重试、降级和告警
+ * 3、保存到本地后超过ackDeadlineSeconds仍未执行的任务(如执行线程池已满)，由扫描线程写入任务表，正在排队或者执行中的任务不会被转存
+ * 4、启动时扫描一次，重启前保存到本地的任务全部写入任务表
+ * 注意：事务提交前保存到本地后，如果提交过程中进程崩溃，重启后无法得知事务是否提交成功，该任务仍会被执行，业务方需要保证幂等
+ *
+ * @author xiayang
+ **/
+@Slf4j
+@Component
+public class LocalFirstTaskManager implements InitializingBean, DisposableBean {
+
+    /**
+     * 任务存储的mapper组件
+     */
+    @Autowired
+    private TaskStoreMapper taskStoreMapper;
+    /**
+     * 一致性框架配置
+     */
+    @Autowired
+    private TendConsistencyConfiguration tendConsistencyConfiguration;
+    /**
+     * RocksDB工具类
+     */
+    @Autowired
+    private RocksLocalStorage rocksLocalStorage;
+    /**
+     * 任务调度管理器
+     */
+    @Autowired
+    private TaskScheduleManager taskScheduleManager;
+    /**
+     * 任务隔离舱管理器
+     */
+    @Autowired
+    private TaskBulkheadManager taskBulkheadManager;
+    /**
+     * 任务执行结果的观察器
+     */
+    @Autowired
+    private TaskExecutionWatcher taskExecutionWatcher;
+    /**
+     * 任务重试策略管理器
+     */
+    @Autowired
+    private TaskRetryPolicyManager taskRetryPolicyManager;
+    /**
+     * 任务参数编解码管理器
+     */
+    @Autowired
+    private TaskParameterCodecManager taskParameterCodecManager;
+
+    /**
+     * 扫描超时未确认任务的线程
+     */
+    private ScheduledExecutorService ackDeadlineScheduledExecutorService;
+
+    /**
+     * 已经提交执行或者正在转存的任务在本地的key 执行和转存都需要先占有key 同一个任务不会既在本地执行又写入任务表
+     */
+    private final Set<String> claimedLocalKeys = ConcurrentHashMap.newKeySet();
+
+    @Override
+    public void afterPropertiesSet() {
+        if (!isEnabled()) {
+            return;
+        }
+        long intervalSeconds = Math.max(1, tendConsistencyConfiguration.getLocalFirstAckDeadlineSeconds() / 2);
+        ackDeadlineScheduledExecutorService = Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "localFirstAckDeadlineScheduler"));
+        // 启动时立即扫描一次 重启前保存到本地的任务不会再被执行 不论是否超时都转存到任务表中
+        long startupTime = System.currentTimeMillis();
+        ackDeadlineScheduledExecutorService.execute(() -> promoteExpiredTasks(startupTime));
+        ackDeadlineScheduledExecutorService.scheduleWithFixedDelay(() -> promoteExpiredTasks(System.currentTimeMillis()
+                        - TimeUtils.secToMill(tendConsistencyConfiguration.getLocalFirstAckDeadlineSeconds())),
+                intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+        log.info("[一致性任务框架] 立即执行任务的本地优先模式已开启 ackDeadlineSeconds={} syncWrite={}",
+                tendConsistencyConfiguration.getLocalFirstAckDeadlineSeconds(), tendConsistencyConfiguration.getLocalFirstSyncWrite());
+    }
+
+    @Override
+    public void destroy() {
+        if (ackDeadlineScheduledExecutorService != null) {
+            ackDeadlineScheduledExecutorService.shutdownNow();
+        }
+    }
+
+    /**
+     * 是否开启了本地优先模式
+     *
+     * @return 是否开启
+     */
+    public boolean isEnabled() {
+        return tendConsistencyConfiguration.getLocalFirstEnabled();
+    }
+
+    /**
+     * 以本地优先的方式初始化并执行立即执行的任务
+     *
+     * @param taskInstance 任务实例信息
+     */
+    public void initTask(ConsistencyTaskInstance taskInstance) {
+        String localKey = String.valueOf(SnowflakeShardingKeyGenerator.getInstance().generateShardKey());
+        if (TransactionSynchronizationManager.isActualTransactionActive()
+                && TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new LocalFirstSynchronization(localKey, taskInstance));
+            return;
+        }
+        if (storeLocal(localKey, taskInstance)) {
+            dispatch(localKey, taskInstance);
+        } else {
+            initTaskToDatabase(taskInstance);
+        }
+    }
+
+    /**
+     * 保存任务到本地
+     *
+     * @param localKey     任务在本地的key
+     * @param taskInstance 任务实例信息
+     * @return 是否保存成功
+     */
+    private boolean storeLocal(String localKey, ConsistencyTaskInstance taskInstance) {
+        return rocksLocalStorage.putLocalFirst(localKey, taskInstance, tendConsistencyConfiguration.getLocalFirstSyncWrite());
+    }
+
+    /**
+     * 本地保存失败时 按照原有方式写入任务表并提交执行
+     *
+     * @param taskInstance 任务实例信息
+     */
+    private void initTaskToDatabase(ConsistencyTaskInstance taskInstance) {
+        try {
+            taskParameterCodecManager.insertWithOverflow(taskInstance, () -> taskStoreMapper.initTask(taskInstance));
+        } catch (DuplicateKeyException e) {
+            log.info("[一致性任务框架] 幂等键 [{}] 的任务已经存在，丢弃重复的任务", taskInstance.getIdempotentKey());
+            return;
+        }
+        log.warn("[一致性任务框架] 本地优先模式保存任务失败，任务已写入任务表，由调度器执行 taskId={}", taskInstance.getTaskId());
+    }
+
+    /**
+     * 按照任务的线程模型执行任务
+     *
+     * @param localKey     任务在本地的key
+     * @param taskInstance 任务实例信息
+     */
+    private void dispatch(String localKey, ConsistencyTaskInstance taskInstance) {
+        // 已经被扫描线程占有的任务 由扫描线程写入任务表
+        if (!claimedLocalKeys.add(localKey)) {
+            return;
+        }
+        if (ThreadWayEnum.SYNC.getCode().equals(taskInstance.getThreadWay())) {
+            executeLocal(localKey, taskInstance);
+            return;
+        }
+        try {
+            // 按照任务所属的隔离舱执行
+            taskBulkheadManager.getExecutor(taskInstance).execute(() -> executeLocal(localKey, taskInstance));
+        } catch (RejectedExecutionException e) {
+            // 任务仍保存在本地 释放占有后 超时未确认时会转存到任务表中
+            claimedLocalKeys.remove(localKey);
+            log.warn("[一致性任务框架] 执行线程池已满，本地优先的任务将在超时后转存到任务表中 localKey={}", localKey);
+        }
+    }
+
+    /**
+     * 执行本地保存的任务 成功后从本地删除 失败后转存到任务表中
+     *
+     * @param localKey     任务在本地的key
+     * @param taskInstance 任务实例信息
+     */
+    private void executeLocal(String localKey, ConsistencyTaskInstance taskInstance) {
+        try {
+            try {
+                taskInstance.setTaskStatus(ConsistencyTaskStatusEnum.START.getCode());
+                taskScheduleManager.performanceTask(taskInstance);
+            } catch (Exception e) {
+                log.error("[一致性任务框架] 本地优先的任务执行失败，转存到任务表中由调度器重试 localKey={}", localKey, e);
+                // 按照已经执行过一次失败的状态写入任务表
+                taskInstance.setTaskStatus(ConsistencyTaskStatusEnum.FAIL.getCode());
+                taskInstance.setExecuteTimes(1);
+                taskInstance.setErrorMsg(getErrorMsg(e));
+                taskInstance.setExecuteTime(taskRetryPolicyManager.nextExecuteTime(taskInstance, 1, System.currentTimeMillis()));
+                promote(localKey, taskInstance);
+                return;
+            }
+            rocksLocalStorage.deleteLocalFirst(localKey);
+            taskExecutionWatcher.onExecuted(taskInstance);
+        } finally {
+            claimedLocalKeys.remove(localKey);
+        }
+    }
+
+    /**
+     * 扫描超时未确认的任务 转存到任务表中 已经提交执行的任务由执行线程负责 不会转存
+     *
+     * @param deadline 在该时间之前保存到本地的任务才会被转存
+     */
+    private void promoteExpiredTasks(long deadline) {
+        try {
+            for (Map.Entry<String, ConsistencyTaskInstance> entry : rocksLocalStorage.listLocalFirst().entrySet()) {
+                String localKey = entry.getKey();
+                ConsistencyTaskInstance taskInstance = entry.getValue();
+                if (taskInstance.getGmtCreate() != null && taskInstance.getGmtCreate().getTime() > deadline) {
+                    continue;
+                }
+                if (!claimedLocalKeys.add(localKey)) {
+                    continue;
+                }
+                try {
+                    // 扫描开始后执行完成并释放占有的任务 已经从本地删除
+                    if (!rocksLocalStorage.containsLocalFirst(localKey)) {
+                        continue;
+                    }
+                    log.warn("[一致性任务框架] 本地优先的任务超时未确认，转存到任务表中 localKey={}", localKey);
+                    taskInstance.setExecuteTime(System.currentTimeMillis());
+                    promote(localKey, taskInstance);
+                } finally {
+                    claimedLocalKeys.remove(localKey);
+                }
+            }
+        } catch (Exception e) {
+            log.error("[一致性任务框架] 扫描本地优先的任务时，发生异常", e);
+        }
+    }
+
+    /**
+     * 将本地保存的任务写入任务表 写入成功后从本地删除 写入失败时保留在本地等待下次扫描
+     *
+     * @param localKey     任务在本地的key
+     * @param taskInstance 任务实例信息
+     */
+    private void promote(String localKey, ConsistencyTaskInstance taskInstance) {
+        try {
+            taskInstance.setGmtModified(new Date());
+            taskParameterCodecManager.insertWithOverflow(taskInstance, () -> taskStoreMapper.initTask(taskInstance));
+        } catch (DuplicateKeyException e) {
+            log.info("[一致性任务框架] 幂等键 [{}] 的任务已经存在，丢弃本地的任务", taskInstance.getIdempotentKey());
+        } catch (Exception e) {
+            log.error("[一致性任务框架] 本地优先的任务转存到任务表时，发生异常，等待下次扫描 localKey={}", localKey, e);
+            return;
+        }
+        rocksLocalStorage.deleteLocalFirst(localKey);
+    }
+
+    private String getErrorMsg(Exception e) {
+        String errorMsg = e.getMessage() == null ? e.getClass().getName() : e.getMessage();
+        return errorMsg.substring(0, Math.min(errorMsg.length(), 200));
+    }
+
+    /**
+     * 事务内的本地优先任务 事务提交前保存到本地，事务提交后执行，事务回滚后从本地删除
+     */
+    private class LocalFirstSynchronization extends TransactionSynchronizationAdapter {
+
+        private final String localKey;
+
+        private final ConsistencyTaskInstance taskInstance;
+
+        /**
+         * 是否保存到了本地 保存失败时已经在事务中写入了任务表
+         */
+        private boolean storedLocal;
+
+        LocalFirstSynchronization(String localKey, ConsistencyTaskInstance taskInstance) {
+            this.localKey = localKey;
+            this.taskInstance = taskInstance;
+        }
+
+        @Override
+        public void beforeCommit(boolean readOnly) {
+            storedLocal = storeLocal(localKey, taskInstance);
+            if (!storedLocal) {
+                // 仍在事务中 写入任务表的任务与业务数据一起提交
+                initTaskToDatabase(taskInstance);
+            }
+        }
+
+        @Override
+        public void afterCommit() {
+            if (storedLocal) {
+                dispatch(localKey, taskInstance);
+            }
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            if (storedLocal && status != TransactionSynchronization.STATUS_COMMITTED) {
+                rocksLocalStorage.deleteLocalFirst(localKey);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,191 @@
+package com.consistency.manager;
+
+import com.consistency.config.TaskBulkheadConfigProperties;
+import com.consistency.config.TendConsistencyConfiguration;
+import com.consistency.config.VirtualThreadTaskExecutor;
+import com.consistency.enums.ExecutorModeEnum;
+import com.consistency.exceptions.ConsistencyException;
+import com.consistency.model.ConsistencyTaskInstance;
+import com.consistency.template.TaskTemplateRegistry;
+import com.consistency.utils.VirtualThreadUtils;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 任务隔离舱管理器
+ * 根据@ConsistencyTask注解中的bulkhead或者配置中的taskIds将任务路由到对应的隔离舱，每个隔离舱有独立的执行线程池，
+ * 某个下游变慢时只会占满自己隔离舱的线程，不影响其他任务。没有指定隔离舱的任务使用默认的任务执行线程池。
+ *
+ * @author xiayang
+ **/
+@Slf4j
+@Component
+public class TaskBulkheadManager implements InitializingBean, DisposableBean {
+
+    /**
+     * 默认隔离舱的名称
+     */
+    public static final String DEFAULT_BULKHEAD = "default";
+    /**
+     * 隔离舱线程名称前缀
+     */
+    private static final String BULKHEAD_THREAD_POOL_PREFIX = "BulkheadPool_";
+
+    /**
+     * 一致性框架配置
+     */
+    @Autowired
+    private TendConsistencyConfiguration tendConsistencyConfiguration;
+    /**
+     * 一致性任务模板注册表
+     */
+    @Autowired
+    private TaskTemplateRegistry taskTemplateRegistry;
+    /**
+     * 一致性任务执行的线程池 作为默认隔离舱
+     */
+    @Autowired
+    private ExecutorService consistencyTaskExecutor;
+
+    /**
+     * 隔离舱的执行线程池 不包括默认隔离舱
+     */
+    private final Map<String, ExecutorService> executors = new LinkedHashMap<>();
+    /**
+     * taskId -> 隔离舱名称
+     */
+    private final Map<String, String> bulkheadsByTaskId = new ConcurrentHashMap<>();
+    /**
+     * 注解中指定了但没有配置的隔离舱 只告警一次
+     */
+    private final Set<String> unknownBulkheads = ConcurrentHashMap.newKeySet();
+
+    @Override
+    public void afterPropertiesSet() {
+        for (Map.Entry<String, TaskBulkheadConfigProperties.Bulkhead> entry : tendConsistencyConfiguration.getBulkheads().entrySet()) {
+            String name = entry.getKey();
+            TaskBulkheadConfigProperties.Bulkhead bulkhead = entry.getValue();
+            if (DEFAULT_BULKHEAD.equals(name)) {
+                throw new ConsistencyException("隔离舱名称不能为default，默认隔离舱使用tend.consistency.parallel.pool的配置");
+            }
+            if (bulkhead.getMaxConcurrency() == null || bulkhead.getMaxConcurrency() <= 0
+                    || bulkhead.getQueueSize() == null || bulkhead.getQueueSize() < 0) {
+                throw new ConsistencyException(String.format("隔离舱 %s 配置错误！注意：max-concurrency必须大于0，queue-size必须大于等于0，配置项为：tend.consistency.bulkheads.%s", name, name));
+            }
+            executors.put(name, createExecutor(name, bulkhead));
+            if (bulkhead.getTaskIds() != null) {
+                bulkhead.getTaskIds().forEach(taskId -> bulkheadsByTaskId.put(taskId, name));
+            }
+            log.info("[一致性任务框架] 初始化隔离舱 {} maxConcurrency={} queueSize={}", name, bulkhead.getMaxConcurrency(), bulkhead.getQueueSize());
+        }
+    }
+
+    @Override
+    public void destroy() {
+        executors.values().forEach(ExecutorService::shutdown);
+    }
+
+    /**
+     * 获取所有配置的隔离舱名称 不包括默认隔离舱
+     *
+     * @return 隔离舱名称
+     */
+    public Set<String> getBulkheadNames() {
+        return Collections.unmodifiableSet(executors.keySet());
+    }
+
+    /**
+     * 获取隔离舱的配置
+     *
+     * @param name 隔离舱名称
+     * @return 隔离舱的配置
+     */
+    public TaskBulkheadConfigProperties.Bulkhead getBulkheadConfig(String name) {
+        return tendConsistencyConfiguration.getBulkheads().get(name);
+    }
+
+    /**
+     * 获取任务所属的隔离舱 注解中指定的隔离舱优先 其次是配置中的taskIds
+     *
+     * @param taskInstance 任务实例信息
+     * @return 隔离舱名称 没有指定或者没有配置时返回默认隔离舱
+     */
+    public String resolveBulkhead(ConsistencyTaskInstance taskInstance) {
+        String name = taskTemplateRegistry.getBulkhead(taskInstance.getMethodSignName());
+        if (StringUtils.isEmpty(name)) {
+            name = bulkheadsByTaskId.get(taskInstance.getTaskId());
+        }
+        if (StringUtils.isEmpty(name)) {
+            return DEFAULT_BULKHEAD;
+        }
+        if (!executors.containsKey(name)) {
+            if (unknownBulkheads.add(name)) {
+                log.warn("[一致性任务框架] 隔离舱 {} 没有配置，使用默认隔离舱执行，配置项为：tend.consistency.bulkheads.{}", name, name);
+            }
+            return DEFAULT_BULKHEAD;
+        }
+        return name;
+    }
+
+    /**
+     * 获取隔离舱的执行线程池
+     *
+     * @param name 隔离舱名称
+     * @return 执行线程池
+     */
+    public ExecutorService getExecutor(String name) {
+        return executors.getOrDefault(name, consistencyTaskExecutor);
+    }
+
+    /**
+     * 获取任务所属隔离舱的执行线程池
+     *
+     * @param taskInstance 任务实例信息
+     * @return 执行线程池
+     */
+    public ExecutorService getExecutor(ConsistencyTaskInstance taskInstance) {
+        return getExecutor(resolveBulkhead(taskInstance));
+    }
+
+    /**
+     * 创建隔离舱的执行线程池 与默认线程池使用相同的线程模式
+     *
+     * @param name     隔离舱名称
+     * @param bulkhead 隔离舱配置
+     * @return 执行线程池
+     */
+    private ExecutorService createExecutor(String name, TaskBulkheadConfigProperties.Bulkhead bulkhead) {
+        String threadNamePrefix = BULKHEAD_THREAD_POOL_PREFIX + name + "_";
+        // 虚拟线程模式在创建默认线程池时已经校验过JDK版本 不支持时启动失败
+        if (ExecutorModeEnum.VIRTUAL.getCode().equals(tendConsistencyConfiguration.getThreadPoolMode())) {
+            return new VirtualThreadTaskExecutor(VirtualThreadUtils.newVirtualThreadPerTaskExecutor(threadNamePrefix),
+                    bulkhead.getMaxConcurrency(), bulkhead.getQueueSize());
+        }
+        AtomicInteger threadIndex = new AtomicInteger(0);
+        return new ThreadPoolExecutor(
+                bulkhead.getMaxConcurrency(),
+                bulkhead.getMaxConcurrency(),
+                60,
+                TimeUnit.SECONDS,
+                // LinkedBlockingQueue的容量必须大于0
+                new LinkedBlockingQueue<>(Math.max(1, bulkhead.getQueueSize())),
+                r -> new Thread(r, threadNamePrefix + threadIndex.incrementAndGet())
+        );
+    }
+
+}
@@ -0,0 +1,265 @@
+package com.consistency.manager;
+
+import com.consistency.config.TendConsistencyConfiguration;
+import com.consistency.model.ConsistencyTaskInstance;
+import com.consistency.service.TaskStoreService;
+import com.consistency.utils.TimeUtils;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 任务熔断器 按照任务的方法签名(即任务调用的下游)分别熔断
+ * 同一个任务方法连续失败达到阈值时熔断，熔断期间到期的任务不再执行，而是用一条语句批量推迟到熔断结束的时间，
+ * 不再为每个任务开启事务、标记失败以及告警，也不再给故障中的下游增加压力。
+ * 熔断结束后进入半开状态，放行少量探测任务，探测成功后恢复，探测失败后再次熔断。
+ *
+ * @author xiayang
+ **/
+@Slf4j
+@Component
+public class TaskCircuitBreaker {
+
+    /**
+     * 一致性框架配置
+     */
+    @Autowired
+    private TendConsistencyConfiguration tendConsistencyConfiguration;
+    /**
+     * 任务存储的service组件
+     */
+    @Autowired
+    private TaskStoreService taskStoreService;
+
+    /**
+     * 各个任务方法的熔断状态 key为方法签名
+     */
+    private final Map<String, Circuit> circuits = new ConcurrentHashMap<>(64);
+    /**
+     * 因为熔断被推迟执行的任务数
+     */
+    private final AtomicLong deferredCount = new AtomicLong();
+
+    /**
+     * 任务是否可以执行 熔断中的任务方法返回false 半开状态下放行探测任务
+     *
+     * @param taskInstance 任务实例信息
+     * @return 是否可以执行
+     */
+    public boolean tryAcquire(ConsistencyTaskInstance taskInstance) {
+        // 本地存储中的任务没有id 无法推迟执行时间 不进行熔断
+        if (!tendConsistencyConfiguration.getCircuitBreakerEnabled() || taskInstance.getId() == null) {
+            return true;
+        }
+        Circuit circuit = circuits.get(taskInstance.getMethodSignName());
+        return circuit == null || circuit.tryAcquire(System.currentTimeMillis());
+    }
+
+    /**
+     * 过滤掉熔断中的任务方法的任务 并用一条语句批量推迟这些任务的执行时间
+     *
+     * @param taskInstances 到期的任务
+     * @return 可以执行的任务
+     */
+    public List<ConsistencyTaskInstance> deferOpenCircuitTasks(List<ConsistencyTaskInstance> taskInstances) {
+        if (!tendConsistencyConfiguration.getCircuitBreakerEnabled() || circuits.isEmpty() || taskInstances.isEmpty()) {
+            return taskInstances;
+        }
+        List<ConsistencyTaskInstance> allowedTasks = new ArrayList<>(taskInstances.size());
+        Map<Long, List<ConsistencyTaskInstance>> deferredTasks = new HashMap<>();
+        for (ConsistencyTaskInstance taskInstance : taskInstances) {
+            if (tryAcquire(taskInstance)) {
+                allowedTasks.add(taskInstance);
+            } else {
+                // 同一个熔断周期内的任务推迟到同一个时间 一条语句完成
+                deferredTasks.computeIfAbsent(getDeferUntil(taskInstance), k -> new ArrayList<>()).add(taskInstance);
+            }
+        }
+        deferredTasks.forEach((deferUntil, tasks) -> defer(tasks, deferUntil));
+        return allowedTasks;
+    }
+
+    /**
+     * 推迟熔断中的任务方法的单个任务
+     *
+     * @param taskInstance 任务实例信息
+     */
+    public void defer(ConsistencyTaskInstance taskInstance) {
+        defer(Collections.singletonList(taskInstance), getDeferUntil(taskInstance));
+    }
+
+    /**
+     * 记录任务执行成功 半开状态下的探测任务执行成功后恢复
+     *
+     * @param taskInstance 任务实例信息
+     */
+    public void onSuccess(ConsistencyTaskInstance taskInstance) {
+        if (!tendConsistencyConfiguration.getCircuitBreakerEnabled()) {
+            return;
+        }
+        Circuit circuit = circuits.get(taskInstance.getMethodSignName());
+        if (circuit != null && circuit.onSuccess()) {
+            log.info("[一致性任务框架] 探测任务执行成功，任务方法恢复执行 {}", taskInstance.getMethodSignName());
+        }
+    }
+
+    /**
+     * 记录任务执行失败 连续失败达到阈值或者半开状态下的探测任务执行失败时熔断
+     *
+     * @param taskInstance 任务实例信息
+     */
+    public void onFailure(ConsistencyTaskInstance taskInstance) {
+        if (!tendConsistencyConfiguration.getCircuitBreakerEnabled()) {
+            return;
+        }
+        Circuit circuit = circuits.computeIfAbsent(taskInstance.getMethodSignName(), k -> new Circuit());
+        if (circuit.onFailure(System.currentTimeMillis())) {
+            log.warn("[一致性任务框架] 任务方法连续执行失败，熔断 {} 秒 {}",
+                    tendConsistencyConfiguration.getCircuitBreakerOpenSeconds(), taskInstance.getMethodSignName());
+        }
+    }
+
+    /**
+     * 获取熔断中的任务方法
+     *
+     * @return key为方法签名 value为熔断状态 open(熔断中)、half-open(半开)
+     */
+    public Map<String, String> getOpenCircuits() {
+        Map<String, String> openCircuits = new LinkedHashMap<>();
+        circuits.forEach((methodSignName, circuit) -> {
+            String state = circuit.getState();
+            if (state != null) {
+                openCircuits.put(methodSignName, state);
+            }
+        });
+        return openCircuits;
+    }
+
+    /**
+     * 获取因为熔断被推迟执行的任务数
+     *
+     * @return 推迟执行的任务数
+     */
+    public long getDeferredCount() {
+        return deferredCount.get();
+    }
+
+    private void defer(List<ConsistencyTaskInstance> taskInstances, long deferUntil) {
+        try {
+            int count = taskStoreService.deferTasks(taskInstances, deferUntil);
+            deferredCount.addAndGet(count);
+            log.info("[一致性任务框架] 任务方法熔断中，推迟任务的执行时间 任务数为 [{}] 推迟的任务数为 [{}] 方法为 {}",
+                    taskInstances.size(), count, taskInstances.get(0).getMethodSignName());
+        } catch (Exception e) {
+            // 推迟失败时任务保持原来的执行时间 等待下一次调度时再推迟
+            log.error("[一致性任务框架] 推迟熔断中的任务时，发生异常 任务数为 {}", taskInstances.size(), e);
+            taskStoreService.releaseLease(taskInstances);
+        }
+    }
+
+    private long getDeferUntil(ConsistencyTaskInstance taskInstance) {
+        Circuit circuit = circuits.get(taskInstance.getMethodSignName());
+        long now = System.currentTimeMillis();
+        return circuit == null ? now : Math.max(circuit.getOpenUntil(), now);
+    }
+
+    /**
+     * 一个任务方法的熔断状态
+     */
+    private class Circuit {
+
+        /**
+         * 连续失败的次数
+         */
+        private int consecutiveFailures;
+
+        /**
+         * 是否熔断中(包括半开状态)
+         */
+        private boolean open;
+
+        /**
+         * 是否处于半开状态
+         */
+        private boolean halfOpen;
+
+        /**
+         * 本次熔断或者本个半开周期结束的时间
+         */
+        private long openUntil;
+
+        /**
+         * 本个半开周期已经放行的探测任务数
+         */
+        private int probes;
+
+        synchronized boolean tryAcquire(long now) {
+            if (!open) {
+                return true;
+            }
+            if (now >= openUntil) {
+                // 熔断结束或者上一个半开周期的探测任务没有返回结果 开始新的半开周期
+                halfOpen = true;
+                probes = 0;
+                openUntil = now + TimeUtils.secToMill(tendConsistencyConfiguration.getCircuitBreakerOpenSeconds());
+            }
+            if (halfOpen && probes < tendConsistencyConfiguration.getCircuitBreakerHalfOpenProbes()) {
+                probes++;
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * @return 是否从半开状态恢复
+         */
+        synchronized boolean onSuccess() {
+            consecutiveFailures = 0;
+            // 熔断前已经开始执行的任务的结果不作为恢复的依据
+            if (!halfOpen) {
+                return false;
+            }
+            open = false;
+            halfOpen = false;
+            return true;
+        }
+
+        /**
+         * @return 是否因为本次失败熔断
+         */
+        synchronized boolean onFailure(long now) {
+            if (open && !halfOpen) {
+                return false;
+            }
+            if (!halfOpen && ++consecutiveFailures < tendConsistencyConfiguration.getCircuitBreakerFailureThreshold()) {
+                return false;
+            }
+            open = true;
+            halfOpen = false;
+            consecutiveFailures = 0;
+            openUntil = now + TimeUtils.secToMill(tendConsistencyConfiguration.getCircuitBreakerOpenSeconds());
+            return true;
+        }
+
+        synchronized long getOpenUntil() {
+            return openUntil;
+        }
+
+        synchronized String getState() {
+            if (!open) {
+                return null;
+            }
+            return halfOpen ? "half-open" : "open";
+        }
+    }
+
+}
@@ -0,0 +1,118 @@
+package com.consistency.manager;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 任务执行的并发限制器
+ * 关闭自适应时为固定上限，等价于信号量；开启自适应时使用AIMD(加性增、乘性减)算法：
+ * 任务执行成功且耗时正常时，每执行limit个任务并发数加1；任务执行失败或者耗时超过阈值时，并发数乘以backoffRatio。
+ * 只有实际并发数达到当前上限的一半以上时才增加上限，避免空闲时上限无限增长。
+ *
+ * @author xiayang
+ **/
+public class TaskConcurrencyLimiter {
+
+    /**
+     * 并发数的下限
+     */
+    private final int minLimit;
+    /**
+     * 并发数的上限 即执行线程数
+     */
+    private final int maxLimit;
+    /**
+     * 是否自适应调整
+     */
+    private final boolean adaptive;
+    /**
+     * 失败或超时时的缩减比例
+     */
+    private final double backoffRatio;
+    /**
+     * 耗时阈值 单位纳秒
+     */
+    private final long latencyThresholdNanos;
+    /**
+     * 当前的并发上限
+     */
+    private double limit;
+    /**
+     * 正在执行的任务数
+     */
+    private int inFlight;
+
+    private TaskConcurrencyLimiter(int minLimit, int maxLimit, int initialLimit, boolean adaptive,
+                                   double backoffRatio, long latencyThresholdMillis) {
+        this.maxLimit = Math.max(1, maxLimit);
+        this.minLimit = Math.min(Math.max(1, minLimit), this.maxLimit);
+        this.adaptive = adaptive;
+        this.backoffRatio = backoffRatio;
+        this.latencyThresholdNanos = TimeUnit.MILLISECONDS.toNanos(latencyThresholdMillis);
+        this.limit = Math.min(Math.max(initialLimit, this.minLimit), this.maxLimit);
+    }
+
+    /**
+     * 创建固定上限的并发限制器
+     *
+     * @param maxLimit 并发数上限
+     * @return 并发限制器
+     */
+    public static TaskConcurrencyLimiter fixed(int maxLimit) {
+        return new TaskConcurrencyLimiter(maxLimit, maxLimit, maxLimit, false, 1.0, 0L);
+    }
+
+    /**
+     * 创建AIMD自适应的并发限制器
+     *
+     * @param minLimit               并发数下限
+     * @param maxLimit               并发数上限
+     * @param initialLimit           初始并发数
+     * @param backoffRatio           失败或超时时的缩减比例
+     * @param latencyThresholdMillis 耗时阈值 单位毫秒
+     * @return 并发限制器
+     */
+    public static TaskConcurrencyLimiter adaptive(int minLimit, int maxLimit, int initialLimit,
+                                                  double backoffRatio, long latencyThresholdMillis) {
+        return new TaskConcurrencyLimiter(minLimit, maxLimit, initialLimit, true, backoffRatio, latencyThresholdMillis);
+    }
+
+    /**
+     * 获取一个执行许可 达到并发上限时阻塞
+     *
+     * @throws InterruptedException 等待时被中断
+     */
+    public synchronized void acquire() throws InterruptedException {
+        while (inFlight >= (int) limit) {
+            wait();
+        }
+        inFlight++;
+    }
+
+    /**
+     * 归还执行许可 并根据执行结果调整并发上限
+     *
+     * @param latencyNanos 任务执行耗时 单位纳秒 没有执行时为-1
+     * @param success      是否执行成功
+     */
+    public synchronized void release(long latencyNanos, boolean success) {
+        int currentInFlight = inFlight--;
+        if (adaptive && latencyNanos >= 0) {
+            if (!success || latencyNanos > latencyThresholdNanos) {
+                limit = Math.max(minLimit, limit * backoffRatio);
+            } else if (currentInFlight * 2 >= limit) {
+                limit = Math.min(maxLimit, limit + 1.0 / limit);
+            }
+        }
+        notifyAll();
+    }
+
+    /**
+     * 获取当前的并发上限
+     *
+     * @return 并发上限
+     */
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+}
@@ -0,0 +1,624 @@
+package com.consistency.manager;
+
+import com.consistency.config.TaskBulkheadConfigProperties;
+import com.consistency.config.TendConsistencyConfiguration;
+import com.consistency.enums.ConsistencyTaskStatusEnum;
+import com.consistency.enums.OverloadPolicyEnum;
+import com.consistency.enums.TaskPriorityEnum;
+import com.consistency.exceptions.ConsistencyException;
+import com.consistency.model.ConsistencyTaskInstance;
+import com.consistency.service.TaskCompletionSink;
+import com.consistency.service.TaskStoreService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 调度任务的持续分发器
+ * 调度器查询出的任务放入有界的待执行队列，分发线程在执行线程池有空闲线程时持续取出任务交给线程池执行，
+ * 单个执行较慢的任务只占用一个执行线程，不会阻塞同一批次的其他任务以及下一次查询。
+ * 任务积压时(上次查询填满了队列)，队列中的任务数低于低水位后会立即查询下一批任务，而不是等到下一次调度。
+ * 每个隔离舱有独立的待执行队列、分发线程和执行线程池，某个隔离舱的队列满了只会跳过该隔离舱的任务。
+ *
+ * @author xiayang
+ **/
+@Slf4j
+@Component
+public class TaskDispatcher implements InitializingBean, DisposableBean {
+
+    /**
+     * 分发线程的名称
+     */
+    private static final String DISPATCH_THREAD_NAME = "TaskDispatcher";
+    /**
+     * 补充任务线程的名称
+     */
+    private static final String REFILL_THREAD_NAME = "TaskDispatcherRefill";
+
+    /**
+     * 一致性框架配置
+     */
+    @Autowired
+    private TendConsistencyConfiguration tendConsistencyConfiguration;
+    /**
+     * 一致性任务执行的线程池
+     */
+    @Autowired
+    private ExecutorService consistencyTaskExecutor;
+    /**
+     * 任务执行引擎
+     */
+    @Resource
+    private TaskEngineExecutor taskEngineExecutor;
+    /**
+     * 任务调度管理器
+     */
+    @Autowired
+    private TaskScheduleManager taskScheduleManager;
+    /**
+     * 任务隔离舱管理器
+     */
+    @Autowired
+    private TaskBulkheadManager taskBulkheadManager;
+    /**
+     * 任务执行结果的批量写入器
+     */
+    @Autowired
+    private TaskCompletionSink taskCompletionSink;
+    /**
+     * 任务存储的service组件
+     */
+    @Autowired
+    private TaskStoreService taskStoreService;
+    /**
+     * 任务执行的看门狗
+     */
+    @Autowired
+    private TaskExecutionWatchdog taskExecutionWatchdog;
+    /**
+     * 任务限流器
+     */
+    @Autowired
+    private TaskRateLimiter taskRateLimiter;
+
+    /**
+     * 隔离舱名称 -> 分发通道
+     */
+    private final Map<String, DispatchLane> lanes = new LinkedHashMap<>();
+    /**
+     * 默认隔离舱的分发通道 调度器按照它的剩余容量查询任务
+     */
+    private DispatchLane defaultLane;
+    /**
+     * 已经进入待执行队列或者正在执行的任务 防止下一次查询时重复分发同一个任务
+     */
+    private final Set<String> inFlightTasks = ConcurrentHashMap.newKeySet();
+    /**
+     * 上次查询是否填满了待执行队列 填满说明还有积压的任务
+     */
+    private volatile boolean backlogged = false;
+    /**
+     * 是否已经提交了补充任务的查询
+     */
+    private final AtomicBoolean refillPending = new AtomicBoolean(false);
+    /**
+     * 补充任务的线程
+     */
+    private ExecutorService refillExecutorService;
+    /**
+     * 分发线程是否在运行
+     */
+    private volatile boolean running = false;
+    /**
+     * 过载时交给调度器的任务数
+     */
+    private final AtomicLong deferredCount = new AtomicLong();
+    /**
+     * 过载时放入溢出队列的任务数
+     */
+    private final AtomicLong spilledCount = new AtomicLong();
+    /**
+     * 过载时由调用方线程执行的任务数
+     */
+    private final AtomicLong callerRunsCount = new AtomicLong();
+
+    @Override
+    public void afterPropertiesSet() {
+        Double backoffRatio = tendConsistencyConfiguration.getAdaptiveLimitBackoffRatio();
+        if (tendConsistencyConfiguration.getAdaptiveLimitEnabled() && (backoffRatio <= 0 || backoffRatio >= 1)) {
+            throw new ConsistencyException("backoffRatio配置错误！注意：取值范围为(0,1)，配置项为：tend.consistency.adaptive-limit.backoff-ratio");
+        }
+        if (tendConsistencyConfiguration.getAdaptiveLimitEnabled() && tendConsistencyConfiguration.getAdaptiveLimitLatencyThresholdMillis() <= 0) {
+            throw new ConsistencyException("latencyThresholdMillis配置错误！注意：必须大于0，配置项为：tend.consistency.adaptive-limit.latency-threshold-millis");
+        }
+        refillExecutorService = Executors.newSingleThreadExecutor(r -> new Thread(r, REFILL_THREAD_NAME));
+        running = true;
+        defaultLane = new DispatchLane(TaskBulkheadManager.DEFAULT_BULKHEAD, tendConsistencyConfiguration.getReadyQueueSize(),
+                getWorkerCount(), consistencyTaskExecutor);
+        lanes.put(TaskBulkheadManager.DEFAULT_BULKHEAD, defaultLane);
+        for (String name : taskBulkheadManager.getBulkheadNames()) {
+            TaskBulkheadConfigProperties.Bulkhead bulkhead = taskBulkheadManager.getBulkheadConfig(name);
+            lanes.put(name, new DispatchLane(name, Math.max(1, bulkhead.getQueueSize()), bulkhead.getMaxConcurrency(),
+                    taskBulkheadManager.getExecutor(name)));
+        }
+        lanes.values().forEach(DispatchLane::start);
+    }
+
+    /**
+     * 创建分发通道的并发限制器 开启自适应时上限为执行线程数
+     *
+     * @param workerCount 执行线程数
+     * @return 并发限制器
+     */
+    private TaskConcurrencyLimiter createLimiter(int workerCount) {
+        if (!tendConsistencyConfiguration.getAdaptiveLimitEnabled()) {
+            return TaskConcurrencyLimiter.fixed(workerCount);
+        }
+        return TaskConcurrencyLimiter.adaptive(
+                tendConsistencyConfiguration.getAdaptiveLimitMinLimit(),
+                workerCount,
+                tendConsistencyConfiguration.getAdaptiveLimitInitialLimit(),
+                tendConsistencyConfiguration.getAdaptiveLimitBackoffRatio(),
+                tendConsistencyConfiguration.getAdaptiveLimitLatencyThresholdMillis());
+    }
+
+    /**
+     * 创建分发通道的待执行队列 按照优先级的权重以及任务方法轮流出队
+     *
+     * @param queueSize 队列的容量
+     * @return 待执行队列
+     */
+    private TaskReadyQueue createReadyQueue(int queueSize) {
+        Map<Integer, Integer> weights = new HashMap<>();
+        weights.put(TaskPriorityEnum.HIGH.getCode(), tendConsistencyConfiguration.getPriorityHighWeight());
+        weights.put(TaskPriorityEnum.NORMAL.getCode(), tendConsistencyConfiguration.getPriorityNormalWeight());
+        weights.put(TaskPriorityEnum.LOW.getCode(), tendConsistencyConfiguration.getPriorityLowWeight());
+        return new TaskReadyQueue(queueSize, weights);
+    }
+
+    /**
+     * 获取执行线程数 虚拟线程模式下为最大并发数
+     *
+     * @return 执行线程数
+     */
+    private int getWorkerCount() {
+        if (consistencyTaskExecutor instanceof ThreadPoolExecutor) {
+            return ((ThreadPoolExecutor) consistencyTaskExecutor).getMaximumPoolSize();
+        }
+        return tendConsistencyConfiguration.getVirtualMaxConcurrency();
+    }
+
+    @Override
+    public void destroy() {
+        running = false;
+        lanes.values().forEach(lane -> lane.dispatchThread.interrupt());
+        refillExecutorService.shutdownNow();
+    }
+
+    /**
+     * 获取待执行队列的剩余容量 调度器按照剩余容量查询任务
+     *
+     * @return 剩余容量
+     */
+    public int remainingCapacity() {
+        return defaultLane.readyQueue.remainingCapacity();
+    }
+
+    /**
+     * 将调度器查询出的任务放入待执行队列 已经在队列中或者正在执行的任务会被跳过
+     *
+     * @param taskInstances 任务实例列表
+     * @param backlogged    是否还有未查询出的积压任务
+     */
+    public void dispatch(List<ConsistencyTaskInstance> taskInstances, boolean backlogged) {
+        int count = enqueue(taskInstances);
+        if (count < 0) {
+            this.backlogged = true;
+            return;
+        }
+        // 查询出的任务都已经在执行中时 不认为有积压 避免执行中的任务反复触发补充查询
+        this.backlogged = backlogged && count > 0;
+        log.info("[一致性任务框架] 调度器放入待执行队列的任务数为 [{}] 队列中的任务数为 [{}] 过载处理的任务数为 {}",
+                count, defaultLane.readyQueue.size(), getOverloadCounts());
+    }
+
+    /**
+     * 将到期或者立即执行的任务放入待执行队列 不影响积压状态的判断
+     *
+     * @param taskInstances 任务实例列表
+     */
+    public void dispatchDue(List<ConsistencyTaskInstance> taskInstances) {
+        if (enqueue(taskInstances) < 0) {
+            // 到期的任务都在任务表中 标记为积压 队列低于低水位后立即查询补充 而不是等到下一次调度
+            deferredCount.incrementAndGet();
+            backlogged = true;
+            log.warn("[一致性任务框架] 待执行队列已满，到期的任务等待补充查询");
+        }
+    }
+
+    /**
+     * 提交立即执行的任务 待执行队列已满时按照配置的过载策略处理 不会抛出RejectedExecutionException
+     *
+     * @param taskInstance 任务实例信息
+     */
+    public void dispatchNow(ConsistencyTaskInstance taskInstance) {
+        String key = getInFlightKey(taskInstance);
+        if (taskCompletionSink.isPending(taskInstance) || key != null && !inFlightTasks.add(key)) {
+            return;
+        }
+        DispatchLane lane = getLane(taskInstance);
+        if (lane.readyQueue.offer(taskInstance)) {
+            return;
+        }
+        String overloadPolicy = tendConsistencyConfiguration.getOverloadPolicy();
+        if (OverloadPolicyEnum.SPILL.getCode().equals(overloadPolicy) && lane.overflowQueue.offer(taskInstance)) {
+            spilledCount.incrementAndGet();
+            return;
+        }
+        if (OverloadPolicyEnum.CALLER_RUNS.getCode().equals(overloadPolicy)) {
+            callerRuns(lane, taskInstance);
+            return;
+        }
+        defer(taskInstance);
+    }
+
+    /**
+     * 调用方等待待执行队列的空位 超过等待时间后由调用方线程直接执行 以此降低调用方的提交速度
+     *
+     * @param lane         任务所属的分发通道
+     * @param taskInstance 任务实例信息
+     */
+    private void callerRuns(DispatchLane lane, ConsistencyTaskInstance taskInstance) {
+        try {
+            if (lane.readyQueue.offer(taskInstance, tendConsistencyConfiguration.getCallerRunsWaitMillis(), TimeUnit.MILLISECONDS)) {
+                return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            defer(taskInstance);
+            return;
+        }
+        // 调用方线程执行时同样需要遵守限流 没有令牌时交给调度器
+        if (taskRateLimiter.tryAcquire(taskInstance) > 0) {
+            defer(taskInstance);
+            return;
+        }
+        callerRunsCount.incrementAndGet();
+        try {
+            taskEngineExecutor.executeTaskInstance(taskInstance);
+        } finally {
+            releaseInFlight(taskInstance);
+        }
+    }
+
+    /**
+     * 将任务交给调度器 任务已经保存在任务表或者RocksDB中 标记为积压后 队列低于低水位时会立即查询补充
+     *
+     * @param taskInstance 任务实例信息
+     */
+    private void defer(ConsistencyTaskInstance taskInstance) {
+        releaseInFlight(taskInstance);
+        deferredCount.incrementAndGet();
+        backlogged = true;
+        log.warn("[一致性任务框架] 待执行队列已满，任务交给调度器执行 taskId={}", taskInstance.getTaskId());
+    }
+
+    /**
+     * 获取各个过载策略处理过的任务数
+     *
+     * @return key为过载策略
+     */
+    public Map<String, Long> getOverloadCounts() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        counts.put(OverloadPolicyEnum.DEFER.getCode(), deferredCount.get());
+        counts.put(OverloadPolicyEnum.SPILL.getCode(), spilledCount.get());
+        counts.put(OverloadPolicyEnum.CALLER_RUNS.getCode(), callerRunsCount.get());
+        return counts;
+    }
+
+    /**
+     * 获取任务所属隔离舱的分发通道
+     *
+     * @param taskInstance 任务实例信息
+     * @return 分发通道
+     */
+    private DispatchLane getLane(ConsistencyTaskInstance taskInstance) {
+        return lanes.getOrDefault(taskBulkheadManager.resolveBulkhead(taskInstance), defaultLane);
+    }
+
+    /**
+     * 将任务放入所属隔离舱的待执行队列 已经在队列中或者正在执行的任务会被跳过
+     *
+     * @param taskInstances 任务实例列表
+     * @return 放入的任务数 默认隔离舱的队列已满时返回-1
+     */
+    private int enqueue(List<ConsistencyTaskInstance> taskInstances) {
+        int count = 0;
+        boolean defaultLaneFull = false;
+        // 领取了租约但是没有放入队列的任务 需要释放租约 否则要等到租约到期后才能再次执行
+        List<ConsistencyTaskInstance> rejectedTasks = new ArrayList<>();
+        for (ConsistencyTaskInstance taskInstance : taskInstances) {
+            // 执行结果还没有写入任务表的任务 已经执行过了
+            if (taskCompletionSink.isPending(taskInstance)) {
+                continue;
+            }
+            String key = getInFlightKey(taskInstance);
+            if (key != null && !inFlightTasks.add(key)) {
+                // 队列中的同一个任务租约已经到期 这次又领取到了租约 释放后由队列中的任务重新启动
+                rejectedTasks.add(taskInstance);
+                continue;
+            }
+            if (defaultLaneFull) {
+                releaseInFlight(taskInstance);
+                rejectedTasks.add(taskInstance);
+                continue;
+            }
+            DispatchLane lane = getLane(taskInstance);
+            if (!lane.readyQueue.offer(taskInstance)) {
+                // 队列已满 数据库中的任务会在下一次查询时重新获取
+                releaseInFlight(taskInstance);
+                rejectedTasks.add(taskInstance);
+                // 默认隔离舱的队列满了 剩余的任务都不再放入 其他隔离舱的队列满了 只跳过该隔离舱的任务
+                defaultLaneFull = lane == defaultLane;
+                continue;
+            }
+            count++;
+        }
+        if (!rejectedTasks.isEmpty()) {
+            taskStoreService.releaseLease(rejectedTasks);
+        }
+        return defaultLaneFull ? -1 : count;
+    }
+
+    /**
+     * 任务执行结束后释放执行线程 任务积压且队列低于低水位时立即查询下一批任务
+     *
+     * @param lane         任务所属的分发通道
+     * @param taskInstance 任务实例信息
+     * @param latencyNanos 任务执行耗时 单位纳秒 没有执行时为-1
+     */
+    private void onTaskFinished(DispatchLane lane, ConsistencyTaskInstance taskInstance, long latencyNanos) {
+        releaseInFlight(taskInstance);
+        lane.limiter.release(latencyNanos, ConsistencyTaskStatusEnum.SUCCESS.getCode().equals(taskInstance.getTaskStatus()));
+        lane.drainOverflow();
+        if (backlogged && defaultLane.readyQueue.size() < tendConsistencyConfiguration.getReadyQueueLowWaterMark()) {
+            requestRefill();
+        }
+    }
+
+    /**
+     * 提交一次补充任务的查询 同一时刻最多只有一次
+     */
+    private void requestRefill() {
+        if (!running || !refillPending.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            refillExecutorService.execute(() -> {
+                try {
+                    taskScheduleManager.performanceTask();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (Exception e) {
+                    log.error("[一致性任务框架] 补充待执行任务时，发生异常", e);
+                } finally {
+                    refillPending.set(false);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            refillPending.set(false);
+        }
+    }
+
+    private void releaseInFlight(ConsistencyTaskInstance taskInstance) {
+        String key = getInFlightKey(taskInstance);
+        if (key != null) {
+            inFlightTasks.remove(key);
+        }
+    }
+
+    /**
+     * 获取任务的去重key 初始化时就存储到RocksDB中的任务没有id，从RocksDB中取出后不会被重复查询，不需要去重
+     *
+     * @param taskInstance 任务实例信息
+     * @return 去重key
+     */
+    private String getInFlightKey(ConsistencyTaskInstance taskInstance) {
+        if (taskInstance.getId() == null) {
+            return null;
+        }
+        return taskInstance.getId() + ":" + taskInstance.getShardKey();
+    }
+
+    /**
+     * 一个隔离舱的分发通道 包括待执行队列、并发限制器以及分发线程
+     */
+    private class DispatchLane {
+
+        /**
+         * 待执行队列 按照优先级的权重以及任务方法轮流出队
+         */
+        private final TaskReadyQueue readyQueue;
+
+        /**
+         * 溢出队列 spill策略下待执行队列已满时放入 待执行队列有空位后取回
+         */
+        private final BlockingDeque<ConsistencyTaskInstance> overflowQueue;
+
+        /**
+         * 并发限制器 未达到并发上限时才从队列中取出任务 上限不超过执行线程数 避免线程池的队列被填满
+         */
+        private final TaskConcurrencyLimiter limiter;
+
+        private final ExecutorService executor;
+
+        private final Thread dispatchThread;
+
+        DispatchLane(String name, int queueSize, int workerCount, ExecutorService executor) {
+            this.readyQueue = createReadyQueue(queueSize);
+            this.overflowQueue = new LinkedBlockingDeque<>(tendConsistencyConfiguration.getOverflowQueueSize());
+            this.limiter = createLimiter(workerCount);
+            this.executor = executor;
+            String threadName = TaskBulkheadManager.DEFAULT_BULKHEAD.equals(name) ? DISPATCH_THREAD_NAME : DISPATCH_THREAD_NAME + "_" + name;
+            this.dispatchThread = new Thread(this::dispatchLoop, threadName);
+            this.dispatchThread.setDaemon(true);
+        }
+
+        void start() {
+            dispatchThread.start();
+        }
+
+        /**
+         * 将溢出队列中的任务移回待执行队列 直到待执行队列已满
+         */
+        void drainOverflow() {
+            ConsistencyTaskInstance taskInstance;
+            while ((taskInstance = overflowQueue.pollFirst()) != null) {
+                if (!readyQueue.offer(taskInstance)) {
+                    // 待执行队列又满了 放回溢出队列的队头
+                    if (!overflowQueue.offerFirst(taskInstance)) {
+                        defer(taskInstance);
+                    }
+                    return;
+                }
+            }
+        }
+
+        /**
+         * 分发线程的主循环 有空闲的执行线程时从队列中取出任务交给线程池执行
+         */
+        private void dispatchLoop() {
+            while (running) {
+                try {
+                    limiter.acquire();
+                    ConsistencyTaskInstance taskInstance;
+                    try {
+                        taskInstance = readyQueue.take();
+                    } catch (InterruptedException e) {
+                        limiter.release(-1, true);
+                        throw e;
+                    }
+                    if (throttle(taskInstance)) {
+                        limiter.release(-1, true);
+                        continue;
+                    }
+                    submit(taskInstance);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                } catch (Exception e) {
+                    log.error("[一致性任务框架] 分发任务时，发生异常", e);
+                }
+            }
+        }
+
+        /**
+         * 获取任务的执行令牌 没有令牌时不执行任务：需要等待的时间不超过maxWaitMillis时在内存中等待，到时间后放回待执行队列；
+         * 否则推迟任务的执行时间 由调度器在下一个可以执行的时间重新查询
+         *
+         * @param taskInstance 任务实例信息
+         * @return 是否被限流
+         */
+        private boolean throttle(ConsistencyTaskInstance taskInstance) {
+            long waitNanos = taskRateLimiter.tryAcquire(taskInstance);
+            if (waitNanos <= 0) {
+                return false;
+            }
+            // 本地存储中的任务无法推迟执行时间 只能在内存中等待
+            if ((taskRateLimiter.canWaitInMemory(waitNanos) || taskInstance.getId() == null)
+                    && taskRateLimiter.schedule(() -> requeue(taskInstance), waitNanos)) {
+                return true;
+            }
+            deferThrottled(taskInstance, waitNanos);
+            return true;
+        }
+
+        /**
+         * 将等待令牌的任务放回待执行队列 待执行队列和溢出队列都满了时推迟任务的执行时间
+         *
+         * @param taskInstance 任务实例信息
+         */
+        private void requeue(ConsistencyTaskInstance taskInstance) {
+            if (readyQueue.offer(taskInstance) || overflowQueue.offerFirst(taskInstance)) {
+                return;
+            }
+            long waitNanos = TimeUnit.MILLISECONDS.toNanos(tendConsistencyConfiguration.getRateLimitMaxWaitMillis());
+            if (taskInstance.getId() == null && taskRateLimiter.schedule(() -> requeue(taskInstance), waitNanos)) {
+                return;
+            }
+            deferThrottled(taskInstance, waitNanos);
+        }
+
+        /**
+         * 推迟超过限流的任务的执行时间 推迟失败时释放租约 等待下一次查询重新获取
+         *
+         * @param taskInstance 任务实例信息
+         * @param waitNanos    需要等待的时间 单位纳秒
+         */
+        private void deferThrottled(ConsistencyTaskInstance taskInstance, long waitNanos) {
+            try {
+                taskStoreService.deferTasks(Collections.singletonList(taskInstance),
+                        System.currentTimeMillis() + TimeUnit.NANOSECONDS.toMillis(waitNanos));
+            } catch (Exception e) {
+                log.error("[一致性任务框架] 推迟超过限流的任务时，发生异常 taskId={}", taskInstance.getTaskId(), e);
+                taskStoreService.releaseLease(Collections.singletonList(taskInstance));
+                backlogged = true;
+            } finally {
+                releaseInFlight(taskInstance);
+            }
+        }
+
+        /**
+         * 将任务交给执行线程池执行
+         *
+         * @param taskInstance 任务实例信息
+         */
+        private void submit(ConsistencyTaskInstance taskInstance) {
+            try {
+                executor.execute(() -> {
+                    long startNanos = System.nanoTime();
+                    // 任务被看门狗放弃时提前归还并发名额 卡住的执行线程返回后不再重复归还
+                    AtomicBoolean finished = new AtomicBoolean(false);
+                    Runnable finish = () -> {
+                        if (finished.compareAndSet(false, true)) {
+                            onTaskFinished(this, taskInstance, System.nanoTime() - startNanos);
+                        }
+                    };
+                    try {
+                        taskExecutionWatchdog.runWithAbandonHandler(() -> taskEngineExecutor.executeTaskInstance(taskInstance), finish);
+                    } finally {
+                        finish.run();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                // 执行线程池同时也在执行本地优先模式的任务 被拒绝时等待下一次查询重新获取
+                log.warn("[一致性任务框架] 执行线程池已满，任务等待补充查询 taskId={}", taskInstance.getTaskId());
+                taskStoreService.releaseLease(Collections.singletonList(taskInstance));
+                backlogged = true;
+                onTaskFinished(this, taskInstance, -1);
+            }
+        }
+    }
+
+}
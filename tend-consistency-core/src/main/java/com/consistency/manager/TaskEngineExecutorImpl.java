@@ -6,14 +6,20 @@ import cn.hutool.json.JSONUtil;
 import com.consistency.config.TendConsistencyConfiguration;
 import com.consistency.custom.alerter.ConsistencyFrameworkAlerter;
 import com.consistency.enums.ConsistencyTaskStatusEnum;
+import com.consistency.enums.TransactionModeEnum;
 import com.consistency.exceptions.ConsistencyException;
+import com.consistency.exceptions.TaskAbandonedException;
 import com.consistency.localstorage.RocksLocalStorage;
 import com.consistency.model.ConsistencyTaskInstance;
 import com.consistency.service.TaskStoreService;
+import com.consistency.template.TaskTemplateRegistry;
 import com.consistency.utils.*;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.CannotCreateTransactionException;
+import org.springframework.transaction.TransactionDefinition;
 import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.util.CollectionUtils;
 import org.springframework.util.ObjectUtils;
@@ -26,9 +32,6 @@ import java.text.SimpleDateFormat;
 import java.util.Map;
 import java.util.concurrent.ThreadPoolExecutor;
 
-import static com.consistency.utils.ExpressionUtils.readExpr;
-import static com.consistency.utils.ExpressionUtils.rewriteExpr;
-
 /**
  * 任务执行引擎实现类
  *
@@ -36,7 +39,7 @@ import static com.consistency.utils.ExpressionUtils.rewriteExpr;
  **/
 @Slf4j
 @Component
-public class TaskEngineExecutorImpl implements TaskEngineExecutor {
+public class TaskEngineExecutorImpl implements TaskEngineExecutor, InitializingBean {
 
     private static final String MY_SQL_NOT_OPEN_ERROR = "Could not open JDBC Connection for transaction";
 
@@ -70,6 +73,42 @@ public class TaskEngineExecutorImpl implements TaskEngineExecutor {
      */
     @Autowired
     private RocksLocalStorage rocksLocalStorage;
+    /**
+     * 任务参数编解码管理器
+     */
+    @Autowired
+    private TaskParameterCodecManager taskParameterCodecManager;
+    /**
+     * 任务执行结果的观察器
+     */
+    @Autowired
+    private TaskExecutionWatcher taskExecutionWatcher;
+    /**
+     * 任务重试策略管理器
+     */
+    @Autowired
+    private TaskRetryPolicyManager taskRetryPolicyManager;
+    /**
+     * 任务熔断器
+     */
+    @Autowired
+    private TaskCircuitBreaker taskCircuitBreaker;
+    /**
+     * 一致性任务模板注册表
+     */
+    @Autowired
+    private TaskTemplateRegistry taskTemplateRegistry;
+
+    /**
+     * 总是开启新事务的事务模板 事务模式为REQUIRES_NEW的任务使用
+     */
+    private TransactionTemplate requiresNewTransactionTemplate;
+
+    @Override
+    public void afterPropertiesSet() {
+        requiresNewTransactionTemplate = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        requiresNewTransactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
 
     /**
      * 执行指定的任务实例  这里使用try catch 是因为需要将任务的错误信息也保存到任务表 正常情况下 不能进行try catch，不然事务是无法回滚的
@@ -83,16 +122,43 @@ public class TaskEngineExecutorImpl implements TaskEngineExecutor {
     // 但是在调度器调度执行任务的时候，因为加了@Transactional注解，spring会基于@Transactional注解的拦截器中，
     // 新建事务，这里不能加事务注解 需要使用手工开启注解的方式，来执行任务。
     public void executeTaskInstance(ConsistencyTaskInstance taskInstance) {
+        // 按照任务的事务模式执行 不开启事务的任务执行期间不占用数据库连接
+        TransactionTemplate template = getTransactionTemplate(taskInstance);
+        if (template == null) {
+            doExecuteTaskInstance(taskInstance);
+            return;
+        }
         try {
-            transactionTemplate.execute(transactionStatus -> {
+            template.execute(transactionStatus -> {
                 doExecuteTaskInstance(taskInstance);
                 return true;
             });
-        } catch (Exception e) {
+        } catch (CannotCreateTransactionException e) {
+            // 无法开启事务(如数据库无法连接)时任务还没有执行 不使用事务执行 由降级逻辑将任务存储到本地
             doExecuteTaskInstance(taskInstance);
+        } catch (Exception e) {
+            // 任务已经执行过 事务提交失败时不再重复执行 避免重复产生副作用 任务的租约到期后由调度器重新执行
+            log.error("[一致性任务框架] 执行任务后提交事务时，发生异常 id={} taskId={}", taskInstance.getId(), taskInstance.getTaskId(), e);
         }
     }
 
+    /**
+     * 获取任务的事务模式对应的事务模板
+     *
+     * @param taskInstance 任务实例信息
+     * @return 事务模板 不开启事务时返回null
+     */
+    private TransactionTemplate getTransactionTemplate(ConsistencyTaskInstance taskInstance) {
+        TransactionModeEnum transactionMode = taskTemplateRegistry.getTransactionMode(taskInstance.getMethodSignName());
+        if (TransactionModeEnum.REQUIRED.equals(transactionMode)) {
+            return transactionTemplate;
+        }
+        if (TransactionModeEnum.REQUIRES_NEW.equals(transactionMode)) {
+            return requiresNewTransactionTemplate;
+        }
+        return null;
+    }
+
     private void doExecuteTaskInstance(ConsistencyTaskInstance taskInstance) {
 
         boolean isOpenLocalStorageMode = false;
@@ -104,12 +170,29 @@ public class TaskEngineExecutorImpl implements TaskEngineExecutor {
 
             // 如果没有开启本地存储模式
             if (!isOpenLocalStorageMode) {
+                // 调度器领取到租约的任务已经在领取前判断过熔断 其他途径提交的任务(如立即执行的任务)在这里判断
+                // 任务方法熔断中时不执行 推迟到熔断结束的时间
+                if (!isLeased(taskInstance) && !taskCircuitBreaker.tryAcquire(taskInstance)) {
+                    taskCircuitBreaker.defer(taskInstance);
+                    return;
+                }
                 // 启动任务 MySQL故障点1：如果这里数据库挂了，此时任务状态是 [初始化] 或者 [执行失败] 的状态，需要持久化到本地存储.
-                taskStoreService.turnOnTask(taskInstance);
+                // 调度器批量领取到租约的任务已经启动 不需要再单独启动
+                // 启动失败说明任务已经被其他途径执行成功并移除了 或者租约被其他节点持有 不再重复执行
+                if (!isLeased(taskInstance) && taskStoreService.turnOnTask(taskInstance) <= 0) {
+                    log.info("[一致性任务框架] 任务已经执行完成或者正在被执行，跳过本次执行 id={}", taskInstance.getId());
+                    return;
+                }
             }
             taskInstance.setTaskStatus(ConsistencyTaskStatusEnum.START.getCode());
-            // 执行任务
-            taskScheduleManager.performanceTask(taskInstance);
+            // 执行任务 任务方法的执行结果用于判断是否需要熔断
+            try {
+                taskScheduleManager.performanceTask(taskInstance);
+            } catch (Exception e) {
+                taskCircuitBreaker.onFailure(taskInstance);
+                throw e;
+            }
+            taskCircuitBreaker.onSuccess(taskInstance);
             // 如果执行成功，到了这里，就标记为执行成功，以防止，下面markSuccess的时候，出现数据库故障。
             // 这样在进入catch块的时候，还可以做下区分
             taskInstance.setTaskStatus(ConsistencyTaskStatusEnum.SUCCESS.getCode());
@@ -123,14 +206,19 @@ public class TaskEngineExecutorImpl implements TaskEngineExecutor {
                 rocksRemove(taskInstance);
                 log.info("rocksRemoveFallback删除key成功");
             }
+            // 通知编程式提交任务时观察该任务的调用方
+            taskExecutionWatcher.onExecuted(taskInstance);
+        } catch (TaskAbandonedException e) {
+            // 看门狗放弃执行时已经计算了重试时间并标记为执行失败 不再重复标记和降级
+            log.info("[一致性任务框架] 任务执行已被看门狗放弃，跳过本次执行结果的记录 id={}", taskInstance.getId());
         } catch (Exception e) {
             log.error("[一致性任务框架] 执行一致性任务时发生异常, taskInstance的实例信息为 {}", JSONUtil.toJsonStr(taskInstance), e);
-            // 不是数据库无法连接的异常
-            if (!e.getMessage().contains(MY_SQL_NOT_OPEN_ERROR)) {
-                taskInstance.setExecuteTime(getNextExecuteTime(taskInstance));
-            }
             taskInstance.setErrorMsg(getErrorMsg(e));
             taskInstance.setTaskStatus(ConsistencyTaskStatusEnum.FAIL.getCode());
+            // 不是数据库无法连接的异常 按照重试策略计算下一次执行时间 执行次数达到上限时标记为重试次数用尽
+            if (e.getMessage() == null || !e.getMessage().contains(MY_SQL_NOT_OPEN_ERROR)) {
+                taskRetryPolicyManager.scheduleRetry(taskInstance, taskInstance.getExecuteTimes() + 1, taskInstance.getExecuteTime());
+            }
             try {
                 taskStoreService.markFail(taskInstance);
             } catch (Exception ex) {
@@ -141,6 +229,16 @@ public class TaskEngineExecutorImpl implements TaskEngineExecutor {
         }
     }
 
+    /**
+     * 任务是否持有还没有到期的租约
+     *
+     * @param taskInstance 任务实例信息
+     * @return 是否持有租约
+     */
+    private boolean isLeased(ConsistencyTaskInstance taskInstance) {
+        return taskInstance.getLeaseUntil() != null && taskInstance.getLeaseUntil() > System.currentTimeMillis();
+    }
+
     /**
      * 当执行任务失败的时候，执行该逻辑
      *
@@ -152,7 +250,7 @@ public class TaskEngineExecutorImpl implements TaskEngineExecutor {
         log.info("[一致性任务框架] 执行任务降级逻辑...");
         // 如果是数据库连不上的异常，那么就将数据存储到本地。
         // 这里用字符串匹配的方式，是因为框架本身，没有mysql驱动，因为本事也是要嵌入到业务服务中运行的，所以使用字符串匹配的方式
-        if (ex.getMessage().contains(MY_SQL_NOT_OPEN_ERROR)) {
+        if (ex.getMessage() != null && ex.getMessage().contains(MY_SQL_NOT_OPEN_ERROR)) {
             // 将任务实例存储到RocksDB,有一致性框架内部的调度引擎，去再次执行该任务。
             rocksStore(taskInstance);
         }
@@ -164,26 +262,29 @@ public class TaskEngineExecutorImpl implements TaskEngineExecutor {
             parseExpressionAndDoAlert(taskInstance);
             return;
         }
-        // 获取全局配置 默认是开启降级策略的 如果失败会进行降级
-        if (taskInstance.getExecuteTimes() <= consistencyConfig.getFailCountThreshold()) {
+        // 获取全局配置 默认是开启降级策略的 如果失败会进行降级 重试次数已经用尽的任务不会再被执行 直接降级
+        boolean exhausted = ConsistencyTaskStatusEnum.EXHAUSTED.getCode().equals(taskInstance.getTaskStatus());
+        if (!exhausted && taskInstance.getExecuteTimes() <= consistencyConfig.getFailCountThreshold()) {
             return;
         }
         Class<?> fallbackClass = ReflectTools.getClassByName(taskInstance.getFallbackClassName());
         if (ObjectUtils.isEmpty(fallbackClass)) {
             return;
         }
-        // 获取参数值列表的json数组字符串
-        String taskParameterText = taskInstance.getTaskParameter();
         // 参数类型字符串 多个用逗号进行了分隔
         String parameterTypes = taskInstance.getParameterTypes();
         // 构造参数类数组
         Class<?>[] paramTypes = getParamTypes(parameterTypes);
-        // 参数具体的值
-        Object[] paramValues = ReflectTools.buildArgs(taskParameterText, paramTypes);
-        // 从spring容器中获取相关降级的bean
-        Object fallbackClassBean = getBeanBySpringApplicationContext(fallbackClass, paramValues);
         // 获取降级方法
         Method fallbackMethod = ReflectUtil.getMethod(fallbackClass, taskInstance.getMethodName(), paramTypes);
+        if (ObjectUtils.isEmpty(fallbackMethod)) {
+            log.error("[一致性任务框架] 降级类 {} 中未找到降级方法 {}", taskInstance.getFallbackClassName(), taskInstance.getMethodName());
+            return;
+        }
+        // 参数具体的值 按照任务实例中记录的编解码器进行解码
+        Object[] paramValues = taskParameterCodecManager.decode(taskInstance, fallbackMethod);
+        // 从spring容器中获取相关降级的bean
+        Object fallbackClassBean = getBeanBySpringApplicationContext(fallbackClass, paramValues);
         try {
             // 执行降级逻辑的方法
             fallbackMethod.invoke(fallbackClassBean, paramValues);
@@ -194,6 +295,7 @@ public class TaskEngineExecutorImpl implements TaskEngineExecutor {
             } else {
                 rocksRemove(taskInstance);
             }
+            taskExecutionWatcher.onExecuted(taskInstance);
         } catch (Exception e) {
             // 解析并对表达式结果进行校验，并执行相关的告警通知逻辑
             // 在执行完降级逻辑后，再去发送消息。因为如果降级成功了，也就不用发送告警通知了。如果降级失败，再去发送告警通知。
@@ -274,16 +376,13 @@ public class TaskEngineExecutorImpl implements TaskEngineExecutor {
             if (StringUtils.isEmpty(taskInstance.getAlertExpression())) {
                 return;
             }
+            // 告警表达式只在第一次使用时解析 之后使用缓存的告警规则直接判断 不满足告警规则的任务不再提交到告警线程池
+            if (!AlertRuleCache.matches(taskInstance.getAlertExpression(), taskInstance)) {
+                return;
+            }
             // 使用线程的原因是不对正常业务调用造成时间的占用 一般推送消息使用的是发送短信，钉钉、企业微信、邮件等等，
             // 操作会有一定的耗时（不过这个也要看具体的实现类是怎么实现的，如果实现类中使用的是异步推送告警，其实这里也就不用放到线程池中了）
-            alertNoticePool.submit(() -> {
-                // 对表达式进行重写
-                String expr = rewriteExpr(taskInstance.getAlertExpression());
-                // 获取表达式解析后的结果
-                String exprResult = readExpr(expr, ExpressionUtils.buildDataMap(taskInstance));
-                // 执行alert告警
-                doAlert(exprResult, taskInstance);
-            });
+            alertNoticePool.submit(() -> doAlert(taskInstance));
         } catch (Exception e) {
             log.error("发送告警通知时，发生异常", e);
         }
@@ -292,16 +391,9 @@ public class TaskEngineExecutorImpl implements TaskEngineExecutor {
     /**
      * 执行告警
      *
-     * @param exprResult   表达式解析后的结果
      * @param taskInstance 任务实例信息
      */
-    private void doAlert(String exprResult, ConsistencyTaskInstance taskInstance) {
-        if (StringUtils.isEmpty(exprResult)) {
-            return;
-        }
-        if (!ExpressionUtils.RESULT_FLAG.equals(exprResult)) {
-            return;
-        }
+    private void doAlert(ConsistencyTaskInstance taskInstance) {
         //  执行相关的动作告警动作 发送钉钉消息/发送短信/访问一个URL接口等等方式 这里暂时先打印一条告警日志来代替 如果业务服务实现了框架提供的接口，则会进行调用相关的告警通知逻辑
         log.warn("[一致性任务框架] 告警通知 实例id为{}的任务{}触发告警规则，请进行排查。", taskInstance.getId(), JSONUtil.toJsonPrettyStr(taskInstance));
         if (StringUtils.isEmpty(taskInstance.getAlertActionBeanName())) {
@@ -353,17 +445,6 @@ public class TaskEngineExecutorImpl implements TaskEngineExecutor {
         return beansOfTypeMap.get(taskInstance.getAlertActionBeanName());
     }
 
-    /**
-     * 获取任务下一次的执行时间
-     *
-     * @param taskInstance 一致性任务实例
-     * @return 下次执行时间
-     */
-    private long getNextExecuteTime(ConsistencyTaskInstance taskInstance) {
-        // 上次执行时间 + （下一次执行的次数 * 执行间隔）
-        return taskInstance.getExecuteTime() + ((taskInstance.getExecuteTimes() + 1) * TimeUtils.secToMill(taskInstance.getExecuteIntervalSec()));
-    }
-
     private String getFormatTime(long timestamp) {
         // 设置格式
         SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
@@ -0,0 +1,301 @@
+package com.consistency.manager;
+
+import com.consistency.config.TendConsistencyConfiguration;
+import com.consistency.enums.ConsistencyTaskStatusEnum;
+import com.consistency.model.ConsistencyTaskInstance;
+import com.consistency.service.TaskStoreService;
+import com.consistency.template.TaskTemplateRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 任务执行的看门狗
+ * 任务方法执行超过超时时间后中断执行线程(协作式取消)，任务方法响应中断后按照执行失败处理，进入正常的重试流程；
+ * 中断后超过abandonAfterMs仍然没有返回的(例如阻塞在不响应中断的socket读上)，放弃该次执行：任务按照执行失败记录，
+ * 并通知分发器归还该任务占用的并发名额，卡住的执行线程不再阻塞其他任务的分发。
+ *
+ * @author xiayang
+ **/
+@Slf4j
+@Component
+public class TaskExecutionWatchdog implements InitializingBean, DisposableBean {
+
+    /**
+     * 看门狗线程的名称
+     */
+    private static final String WATCHDOG_THREAD_NAME = "TaskExecutionWatchdog";
+    /**
+     * 超时的错误信息
+     */
+    private static final String TIMEOUT_ERROR_MSG = "任务执行超时";
+
+    /**
+     * 一致性框架配置
+     */
+    @Autowired
+    private TendConsistencyConfiguration tendConsistencyConfiguration;
+    /**
+     * 一致性任务模板注册表
+     */
+    @Autowired
+    private TaskTemplateRegistry taskTemplateRegistry;
+    /**
+     * 任务存储的service组件
+     */
+    @Autowired
+    private TaskStoreService taskStoreService;
+    /**
+     * 任务重试策略管理器
+     */
+    @Autowired
+    private TaskRetryPolicyManager taskRetryPolicyManager;
+
+    /**
+     * 正在执行的任务方法
+     */
+    private final Set<Execution> executions = ConcurrentHashMap.newKeySet();
+    /**
+     * 当前线程放弃执行时的回调 由分发器在执行任务前设置
+     */
+    private final ThreadLocal<Runnable> abandonHandler = new ThreadLocal<>();
+    /**
+     * 超时被中断的任务数
+     */
+    private final AtomicLong timedOutCount = new AtomicLong();
+    /**
+     * 中断后仍然没有返回 被放弃的任务数
+     */
+    private final AtomicLong abandonedCount = new AtomicLong();
+    /**
+     * 超过截止时间后才返回的执行数 包括超时后执行成功的执行
+     */
+    private final AtomicLong lateReturnedCount = new AtomicLong();
+    /**
+     * 看门狗线程
+     */
+    private ScheduledExecutorService watchdogExecutorService;
+
+    @Override
+    public void afterPropertiesSet() {
+        watchdogExecutorService = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, WATCHDOG_THREAD_NAME);
+            thread.setDaemon(true);
+            return thread;
+        });
+        long checkIntervalMs = tendConsistencyConfiguration.getExecutionTimeoutCheckIntervalMs();
+        watchdogExecutorService.scheduleWithFixedDelay(this::check, checkIntervalMs, checkIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void destroy() {
+        watchdogExecutorService.shutdownNow();
+    }
+
+    /**
+     * 在设置了放弃回调的情况下执行任务 任务被放弃时在看门狗线程上执行回调
+     *
+     * @param task    要执行的任务
+     * @param onAbandon 放弃执行时的回调
+     */
+    public void runWithAbandonHandler(Runnable task, Runnable onAbandon) {
+        abandonHandler.set(onAbandon);
+        try {
+            task.run();
+        } finally {
+            abandonHandler.remove();
+        }
+    }
+
+    /**
+     * 开始监视当前线程上的任务方法执行 没有配置超时时间时返回null
+     *
+     * @param taskInstance 任务实例信息
+     * @return 执行记录
+     */
+    public Execution watch(ConsistencyTaskInstance taskInstance) {
+        long timeoutMs = taskTemplateRegistry.getTimeoutMs(taskInstance.getMethodSignName());
+        if (timeoutMs <= 0) {
+            timeoutMs = tendConsistencyConfiguration.getExecutionDefaultTimeoutMs();
+        }
+        if (timeoutMs <= 0) {
+            return null;
+        }
+        Execution execution = new Execution(taskInstance, Thread.currentThread(), System.currentTimeMillis() + timeoutMs,
+                abandonHandler.get());
+        executions.add(execution);
+        return execution;
+    }
+
+    /**
+     * 结束监视 清除看门狗设置的中断标记 避免影响执行线程后续的任务
+     *
+     * @param execution 执行记录
+     */
+    public void unwatch(Execution execution) {
+        if (execution == null) {
+            return;
+        }
+        executions.remove(execution);
+        if (!execution.isAbandoned() && execution.isPastDeadline(System.currentTimeMillis())) {
+            lateReturnedCount.incrementAndGet();
+        }
+        synchronized (execution) {
+            execution.finished = true;
+            if (execution.interrupted) {
+                Thread.interrupted();
+            }
+        }
+    }
+
+    /**
+     * 获取超时处理过的任务数
+     *
+     * @return key为timedOut(超时中断)、abandoned(放弃执行)、lateReturned(超过截止时间后返回)
+     */
+    public Map<String, Long> getTimeoutCounts() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        counts.put("timedOut", timedOutCount.get());
+        counts.put("abandoned", abandonedCount.get());
+        counts.put("lateReturned", lateReturnedCount.get());
+        return counts;
+    }
+
+    /**
+     * 检查超时的任务方法执行
+     */
+    private void check() {
+        long now = System.currentTimeMillis();
+        for (Execution execution : executions) {
+            try {
+                if (now < execution.deadline) {
+                    continue;
+                }
+                interrupt(execution);
+                if (now >= execution.deadline + tendConsistencyConfiguration.getExecutionAbandonAfterMs()) {
+                    abandon(execution);
+                }
+            } catch (Exception e) {
+                log.error("[一致性任务框架] 看门狗处理超时任务时，发生异常", e);
+            }
+        }
+    }
+
+    private void interrupt(Execution execution) {
+        synchronized (execution) {
+            if (execution.finished || execution.interrupted) {
+                return;
+            }
+            execution.interrupted = true;
+            execution.thread.interrupt();
+        }
+        timedOutCount.incrementAndGet();
+        log.warn("[一致性任务框架] 任务执行超时，中断执行线程 id={} taskId={} thread={}",
+                execution.taskInstance.getId(), execution.taskInstance.getTaskId(), execution.thread.getName());
+    }
+
+    private void abandon(Execution execution) {
+        synchronized (execution) {
+            if (execution.finished) {
+                return;
+            }
+            execution.finished = true;
+            execution.abandoned = true;
+        }
+        executions.remove(execution);
+        abandonedCount.incrementAndGet();
+        ConsistencyTaskInstance taskInstance = execution.taskInstance;
+        log.error("[一致性任务框架] 任务中断后仍然没有返回，放弃本次执行 id={} taskId={} thread={}",
+                taskInstance.getId(), taskInstance.getTaskId(), execution.thread.getName());
+        // 按照执行失败记录 由调度器在下次执行时间重试 本地存储的任务没有id 由本地存储的流程处理
+        if (taskInstance.getId() != null) {
+            taskInstance.setTaskStatus(ConsistencyTaskStatusEnum.FAIL.getCode());
+            taskInstance.setErrorMsg(TIMEOUT_ERROR_MSG);
+            taskRetryPolicyManager.scheduleRetry(taskInstance, taskInstance.getExecuteTimes() + 1, System.currentTimeMillis());
+            try {
+                taskStoreService.markFail(taskInstance);
+            } catch (Exception e) {
+                log.error("[一致性任务框架] 标记超时任务执行失败时，发生异常 id={}", taskInstance.getId(), e);
+            }
+        }
+        if (execution.onAbandon != null) {
+            execution.onAbandon.run();
+        }
+    }
+
+    /**
+     * 一次任务方法的执行
+     */
+    public static class Execution {
+
+        private final ConsistencyTaskInstance taskInstance;
+
+        private final Thread thread;
+
+        private final long deadline;
+
+        private final Runnable onAbandon;
+
+        /**
+         * 是否已经被看门狗中断
+         */
+        private boolean interrupted;
+
+        /**
+         * 是否已经执行结束或者被放弃
+         */
+        private boolean finished;
+
+        /**
+         * 是否被看门狗放弃 放弃时已经按照执行失败记录了数据库中的任务
+         */
+        private boolean abandoned;
+
+        Execution(ConsistencyTaskInstance taskInstance, Thread thread, long deadline, Runnable onAbandon) {
+            this.taskInstance = taskInstance;
+            this.thread = thread;
+            this.deadline = deadline;
+            this.onAbandon = onAbandon;
+        }
+
+        /**
+         * 是否因为超时被中断或者被放弃
+         *
+         * @return 是否超时
+         */
+        public synchronized boolean isTimedOut() {
+            return interrupted;
+        }
+
+        /**
+         * 是否被看门狗放弃
+         *
+         * @return 是否放弃
+         */
+        public synchronized boolean isAbandoned() {
+            return abandoned;
+        }
+
+        /**
+         * 指定时间是否已经超过了执行的截止时间
+         *
+         * @param now 当前时间
+         * @return 是否超过截止时间
+         */
+        public boolean isPastDeadline(long now) {
+            return now >= deadline;
+        }
+    }
+
+}
@@ -0,0 +1,154 @@
+package com.consistency.manager;
+
+import com.consistency.config.TendConsistencyConfiguration;
+import com.consistency.exceptions.ConsistencyException;
+import com.consistency.model.ConsistencyTaskInstance;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalListener;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 任务执行结果的观察器 编程式提交任务时，用于在任务执行成功后通知调用方
+ * 任务写入数据库之前按照任务实例对象进行关联，写入数据库之后按照 id + 分片键 进行关联，这样调度器从数据库中重新查询出来的任务也能够关联上
+ * 重试次数用尽、被其他节点执行等无法在本节点观察到结果的任务，超过观察时间或者观察的任务数超过上限后异常完成，不会一直占用内存
+ *
+ * @author xiayang
+ **/
+@Component
+public class TaskExecutionWatcher implements InitializingBean, DisposableBean {
+
+    /**
+     * 定期清理超时的观察的线程名称
+     */
+    private static final String CLEANUP_THREAD_NAME = "TaskExecutionWatcher";
+    /**
+     * [单位秒] 清理超时的观察的间隔
+     */
+    private static final long CLEANUP_INTERVAL_SECONDS = 1L;
+
+    /**
+     * 一致性框架配置
+     */
+    @Autowired
+    private TendConsistencyConfiguration tendConsistencyConfiguration;
+
+    /**
+     * 还没有id的任务实例 key按照任务实例对象本身进行比较
+     */
+    private Cache<ConsistencyTaskInstance, CompletableFuture<ConsistencyTaskInstance>> pendingWatchers;
+    /**
+     * 已经写入数据库的任务实例 key为 id:分片键
+     */
+    private Cache<String, CompletableFuture<ConsistencyTaskInstance>> storedWatchers;
+    /**
+     * 定期清理超时的观察的线程 没有提交和执行任务时超时的观察也能及时完成
+     */
+    private ScheduledExecutorService cleanupExecutorService;
+
+    @Override
+    public void afterPropertiesSet() {
+        pendingWatchers = CacheBuilder.newBuilder()
+                .weakKeys()
+                .maximumSize(tendConsistencyConfiguration.getSubmitMaxWatchedTasks())
+                .expireAfterWrite(tendConsistencyConfiguration.getSubmitWatchTimeoutSeconds(), TimeUnit.SECONDS)
+                .removalListener(this.<ConsistencyTaskInstance>evictionListener())
+                .build();
+        storedWatchers = CacheBuilder.newBuilder()
+                .maximumSize(tendConsistencyConfiguration.getSubmitMaxWatchedTasks())
+                .expireAfterWrite(tendConsistencyConfiguration.getSubmitWatchTimeoutSeconds(), TimeUnit.SECONDS)
+                .removalListener(this.<String>evictionListener())
+                .build();
+        cleanupExecutorService = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, CLEANUP_THREAD_NAME);
+            thread.setDaemon(true);
+            return thread;
+        });
+        cleanupExecutorService.scheduleWithFixedDelay(() -> {
+            pendingWatchers.cleanUp();
+            storedWatchers.cleanUp();
+        }, CLEANUP_INTERVAL_SECONDS, CLEANUP_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public void destroy() {
+        cleanupExecutorService.shutdownNow();
+    }
+
+    /**
+     * 观察任务实例的执行结果 需要在任务写入数据库之前调用
+     *
+     * @param taskInstance 任务实例信息
+     * @param future       任务执行成功后完成的future 调用方取消该future后不再进行观察
+     */
+    public void watch(ConsistencyTaskInstance taskInstance, CompletableFuture<ConsistencyTaskInstance> future) {
+        pendingWatchers.put(taskInstance, future);
+        future.whenComplete((result, e) -> {
+            pendingWatchers.invalidate(taskInstance);
+            if (taskInstance.getId() != null) {
+                storedWatchers.invalidate(buildKey(taskInstance));
+            }
+        });
+    }
+
+    /**
+     * 任务写入数据库后 改为按照 id + 分片键 进行关联
+     *
+     * @param taskInstance 任务实例信息
+     * @return 是否可以继续观察 任务没有写入数据库(降级存储到了RocksDB)时返回false
+     */
+    public boolean onStored(ConsistencyTaskInstance taskInstance) {
+        if (taskInstance.getId() == null) {
+            return false;
+        }
+        CompletableFuture<ConsistencyTaskInstance> future = pendingWatchers.asMap().remove(taskInstance);
+        if (future != null && !future.isDone()) {
+            storedWatchers.put(buildKey(taskInstance), future);
+        }
+        return true;
+    }
+
+    /**
+     * 任务执行成功 通知观察该任务的调用方
+     *
+     * @param taskInstance 任务实例信息
+     */
+    public void onExecuted(ConsistencyTaskInstance taskInstance) {
+        if (pendingWatchers.size() == 0 && storedWatchers.size() == 0) {
+            return;
+        }
+        CompletableFuture<ConsistencyTaskInstance> future = pendingWatchers.asMap().remove(taskInstance);
+        if (future == null && taskInstance.getId() != null) {
+            future = storedWatchers.asMap().remove(buildKey(taskInstance));
+        }
+        if (future != null) {
+            future.complete(taskInstance);
+        }
+    }
+
+    /**
+     * 超时、超过数量上限或者任务实例被回收后移除的观察 异常完成对应的future
+     */
+    private <K> RemovalListener<K, CompletableFuture<ConsistencyTaskInstance>> evictionListener() {
+        return notification -> {
+            if (notification.wasEvicted() && notification.getValue() != null) {
+                notification.getValue().completeExceptionally(new ConsistencyException(String.format(
+                        "在 %d 秒内没有观察到任务的执行结果，任务可能已经重试次数用尽或者由其他节点执行 原因为 %s",
+                        tendConsistencyConfiguration.getSubmitWatchTimeoutSeconds(), notification.getCause())));
+            }
+        };
+    }
+
+    private String buildKey(ConsistencyTaskInstance taskInstance) {
+        return taskInstance.getId() + ":" + taskInstance.getShardKey();
+    }
+
+}
@@ -0,0 +1,103 @@
+package com.consistency.manager;
+
+import com.consistency.config.TendConsistencyConfiguration;
+import com.consistency.model.ConsistencyTaskInstance;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 任务幂等守卫
+ * 1、本地缓存最近提交过的幂等键，命中缓存的重复任务直接丢弃，不需要访问数据库；幂等键只在任务所在的事务提交后才放入缓存，
+ *    事务回滚或者写入失败后上游的重试不会被当成重复任务丢弃
+ * 2、没有命中缓存的任务由任务表idempotent_key字段的唯一索引兜底，插入时出现唯一键冲突的任务记录下来，不再提交执行
+ * 3、分库模式下有幂等键的任务的分片键根据幂等键计算，相同幂等键的任务位于同一个库中，唯一索引同样可以去重
+ * 这里使用精确的LRU缓存而不是布隆过滤器，是因为布隆过滤器的误判会把正常的任务当成重复任务丢弃
+ *
+ * @author xiayang
+ **/
+@Slf4j
+@Component
+public class TaskIdempotencyGuard implements InitializingBean {
+
+    /**
+     * 一致性框架配置
+     */
+    @Autowired
+    private TendConsistencyConfiguration tendConsistencyConfiguration;
+
+    /**
+     * 最近提交过的幂等键
+     */
+    private Cache<String, Boolean> recentKeys;
+    /**
+     * 被丢弃的重复任务 提交执行时跳过 key按照对象本身进行比较，任务实例被回收或者超过保留时间后自动移除
+     */
+    private Cache<ConsistencyTaskInstance, Boolean> duplicateTasks;
+
+    @Override
+    public void afterPropertiesSet() {
+        recentKeys = CacheBuilder.newBuilder()
+                .maximumSize(tendConsistencyConfiguration.getIdempotentCacheSize())
+                .expireAfterWrite(tendConsistencyConfiguration.getIdempotentCacheExpireSeconds(), TimeUnit.SECONDS)
+                .build();
+        duplicateTasks = CacheBuilder.newBuilder()
+                .weakKeys()
+                .expireAfterWrite(tendConsistencyConfiguration.getIdempotentCacheExpireSeconds(), TimeUnit.SECONDS)
+                .build();
+    }
+
+    /**
+     * 提交任务前检查幂等键 这里只检查不记录 幂等键在任务所在的事务提交后才会记录
+     *
+     * @param taskInstance 任务实例信息
+     * @return 没有配置幂等键或者幂等键最近没有提交过时返回true 否则返回false 表示是重复的任务
+     */
+    public boolean tryAcquire(ConsistencyTaskInstance taskInstance) {
+        String idempotentKey = taskInstance.getIdempotentKey();
+        if (idempotentKey == null || recentKeys.getIfPresent(idempotentKey) == null) {
+            return true;
+        }
+        log.info("[一致性任务框架] 幂等键 [{}] 最近已经提交过，丢弃重复的任务", idempotentKey);
+        duplicateTasks.put(taskInstance, Boolean.TRUE);
+        return false;
+    }
+
+    /**
+     * 任务所在的事务提交后 记录任务的幂等键
+     *
+     * @param taskInstance 任务实例信息
+     */
+    public void onStored(ConsistencyTaskInstance taskInstance) {
+        if (taskInstance.getIdempotentKey() != null) {
+            recentKeys.put(taskInstance.getIdempotentKey(), Boolean.TRUE);
+        }
+    }
+
+    /**
+     * 记录写入数据库时出现唯一键冲突的任务 唯一键冲突说明相同幂等键的任务已经提交 同时记录幂等键
+     *
+     * @param taskInstance 任务实例信息
+     */
+    public void markDuplicate(ConsistencyTaskInstance taskInstance) {
+        log.info("[一致性任务框架] 幂等键 [{}] 的任务已经存在，丢弃重复的任务", taskInstance.getIdempotentKey());
+        duplicateTasks.put(taskInstance, Boolean.TRUE);
+        onStored(taskInstance);
+    }
+
+    /**
+     * 检查任务是否是被丢弃的重复任务
+     *
+     * @param taskInstance 任务实例信息
+     * @return 是否是重复的任务
+     */
+    public boolean isDuplicate(ConsistencyTaskInstance taskInstance) {
+        return duplicateTasks.getIfPresent(taskInstance) != null;
+    }
+
+}
@@ -0,0 +1,191 @@
+package com.consistency.manager;
+
+import com.consistency.model.ConsistencyTaskInstance;
+import com.consistency.utils.ReflectTools;
+import com.consistency.utils.SpringUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ListableBeanFactory;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ApplicationContextEvent;
+import org.springframework.context.event.ContextClosedEvent;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.stereotype.Component;
+import org.springframework.util.ObjectUtils;
+import org.springframework.util.StringUtils;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.UndeclaredThrowableException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 任务方法调用器的缓存
+ * 以方法签名为key，缓存任务方法所在的bean、目标方法以及由目标方法生成的MethodHandle，同一个任务方法只在第一次执行时进行反射查找
+ * spring容器刷新或关闭时清空缓存，避免持有已经销毁的bean
+ *
+ * @author xiayang
+ **/
+@Slf4j
+@Component
+public class TaskInvokerCache implements ApplicationListener<ApplicationContextEvent> {
+
+    /**
+     * 统一后的MethodHandle类型 (bean, 参数数组) -> 返回值
+     */
+    private static final MethodType INVOKER_TYPE = MethodType.methodType(Object.class, Object.class, Object[].class);
+
+    /**
+     * 方法签名 -> 任务方法调用器
+     */
+    private final ConcurrentMap<String, TaskInvoker> invokers = new ConcurrentHashMap<>();
+
+    @Override
+    public void onApplicationEvent(ApplicationContextEvent event) {
+        if (event instanceof ContextRefreshedEvent || event instanceof ContextClosedEvent) {
+            invalidateAll();
+        }
+    }
+
+    /**
+     * 获取任务实例对应的方法调用器
+     *
+     * @param taskInstance 任务实例信息
+     * @return 任务方法调用器 任务方法所在的类、bean或方法不存在时返回null
+     */
+    public TaskInvoker getInvoker(ConsistencyTaskInstance taskInstance) {
+        // 方法签名 格式：类路径#方法名(参数1的类型,参数2的类型,...参数N的类型)
+        String methodSignName = taskInstance.getMethodSignName();
+        TaskInvoker invoker = invokers.get(methodSignName);
+        if (invoker != null) {
+            return invoker;
+        }
+        // 解析失败的结果不进行缓存 业务服务发布新版本后可以重新解析
+        invoker = resolve(taskInstance);
+        if (invoker == null) {
+            return null;
+        }
+        TaskInvoker existing = invokers.putIfAbsent(methodSignName, invoker);
+        return existing == null ? invoker : existing;
+    }
+
+    /**
+     * 使指定方法签名的调用器失效
+     *
+     * @param methodSignName 方法签名
+     */
+    public void invalidate(String methodSignName) {
+        invokers.remove(methodSignName);
+    }
+
+    /**
+     * 使所有的调用器失效
+     */
+    public void invalidateAll() {
+        invokers.clear();
+    }
+
+    /**
+     * 解析任务方法所在的bean和目标方法 并生成MethodHandle
+     *
+     * @param taskInstance 任务实例信息
+     * @return 任务方法调用器
+     */
+    private TaskInvoker resolve(ConsistencyTaskInstance taskInstance) {
+        Class<?> clazz = ReflectTools.getClassByName(taskInstance.getMethodSignName().split("#")[0]);
+        if (ObjectUtils.isEmpty(clazz)) {
+            return null;
+        }
+        ListableBeanFactory beanFactory = SpringUtil.getBeanFactory();
+        String[] beanNames = beanFactory.getBeanNamesForType(clazz);
+        if (ObjectUtils.isEmpty(beanNames)) {
+            log.error("[一致性任务框架] spring容器中未找到任务方法所在的bean {}", clazz.getName());
+            return null;
+        }
+        // 获取参数类型的字符串 多个用逗号分隔
+        String[] parameterTypes = StringUtils.isEmpty(taskInstance.getParameterTypes()) ?
+                new String[]{} : taskInstance.getParameterTypes().split(",");
+        Method method;
+        try {
+            method = clazz.getMethod(taskInstance.getMethodName(), ReflectTools.buildTypeClassArray(parameterTypes));
+        } catch (NoSuchMethodException e) {
+            log.error("获取目标方法失败", e);
+            return null;
+        }
+        MethodHandle methodHandle;
+        try {
+            // 类本身不是public时 需要先打开访问权限
+            method.setAccessible(true);
+            methodHandle = MethodHandles.lookup().unreflect(method)
+                    .asType(MethodType.genericMethodType(method.getParameterCount() + 1))
+                    .asSpreader(Object[].class, method.getParameterCount())
+                    .asType(INVOKER_TYPE);
+        } catch (IllegalAccessException e) {
+            log.error("[一致性任务框架] 生成任务方法 {} 的MethodHandle失败", taskInstance.getMethodSignName(), e);
+            return null;
+        }
+        // 单例的bean直接缓存 其他作用域的bean每次执行时从spring容器中获取
+        Object bean = beanFactory.isSingleton(beanNames[0]) ? SpringUtil.getBean(clazz) : null;
+        return new TaskInvoker(clazz, bean, method, methodHandle);
+    }
+
+    /**
+     * 任务方法调用器
+     */
+    public static final class TaskInvoker {
+
+        /**
+         * 任务方法所在的类
+         */
+        private final Class<?> beanClass;
+        /**
+         * 单例的bean 非单例时为null
+         */
+        private final Object bean;
+        /**
+         * 目标方法
+         */
+        private final Method method;
+        /**
+         * (bean, 参数数组) -> 返回值 类型的MethodHandle
+         */
+        private final MethodHandle methodHandle;
+
+        TaskInvoker(Class<?> beanClass, Object bean, Method method, MethodHandle methodHandle) {
+            this.beanClass = beanClass;
+            this.bean = bean;
+            this.method = method;
+            this.methodHandle = methodHandle;
+        }
+
+        /**
+         * 获取目标方法
+         *
+         * @return 目标方法
+         */
+        public Method getMethod() {
+            return method;
+        }
+
+        /**
+         * 执行目标方法 目标方法抛出的异常原样抛出
+         *
+         * @param args 方法入参
+         * @return 方法返回值
+         * @throws Exception 目标方法抛出的异常
+         */
+        public Object invoke(Object[] args) throws Exception {
+            Object target = bean != null ? bean : SpringUtil.getBean(beanClass);
+            try {
+                return methodHandle.invokeExact(target, args);
+            } catch (Exception | Error e) {
+                throw e;
+            } catch (Throwable t) {
+                throw new UndeclaredThrowableException(t);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,289 @@
+package com.consistency.manager;
+
+import com.consistency.config.TendConsistencyConfiguration;
+import com.consistency.custom.codec.JsonTaskParameterCodec;
+import com.consistency.custom.codec.TaskParameterCodec;
+import com.consistency.exceptions.ConsistencyException;
+import com.consistency.mapper.TaskPayloadMapper;
+import com.consistency.model.ConsistencyTaskInstance;
+import com.consistency.model.ConsistencyTaskPayload;
+import com.consistency.utils.CompressUtils;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * 任务参数编解码管理器
+ * 编码时使用配置的编解码器，并将编解码器的id记录到任务实例中；解码时根据任务实例中记录的id选择编解码器
+ * 编码结果超过压缩阈值时进行压缩，压缩后仍超过溢出阈值的，在写入任务表时与任务记录一起存储到溢出表中，任务表中只保存引用，执行任务解码参数时才从溢出表中加载
+ *
+ * @author xiayang
+ **/
+@Slf4j
+@Component
+public class TaskParameterCodecManager implements InitializingBean {
+
+    /**
+     * 压缩后的任务参数的前缀
+     */
+    private static final String COMPRESSED_PREFIX = "@deflate:";
+    /**
+     * 存储在溢出表中的任务参数的前缀 后面是溢出表记录的id
+     */
+    private static final String OVERFLOW_PREFIX = "@payload:";
+
+    /**
+     * spring容器中所有的编解码器
+     */
+    @Autowired
+    private List<TaskParameterCodec> taskParameterCodecs;
+    /**
+     * 一致性框架配置
+     */
+    @Autowired
+    private TendConsistencyConfiguration tendConsistencyConfiguration;
+    /**
+     * 任务参数溢出表的mapper组件
+     */
+    @Autowired
+    private TaskPayloadMapper taskPayloadMapper;
+
+    /**
+     * 编解码器 key为codecId
+     */
+    private final Map<String, TaskParameterCodec> codecMap = new HashMap<>();
+    /**
+     * 默认编解码器无法编码的方法 这些方法的参数直接使用json进行编码
+     */
+    private final Set<Method> fallbackJsonMethods = ConcurrentHashMap.newKeySet();
+    /**
+     * 编码时使用的编解码器
+     */
+    private TaskParameterCodec defaultCodec;
+    /**
+     * json编解码器
+     */
+    private TaskParameterCodec jsonCodec;
+
+    @Override
+    public void afterPropertiesSet() {
+        for (TaskParameterCodec codec : taskParameterCodecs) {
+            TaskParameterCodec existCodec = codecMap.put(codec.codecId(), codec);
+            if (existCodec != null) {
+                throw new ConsistencyException(String.format("编解码器id [%s] 重复，%s 与 %s", codec.codecId(),
+                        existCodec.getClass().getName(), codec.getClass().getName()));
+            }
+        }
+        defaultCodec = codecMap.get(tendConsistencyConfiguration.getParameterCodec());
+        if (defaultCodec == null) {
+            throw new ConsistencyException(String.format("未找到id为 [%s] 的任务参数编解码器，请检查配置项：tend.consistency.parameter.codec",
+                    tendConsistencyConfiguration.getParameterCodec()));
+        }
+        jsonCodec = codecMap.get(JsonTaskParameterCodec.CODEC_ID);
+    }
+
+    /**
+     * 编码任务参数 并将编码结果以及编解码器的id设置到任务实例中
+     *
+     * @param taskInstance 任务实例信息
+     * @param args         方法入参
+     * @param method       被注解的方法
+     */
+    public void encode(ConsistencyTaskInstance taskInstance, Object[] args, Method method) {
+        TaskParameterCodec codec = fallbackJsonMethods.contains(method) ? jsonCodec : defaultCodec;
+        String taskParameter;
+        try {
+            taskParameter = codec.encode(args, method);
+        } catch (RuntimeException e) {
+            if (codec == jsonCodec) {
+                throw e;
+            }
+            // 默认编解码器不支持该方法的参数类型 如参数类没有无参构造方法，此后该方法都使用json进行编码
+            log.warn("[一致性任务框架] 使用 [{}] 编解码器编码任务参数失败，该方法的参数改为使用json编码，方法为 {}", codec.codecId(), method, e);
+            fallbackJsonMethods.add(method);
+            codec = jsonCodec;
+            taskParameter = codec.encode(args, method);
+        }
+        taskInstance.setTaskParameter(compressParameter(taskParameter));
+        taskInstance.setParameterCodec(codec.codecId());
+    }
+
+    /**
+     * 根据阈值对编码结果进行压缩
+     *
+     * @param taskParameter 编码后的任务参数
+     * @return 保存到任务实例中的任务参数
+     */
+    private String compressParameter(String taskParameter) {
+        int compressThreshold = tendConsistencyConfiguration.getParameterCompressThreshold();
+        if (compressThreshold > 0 && taskParameter.length() > compressThreshold) {
+            String compressed = COMPRESSED_PREFIX + CompressUtils.deflate(taskParameter);
+            // 压缩后没有变短的就不压缩了
+            if (compressed.length() < taskParameter.length()) {
+                return compressed;
+            }
+        }
+        return taskParameter;
+    }
+
+    /**
+     * 写入任务表 写入前将超过溢出阈值的任务参数存储到溢出表中，与任务记录处于同一个调用路径以及同一个事务中，
+     * 写入失败(包括幂等键重复)时删除本次存储的溢出记录，并将任务参数恢复到任务实例中，以便降级存储到RocksDB中
+     *
+     * @param taskInstance 任务实例信息
+     * @param insert       写入任务表的操作
+     * @param <T>          写入结果的类型
+     * @return 写入结果
+     */
+    public <T> T insertWithOverflow(ConsistencyTaskInstance taskInstance, Supplier<T> insert) {
+        return insertWithOverflow(Collections.singletonList(taskInstance), insert);
+    }
+
+    /**
+     * 批量写入任务表 写入前将超过溢出阈值的任务参数存储到溢出表中
+     *
+     * @param taskInstances 任务实例列表
+     * @param insert        写入任务表的操作
+     * @param <T>           写入结果的类型
+     * @return 写入结果
+     */
+    public <T> T insertWithOverflow(List<ConsistencyTaskInstance> taskInstances, Supplier<T> insert) {
+        int overflowThreshold = tendConsistencyConfiguration.getParameterOverflowThreshold();
+        if (overflowThreshold <= 0) {
+            return insert.get();
+        }
+        Map<ConsistencyTaskInstance, String> spilledParameters = new IdentityHashMap<>();
+        try {
+            for (ConsistencyTaskInstance taskInstance : taskInstances) {
+                String taskParameter = taskInstance.getTaskParameter();
+                if (taskParameter == null || taskParameter.length() <= overflowThreshold || taskParameter.startsWith(OVERFLOW_PREFIX)) {
+                    continue;
+                }
+                ConsistencyTaskPayload taskPayload = ConsistencyTaskPayload.builder()
+                        .shardKey(taskInstance.getShardKey())
+                        .payload(taskParameter)
+                        .gmtCreate(new Date())
+                        .build();
+                taskPayloadMapper.insertPayload(taskPayload);
+                spilledParameters.put(taskInstance, taskParameter);
+                taskInstance.setTaskParameter(OVERFLOW_PREFIX + taskPayload.getId());
+            }
+            return insert.get();
+        } catch (RuntimeException e) {
+            restoreOverflowParameters(spilledParameters);
+            throw e;
+        }
+    }
+
+    /**
+     * 删除写入失败的任务在溢出表中的记录 并恢复任务实例中的任务参数
+     * 事务回滚时溢出记录会随之回滚，这里的删除用于没有事务、或者事务中的写入语句失败后事务仍继续提交的情况
+     *
+     * @param spilledParameters key为任务实例 value为存储到溢出表之前的任务参数
+     */
+    private void restoreOverflowParameters(Map<ConsistencyTaskInstance, String> spilledParameters) {
+        spilledParameters.forEach((taskInstance, taskParameter) -> {
+            try {
+                removeOverflowParameter(taskInstance);
+            } catch (Exception e) {
+                log.error("[一致性任务框架] 删除写入失败的任务在溢出表中的参数时，发生异常 {}", taskInstance.getTaskParameter(), e);
+            }
+            taskInstance.setTaskParameter(taskParameter);
+        });
+    }
+
+    /**
+     * 获取任务实例中保存的编码后的任务参数 如果存储在溢出表中则进行加载 如果进行了压缩则进行解压
+     *
+     * @param taskInstance 任务实例信息
+     * @return 编码后的任务参数
+     */
+    private String loadParameter(ConsistencyTaskInstance taskInstance) {
+        String taskParameter = taskInstance.getTaskParameter();
+        if (StringUtils.isEmpty(taskParameter)) {
+            return taskParameter;
+        }
+        if (taskParameter.startsWith(OVERFLOW_PREFIX)) {
+            Long payloadId = Long.valueOf(taskParameter.substring(OVERFLOW_PREFIX.length()));
+            taskParameter = taskPayloadMapper.getPayload(payloadId, taskInstance.getShardKey());
+            if (taskParameter == null) {
+                throw new ConsistencyException(String.format("任务参数溢出表中未找到id为 [%d] 的记录", payloadId));
+            }
+        }
+        if (taskParameter.startsWith(COMPRESSED_PREFIX)) {
+            taskParameter = CompressUtils.inflate(taskParameter.substring(COMPRESSED_PREFIX.length()));
+        }
+        return taskParameter;
+    }
+
+    /**
+     * 任务完成后 删除该任务在溢出表中的参数
+     *
+     * @param taskInstance 任务实例信息
+     * @return 删除结果
+     */
+    public int removeOverflowParameter(ConsistencyTaskInstance taskInstance) {
+        String taskParameter = taskInstance.getTaskParameter();
+        if (StringUtils.isEmpty(taskParameter) || !taskParameter.startsWith(OVERFLOW_PREFIX)) {
+            return 0;
+        }
+        Long payloadId = Long.valueOf(taskParameter.substring(OVERFLOW_PREFIX.length()));
+        return taskPayloadMapper.deletePayload(payloadId, taskInstance.getShardKey());
+    }
+
+    /**
+     * 任务完成后 用一条语句删除这批任务在溢出表中的参数 需要在任务记录删除之后调用
+     *
+     * @param taskInstances 任务实例列表
+     * @return 删除结果
+     */
+    public int removeOverflowParameters(List<ConsistencyTaskInstance> taskInstances) {
+        List<ConsistencyTaskPayload> taskPayloads = new ArrayList<>();
+        for (ConsistencyTaskInstance taskInstance : taskInstances) {
+            String taskParameter = taskInstance.getTaskParameter();
+            if (!StringUtils.isEmpty(taskParameter) && taskParameter.startsWith(OVERFLOW_PREFIX)) {
+                taskPayloads.add(ConsistencyTaskPayload.builder()
+                        .id(Long.valueOf(taskParameter.substring(OVERFLOW_PREFIX.length())))
+                        .shardKey(taskInstance.getShardKey())
+                        .build());
+            }
+        }
+        if (taskPayloads.isEmpty()) {
+            return 0;
+        }
+        return taskPayloadMapper.batchDeletePayload(taskPayloads);
+    }
+
+    /**
+     * 根据任务实例中记录的编解码器的id 解码任务参数
+     *
+     * @param taskInstance 任务实例信息
+     * @param method       要执行的方法
+     * @return 方法入参
+     */
+    public Object[] decode(ConsistencyTaskInstance taskInstance, Method method) {
+        // 早期的任务没有记录编解码器 使用json进行解码
+        String codecId = StringUtils.isEmpty(taskInstance.getParameterCodec()) ?
+                JsonTaskParameterCodec.CODEC_ID : taskInstance.getParameterCodec();
+        TaskParameterCodec codec = codecMap.get(codecId);
+        if (codec == null) {
+            throw new ConsistencyException(String.format("未找到id为 [%s] 的任务参数编解码器", codecId));
+        }
+        return codec.decode(loadParameter(taskInstance), method);
+    }
+
+}
@@ -0,0 +1,195 @@
+package com.consistency.manager;
+
+import com.consistency.config.TendConsistencyConfiguration;
+import com.consistency.model.ConsistencyTaskInstance;
+import com.consistency.template.TaskTemplateRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 任务限流器 按照任务方法分别使用令牌桶限制每秒执行的次数
+ * 分发器执行任务前获取令牌，没有令牌的任务在内存中等待到有令牌时再放回待执行队列，需要等待的时间过长时推迟到下一个可以执行的时间，
+ * 避免调用有QPS配额的第三方接口的任务超过配额后执行失败，白白消耗重试次数以及数据库写入。
+ *
+ * @author xiayang
+ **/
+@Slf4j
+@Component
+public class TaskRateLimiter implements InitializingBean, DisposableBean {
+
+    /**
+     * 等待令牌的任务放回待执行队列的线程名称
+     */
+    private static final String THROTTLE_THREAD_NAME = "TaskRateLimiter";
+
+    /**
+     * 一致性框架配置
+     */
+    @Autowired
+    private TendConsistencyConfiguration tendConsistencyConfiguration;
+    /**
+     * 一致性任务模板注册表
+     */
+    @Autowired
+    private TaskTemplateRegistry taskTemplateRegistry;
+
+    /**
+     * 各个任务方法的令牌桶 key为方法签名
+     */
+    private final Map<String, TokenBucket> buckets = new ConcurrentHashMap<>(64);
+    /**
+     * 因为限流等待过的任务数
+     */
+    private final AtomicLong throttledCount = new AtomicLong();
+    /**
+     * 等待令牌的任务到期后放回待执行队列的线程
+     */
+    private ScheduledExecutorService throttleExecutorService;
+
+    @Override
+    public void afterPropertiesSet() {
+        throttleExecutorService = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, THROTTLE_THREAD_NAME);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public void destroy() {
+        throttleExecutorService.shutdownNow();
+    }
+
+    /**
+     * 获取执行任务的令牌
+     *
+     * @param taskInstance 任务实例信息
+     * @return 获取到令牌时返回0 否则返回需要等待的时间 单位纳秒
+     */
+    public long tryAcquire(ConsistencyTaskInstance taskInstance) {
+        TokenBucket bucket = getBucket(taskInstance);
+        if (bucket == null) {
+            return 0L;
+        }
+        long waitNanos = bucket.tryAcquire(System.nanoTime());
+        if (waitNanos > 0) {
+            throttledCount.incrementAndGet();
+        }
+        return waitNanos;
+    }
+
+    /**
+     * 需要等待的时间是否可以在内存中等待
+     *
+     * @param waitNanos 需要等待的时间 单位纳秒
+     * @return 是否可以在内存中等待
+     */
+    public boolean canWaitInMemory(long waitNanos) {
+        return waitNanos <= TimeUnit.MILLISECONDS.toNanos(tendConsistencyConfiguration.getRateLimitMaxWaitMillis());
+    }
+
+    /**
+     * 等待指定的时间后执行 用于将等待令牌的任务放回待执行队列
+     *
+     * @param task      要执行的逻辑
+     * @param waitNanos 等待的时间 单位纳秒
+     * @return 是否提交成功 限流器关闭时返回false
+     */
+    public boolean schedule(Runnable task, long waitNanos) {
+        try {
+            throttleExecutorService.schedule(task, waitNanos, TimeUnit.NANOSECONDS);
+            return true;
+        } catch (RejectedExecutionException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 获取因为限流等待过的任务数
+     *
+     * @return 等待过的任务数
+     */
+    public long getThrottledCount() {
+        return throttledCount.get();
+    }
+
+    /**
+     * 获取任务方法的令牌桶 没有配置限流时返回null 配置中按照taskId配置的限流优先于注解中的rateLimit
+     *
+     * @param taskInstance 任务实例信息
+     * @return 令牌桶
+     */
+    private TokenBucket getBucket(ConsistencyTaskInstance taskInstance) {
+        String methodSignName = taskInstance.getMethodSignName();
+        TokenBucket bucket = buckets.get(methodSignName);
+        if (bucket != null) {
+            return bucket;
+        }
+        Double rateLimit = tendConsistencyConfiguration.getRateLimits().get(taskInstance.getTaskId());
+        if (rateLimit == null) {
+            rateLimit = taskTemplateRegistry.getRateLimit(methodSignName);
+        }
+        if (rateLimit <= 0) {
+            return null;
+        }
+        double permitsPerSecond = rateLimit;
+        return buckets.computeIfAbsent(methodSignName, k -> new TokenBucket(permitsPerSecond));
+    }
+
+    /**
+     * 无锁的令牌桶 使用理论到达时间(GCRA)表示桶中的令牌 每次获取令牌时CAS推进理论到达时间
+     * 桶的容量为1秒的令牌数(至少1个) 允许短时间内的突发
+     */
+    private static class TokenBucket {
+
+        /**
+         * 每个令牌的生成间隔 单位纳秒
+         */
+        private final long intervalNanos;
+
+        /**
+         * 允许的突发 单位纳秒 即桶满时可以连续获取的令牌数对应的时间
+         */
+        private final long burstNanos;
+
+        /**
+         * 理论到达时间 即桶中的令牌被取完的时间 单位纳秒
+         */
+        private final AtomicLong theoreticalArrivalNanos;
+
+        TokenBucket(double permitsPerSecond) {
+            this.intervalNanos = Math.max(1L, (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond));
+            this.burstNanos = intervalNanos * Math.max(1L, (long) permitsPerSecond);
+            this.theoreticalArrivalNanos = new AtomicLong(System.nanoTime() - burstNanos);
+        }
+
+        /**
+         * @return 获取到令牌时返回0 否则返回需要等待的时间 没有获取到令牌时不消耗令牌
+         */
+        long tryAcquire(long nowNanos) {
+            while (true) {
+                long arrival = theoreticalArrivalNanos.get();
+                long nextArrival = Math.max(arrival - nowNanos, 0L) + nowNanos + intervalNanos;
+                long waitNanos = nextArrival - nowNanos - burstNanos;
+                if (waitNanos > 0) {
+                    return waitNanos;
+                }
+                if (theoreticalArrivalNanos.compareAndSet(arrival, nextArrival)) {
+                    return 0L;
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,251 @@
+package com.consistency.manager;
+
+import com.consistency.enums.TaskPriorityEnum;
+import com.consistency.model.ConsistencyTaskInstance;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 按照优先级和任务类型公平出队的有界待执行队列
+ * 每个优先级是一条通道，出队时在非空的通道之间按照权重平滑轮询(smooth weighted round-robin)，
+ * 同一个通道内在不同的任务方法之间轮流出队，某一类任务大量积压时不会让其他任务一直排在后面。
+ * 高优先级通道在任何积压情况下都至少能获得 权重/总权重 比例的执行机会，等待时间有上限。
+ *
+ * @author xiayang
+ **/
+public class TaskReadyQueue {
+
+    /**
+     * 队列的容量 所有通道共用
+     */
+    private final int capacity;
+
+    /**
+     * 各个优先级的通道 按照优先级从高到低排列
+     */
+    private final PriorityLane[] lanes;
+
+    /**
+     * 队列中的任务数
+     */
+    private int count;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Condition notEmpty = lock.newCondition();
+
+    private final Condition notFull = lock.newCondition();
+
+    /**
+     * @param capacity 队列的容量
+     * @param weights  各个优先级的权重 key为优先级的code 没有配置的优先级权重为1
+     */
+    public TaskReadyQueue(int capacity, Map<Integer, Integer> weights) {
+        this.capacity = capacity;
+        TaskPriorityEnum[] priorities = TaskPriorityEnum.values();
+        this.lanes = new PriorityLane[priorities.length];
+        for (int i = 0; i < priorities.length; i++) {
+            lanes[i] = new PriorityLane(priorities[i].getCode(), Math.max(1, weights.getOrDefault(priorities[i].getCode(), 1)));
+        }
+    }
+
+    /**
+     * 放入任务 队列已满时返回false
+     *
+     * @param taskInstance 任务实例信息
+     * @return 是否放入成功
+     */
+    public boolean offer(ConsistencyTaskInstance taskInstance) {
+        lock.lock();
+        try {
+            if (count >= capacity) {
+                return false;
+            }
+            enqueue(taskInstance);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 放入任务 队列已满时最多等待指定的时间
+     *
+     * @param taskInstance 任务实例信息
+     * @param timeout      等待时间
+     * @param unit         等待时间的单位
+     * @return 是否放入成功
+     * @throws InterruptedException 等待时被中断
+     */
+    public boolean offer(ConsistencyTaskInstance taskInstance, long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while (count >= capacity) {
+                if (nanos <= 0) {
+                    return false;
+                }
+                nanos = notFull.awaitNanos(nanos);
+            }
+            enqueue(taskInstance);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 取出下一个要执行的任务 队列为空时等待
+     *
+     * @return 任务实例信息
+     * @throws InterruptedException 等待时被中断
+     */
+    public ConsistencyTaskInstance take() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (count == 0) {
+                notEmpty.await();
+            }
+            ConsistencyTaskInstance taskInstance = selectLane().poll();
+            count--;
+            notFull.signal();
+            return taskInstance;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 获取队列中的任务数
+     *
+     * @return 任务数
+     */
+    public int size() {
+        lock.lock();
+        try {
+            return count;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 获取队列的剩余容量
+     *
+     * @return 剩余容量
+     */
+    public int remainingCapacity() {
+        lock.lock();
+        try {
+            return capacity - count;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void enqueue(ConsistencyTaskInstance taskInstance) {
+        getLane(taskInstance.getPriority()).offer(taskInstance);
+        count++;
+        notEmpty.signal();
+    }
+
+    /**
+     * 获取任务所属的通道 未知的优先级按照最接近的优先级处理
+     *
+     * @param priority 任务的优先级
+     * @return 通道
+     */
+    private PriorityLane getLane(int priority) {
+        for (PriorityLane lane : lanes) {
+            if (priority >= lane.priority) {
+                return lane;
+            }
+        }
+        return lanes[lanes.length - 1];
+    }
+
+    /**
+     * 平滑加权轮询 每个非空通道的当前权重加上自己的权重 选出当前权重最大的通道后 减去所有非空通道的权重之和
+     *
+     * @return 本次出队的通道
+     */
+    private PriorityLane selectLane() {
+        PriorityLane selected = null;
+        int totalWeight = 0;
+        for (PriorityLane lane : lanes) {
+            if (lane.isEmpty()) {
+                continue;
+            }
+            lane.currentWeight += lane.weight;
+            totalWeight += lane.weight;
+            if (selected == null || lane.currentWeight > selected.currentWeight) {
+                selected = lane;
+            }
+        }
+        selected.currentWeight -= totalWeight;
+        return selected;
+    }
+
+    /**
+     * 一个优先级的通道 按照任务方法分别排队 出队时在任务方法之间轮流
+     */
+    private static class PriorityLane {
+
+        private final int priority;
+
+        private final int weight;
+
+        /**
+         * 平滑加权轮询的当前权重
+         */
+        private int currentWeight;
+
+        /**
+         * 各个任务方法的队列 key为方法签名
+         */
+        private final Map<String, ArrayDeque<ConsistencyTaskInstance>> queuesByMethod = new HashMap<>();
+
+        /**
+         * 有任务的方法签名 按照轮询顺序排列
+         */
+        private final ArrayDeque<String> activeMethods = new ArrayDeque<>();
+
+        PriorityLane(int priority, int weight) {
+            this.priority = priority;
+            this.weight = weight;
+        }
+
+        boolean isEmpty() {
+            return activeMethods.isEmpty();
+        }
+
+        void offer(ConsistencyTaskInstance taskInstance) {
+            String methodSignName = String.valueOf(taskInstance.getMethodSignName());
+            ArrayDeque<ConsistencyTaskInstance> queue = queuesByMethod.get(methodSignName);
+            if (queue == null) {
+                queue = new ArrayDeque<>();
+                queuesByMethod.put(methodSignName, queue);
+                activeMethods.addLast(methodSignName);
+            }
+            queue.addLast(taskInstance);
+        }
+
+        ConsistencyTaskInstance poll() {
+            String methodSignName = activeMethods.pollFirst();
+            ArrayDeque<ConsistencyTaskInstance> queue = queuesByMethod.get(methodSignName);
+            ConsistencyTaskInstance taskInstance = queue.pollFirst();
+            if (queue.isEmpty()) {
+                queuesByMethod.remove(methodSignName);
+            } else {
+                activeMethods.addLast(methodSignName);
+            }
+            return taskInstance;
+        }
+    }
+
+}
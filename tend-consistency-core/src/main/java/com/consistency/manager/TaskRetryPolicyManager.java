@@ -0,0 +1,143 @@
+package com.consistency.manager;
+
+import com.consistency.config.TendConsistencyConfiguration;
+import com.consistency.custom.retry.RetryPolicy;
+import com.consistency.enums.ConsistencyTaskStatusEnum;
+import com.consistency.exceptions.ConsistencyException;
+import com.consistency.model.ConsistencyTaskInstance;
+import com.consistency.template.TaskTemplateRegistry;
+import com.consistency.utils.TimeUtils;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 任务重试策略管理器
+ * 任务执行失败时，根据注解中指定的重试策略(没有指定时使用默认的重试策略)计算下一次的执行时间，
+ * 执行次数达到maxAttempts的任务不再重试，标记为重试次数用尽，由降级逻辑或者人工介入处理
+ *
+ * @author xiayang
+ **/
+@Slf4j
+@Component
+public class TaskRetryPolicyManager implements InitializingBean {
+
+    /**
+     * spring容器中所有的重试策略
+     */
+    @Autowired
+    private List<RetryPolicy> retryPolicies;
+    /**
+     * 一致性框架配置
+     */
+    @Autowired
+    private TendConsistencyConfiguration tendConsistencyConfiguration;
+    /**
+     * 一致性任务模板注册表
+     */
+    @Autowired
+    private TaskTemplateRegistry taskTemplateRegistry;
+
+    /**
+     * 重试策略 key为policyId
+     */
+    private final Map<String, RetryPolicy> policyMap = new HashMap<>();
+    /**
+     * 默认的重试策略
+     */
+    private RetryPolicy defaultPolicy;
+
+    @Override
+    public void afterPropertiesSet() {
+        for (RetryPolicy policy : retryPolicies) {
+            RetryPolicy existPolicy = policyMap.put(policy.policyId(), policy);
+            if (existPolicy != null) {
+                throw new ConsistencyException(String.format("重试策略id [%s] 重复，%s 与 %s", policy.policyId(),
+                        existPolicy.getClass().getName(), policy.getClass().getName()));
+            }
+        }
+        defaultPolicy = policyMap.get(tendConsistencyConfiguration.getRetryDefaultPolicy());
+        if (defaultPolicy == null) {
+            throw new ConsistencyException(String.format("未找到id为 [%s] 的重试策略，请检查配置项：tend.consistency.retry.default-policy",
+                    tendConsistencyConfiguration.getRetryDefaultPolicy()));
+        }
+    }
+
+    /**
+     * 安排执行失败的任务的下一次执行 设置任务的下一次执行时间 执行次数达到上限时将任务标记为重试次数用尽
+     *
+     * @param taskInstance 任务实例信息
+     * @param failedTimes  任务已经失败的次数 包括本次
+     * @param baseTime     计算下一次执行时间的起始时间
+     * @return 任务的重试次数是否已经用尽
+     */
+    public boolean scheduleRetry(ConsistencyTaskInstance taskInstance, int failedTimes, long baseTime) {
+        if (isExhausted(taskInstance, failedTimes)) {
+            log.error("[一致性任务框架] 任务执行次数已经达到上限，不再重试 id={} taskId={} 执行次数为 {}",
+                    taskInstance.getId(), taskInstance.getTaskId(), failedTimes);
+            taskInstance.setTaskStatus(ConsistencyTaskStatusEnum.EXHAUSTED.getCode());
+            return true;
+        }
+        taskInstance.setExecuteTime(nextExecuteTime(taskInstance, failedTimes, baseTime));
+        return false;
+    }
+
+    /**
+     * 计算任务的下一次执行时间
+     *
+     * @param taskInstance 任务实例信息
+     * @param failedTimes  任务已经失败的次数 包括本次
+     * @param baseTime     计算下一次执行时间的起始时间
+     * @return 下一次执行时间
+     */
+    public long nextExecuteTime(ConsistencyTaskInstance taskInstance, int failedTimes, long baseTime) {
+        long delay = getPolicy(taskInstance).nextDelayMillis(failedTimes, TimeUtils.secToMill(taskInstance.getExecuteIntervalSec()));
+        long maxDelay = TimeUtils.secToMill(tendConsistencyConfiguration.getRetryMaxDelaySec());
+        if (maxDelay > 0) {
+            delay = Math.min(delay, maxDelay);
+        }
+        return baseTime + Math.max(delay, 0L);
+    }
+
+    /**
+     * 任务的执行次数是否已经达到上限
+     *
+     * @param taskInstance 任务实例信息
+     * @param failedTimes  任务已经失败的次数 包括本次
+     * @return 是否达到上限
+     */
+    private boolean isExhausted(ConsistencyTaskInstance taskInstance, int failedTimes) {
+        int maxAttempts = taskTemplateRegistry.getMaxAttempts(taskInstance.getMethodSignName());
+        if (maxAttempts <= 0) {
+            maxAttempts = tendConsistencyConfiguration.getRetryMaxAttempts();
+        }
+        return maxAttempts > 0 && failedTimes >= maxAttempts;
+    }
+
+    /**
+     * 获取任务的重试策略 注解中指定的重试策略不存在时使用默认的重试策略
+     *
+     * @param taskInstance 任务实例信息
+     * @return 重试策略
+     */
+    private RetryPolicy getPolicy(ConsistencyTaskInstance taskInstance) {
+        String policyId = taskTemplateRegistry.getRetryPolicy(taskInstance.getMethodSignName());
+        if (StringUtils.isEmpty(policyId)) {
+            return defaultPolicy;
+        }
+        RetryPolicy policy = policyMap.get(policyId);
+        if (policy == null) {
+            log.warn("[一致性任务框架] 未找到id为 [{}] 的重试策略，使用默认的重试策略 [{}] 方法为 {}",
+                    policyId, defaultPolicy.policyId(), taskInstance.getMethodSignName());
+            return defaultPolicy;
+        }
+        return policy;
+    }
+
+}
@@ -5,27 +5,23 @@ import cn.hutool.core.util.ObjectUtil;
 import com.consistency.config.TendConsistencyConfiguration;
 import com.consistency.election.PeerElectionHandler;
 import com.consistency.exceptions.ConsistencyException;
+import com.consistency.exceptions.TaskAbandonedException;
 import com.consistency.localstorage.RocksLocalStorage;
 import com.consistency.model.ConsistencyTaskInstance;
 import com.consistency.service.TaskStoreService;
-import com.consistency.utils.ReflectTools;
-import com.consistency.utils.SpringUtil;
 import com.consistency.utils.ThreadLocalUtil;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 import org.springframework.util.CollectionUtils;
 import org.springframework.util.ObjectUtils;
-import org.springframework.util.StringUtils;
 
-import javax.annotation.Resource;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.CompletionService;
-import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.stream.Collectors;
 
 /**
@@ -43,13 +39,15 @@ public class TaskScheduleManager {
     @Autowired
     private TaskStoreService taskStoreService;
     /**
-     * 并行任务线程池
+     * 调度任务的持续分发器
      */
     @Autowired
-    private CompletionService<ConsistencyTaskInstance> consistencyTaskPool;
-
-    @Resource
-    private TaskEngineExecutor taskEngineExecutor;
+    private TaskDispatcher taskDispatcher;
+    /**
+     * 调度任务的时间轮
+     */
+    @Autowired
+    private TaskTimingWheel taskTimingWheel;
     /**
      * 一致性任务分片组件
      */
@@ -65,12 +63,54 @@ public class TaskScheduleManager {
      */
     @Autowired
     private RocksLocalStorage rocksLocalStorage;
+    /**
+     * 任务参数编解码管理器
+     */
+    @Autowired
+    private TaskParameterCodecManager taskParameterCodecManager;
+    /**
+     * 任务方法调用器的缓存
+     */
+    @Autowired
+    private TaskInvokerCache taskInvokerCache;
+    /**
+     * 任务执行的看门狗
+     */
+    @Autowired
+    private TaskExecutionWatchdog taskExecutionWatchdog;
+    /**
+     * 任务熔断器
+     */
+    @Autowired
+    private TaskCircuitBreaker taskCircuitBreaker;
 
     /**
-     * 查询并执行未完成的一致性任务
+     * 查询待执行任务的锁
+     */
+    private final Lock pollLock = new ReentrantLock();
+
+    /**
+     * 查询并执行未完成的一致性任务 查询出的任务放入持续分发器的待执行队列后立即返回 不等待任务执行完成
+     * 定时调度和分发器的补充查询可能同时触发 同一时刻只允许一次查询
      */
     public void performanceTask() throws InterruptedException {
+        if (!pollLock.tryLock()) {
+            return;
+        }
+        try {
+            doPerformanceTask();
+        } finally {
+            pollLock.unlock();
+        }
+    }
+
+    private void doPerformanceTask() {
         log.info("performanceTask...");
+        // 待执行队列已满 说明执行线程还在处理上一批任务
+        int capacity = taskDispatcher.remainingCapacity();
+        if (capacity <= 0) {
+            return;
+        }
 
         // 如果分片结果为空，即leader还没有做分片 或者 leader还没有启动
         Map<String, List<Long>> taskSharingResult = peerElectionHandler
@@ -89,6 +129,11 @@ public class TaskScheduleManager {
             return;
         }
 
+        // 开启时间轮时 预取即将到期的任务放入时间轮
+        if (taskTimingWheel.isEnabled()) {
+            prefetchNearFutureTasks(myTaskShardIndexes);
+        }
+
         // 从我们的db，mysql里，通过sql语句，去做一个查询，查询你的未完成的任务
         // 一下子会把所有的未完成的任务，都给他去查询出来
         List<ConsistencyTaskInstance> consistencyTaskInstances = new ArrayList<>();
@@ -100,7 +145,7 @@ public class TaskScheduleManager {
         }
 
         // 从RocksDB中获取待执行的任务
-        List<ConsistencyTaskInstance> waitPerformanceTaskList = listWaitPerformanceTaskFromRocks();
+        List<ConsistencyTaskInstance> waitPerformanceTaskList = listWaitPerformanceTaskFromRocks(capacity);
 
         // 如果本地和数据库都没有数据，则退出
         if (CollectionUtils.isEmpty(consistencyTaskInstances) && CollectionUtil.isEmpty(waitPerformanceTaskList)) {
@@ -115,27 +160,94 @@ public class TaskScheduleManager {
 
         // 合并本地与数据库中的任务。到这里才能进行任务的合并，因为RocksDB是内嵌的基于本地磁盘的KV存储引擎，任务信息只有在本地有。
         waitPerformanceTaskList.addAll(consistencyTaskInstances);
+        // 按照优先级排序 待执行队列的空位不够时 高优先级的任务先放入
+        waitPerformanceTaskList.sort(Comparator.comparingInt(ConsistencyTaskInstance::getPriority).reversed());
 
         // 合并后如果还是为空，退出执行
         if (CollectionUtils.isEmpty(waitPerformanceTaskList)) {
             return;
         }
 
-        CountDownLatch latch = new CountDownLatch(waitPerformanceTaskList.size());
-        // 你希望开多少线程，并发的执行你的任务，你可以自己去配置线程池里的线程数量
-        for (ConsistencyTaskInstance instance : waitPerformanceTaskList) {
-            consistencyTaskPool.submit(() -> {
-                try {
-                    // 执行任务
-                    taskEngineExecutor.executeTaskInstance(instance);
-                    return instance;
-                } finally {
-                    latch.countDown();
-                }
-            });
+        // 超出待执行队列容量的任务 或者RocksDB中还有剩余的任务 说明还有积压的任务
+        boolean backlogged = waitPerformanceTaskList.size() >= capacity || rocksLocalStorage.priorityQueue.size() > 0;
+        // 时间轮中的任务到期后由时间轮直接执行
+        if (taskTimingWheel.isEnabled()) {
+            waitPerformanceTaskList.removeIf(taskTimingWheel::contains);
+        }
+        // 熔断中的任务方法的任务不执行 用一条语句批量推迟到熔断结束的时间
+        waitPerformanceTaskList = taskCircuitBreaker.deferOpenCircuitTasks(waitPerformanceTaskList);
+        // 一条语句领取所有任务的租约 租约被其他节点持有或者正在执行的任务不会被领取
+        waitPerformanceTaskList = claimTasks(waitPerformanceTaskList);
+        // 放入待执行队列 由分发器在执行线程空闲时持续取出执行 你可以自己去配置线程池里的线程数量
+        taskDispatcher.dispatch(waitPerformanceTaskList, backlogged);
+    }
+
+    /**
+     * 预取即将到期的调度任务放入时间轮
+     *
+     * @param myTaskShardIndexes 当前实例被分配到的分片索引
+     */
+    private void prefetchNearFutureTasks(List<Long> myTaskShardIndexes) {
+        int capacity = taskTimingWheel.remainingCapacity();
+        if (capacity <= 0) {
+            return;
+        }
+        List<ConsistencyTaskInstance> nearFutureTasks;
+        try {
+            nearFutureTasks = taskStoreService.listNearFutureTask(taskTimingWheel.getHorizonMillis(), capacity);
+        } catch (Exception e) {
+            log.error("[一致性任务框架] 调度器从数据库中预取即将到期的任务时，发生异常 {}", e.getMessage());
+            return;
+        }
+        int count = 0;
+        for (ConsistencyTaskInstance taskInstance : nearFutureTasks) {
+            if (belongToCurrentPeer(taskInstance, myTaskShardIndexes) && taskTimingWheel.schedule(taskInstance)) {
+                count++;
+            }
+        }
+        log.info("[一致性任务框架] 调度器预取到时间轮中的任务数为 [{}]", count);
+    }
+
+    /**
+     * 执行时间轮中到期的任务 分片可能已经发生了变化 执行前需要重新判断任务是否属于当前节点
+     *
+     * @param dueTasks 到期的任务
+     */
+    public void performanceDueTasks(List<ConsistencyTaskInstance> dueTasks) {
+        if (ObjectUtil.isEmpty(peerElectionHandler.getConsistencyTaskShardingContext().getTaskSharingResult())) {
+            return;
+        }
+        List<Long> myTaskShardIndexes = peerElectionHandler.getMyTaskShardIndexes();
+        if (CollectionUtil.isEmpty(myTaskShardIndexes)) {
+            return;
+        }
+        List<ConsistencyTaskInstance> belongToCurrentPeerTasks = dueTasks.stream()
+                .filter(e -> belongToCurrentPeer(e, myTaskShardIndexes))
+                .collect(Collectors.toList());
+        belongToCurrentPeerTasks = taskCircuitBreaker.deferOpenCircuitTasks(belongToCurrentPeerTasks);
+        belongToCurrentPeerTasks = claimTasks(belongToCurrentPeerTasks);
+        if (!belongToCurrentPeerTasks.isEmpty()) {
+            taskDispatcher.dispatchDue(belongToCurrentPeerTasks);
+        }
+    }
+
+    /**
+     * 批量领取任务的租约 领取失败时不执行任务 等待下一次调度
+     *
+     * @param taskInstances 任务实例列表
+     * @return 领取到租约的任务
+     */
+    private List<ConsistencyTaskInstance> claimTasks(List<ConsistencyTaskInstance> taskInstances) {
+        if (taskInstances.isEmpty()) {
+            return taskInstances;
+        }
+        try {
+            return taskStoreService.claimTasks(taskInstances);
+        } catch (Exception e) {
+            log.error("[一致性任务框架] 批量领取任务租约时，发生异常 {}", e.getMessage());
+            // 数据库中的任务领取失败时不执行 本地存储中的任务仍然可以执行
+            return taskInstances.stream().filter(taskInstance -> taskInstance.getId() == null).collect(Collectors.toList());
         }
-        latch.await();
-        log.info("[一致性任务框架] 执行完成");
     }
 
     /**
@@ -147,37 +259,43 @@ public class TaskScheduleManager {
     private List<ConsistencyTaskInstance> filterBelongToCurrentPeerTasks(
             List<ConsistencyTaskInstance> consistencyTaskInstances,
             List<Long> myTaskShardIndexes) {
+        if (!CollectionUtil.isEmpty(consistencyTaskInstances)) {
+            // 过滤出需要被执行的任务
+            consistencyTaskInstances = consistencyTaskInstances.stream()
+                    .filter(e -> e.getExecuteTime() - System.currentTimeMillis() <= 0
+                            && belongToCurrentPeer(e, myTaskShardIndexes))
+                    .collect(Collectors.toList());
+        }
+        return consistencyTaskInstances;
+    }
+
+    /**
+     * 判断任务是否属于当前实例的分片
+     *
+     * @param taskInstance       任务实例信息
+     * @param myTaskShardIndexes 当前实例被分配到的分片索引
+     * @return 是否属于当前实例
+     */
+    private boolean belongToCurrentPeer(ConsistencyTaskInstance taskInstance, List<Long> myTaskShardIndexes) {
         // 获取任务总分片数
         Long shardingCount = tendConsistencyConfiguration.getTaskShardingCount();
         // 判断一致性任务框架是否开启了分库模式：如果是分库模式则用shardKey来匹配任务分片逻辑，否则使用id匹配任务分片逻辑。
-        Boolean taskSharded = tendConsistencyConfiguration.getTaskSharded();
-        if (!CollectionUtil.isEmpty(consistencyTaskInstances)) {
-            if (taskSharded) {
-                // 过滤出需要被执行的任务
-                consistencyTaskInstances = consistencyTaskInstances.stream()
-                        .filter(e -> e.getExecuteTime() - System.currentTimeMillis() <= 0
-                                && myTaskShardIndexes.contains(e.getShardKey() % shardingCount))
-                        .collect(Collectors.toList());
-            } else {
-                // 过滤出需要被执行的任务
-                consistencyTaskInstances = consistencyTaskInstances.stream()
-                        .filter(e -> e.getExecuteTime() - System.currentTimeMillis() <= 0
-                                && myTaskShardIndexes.contains(e.getId() % shardingCount))
-                        .collect(Collectors.toList());
-            }
+        if (tendConsistencyConfiguration.getTaskSharded()) {
+            return myTaskShardIndexes.contains(taskInstance.getShardKey() % shardingCount);
         }
-        return consistencyTaskInstances;
+        return myTaskShardIndexes.contains(taskInstance.getId() % shardingCount);
     }
 
     /**
      * 从RocksDB中获取数据
+     * @param capacity 待执行队列的剩余容量
      * @return 待执行任务列表
      */
-    private List<ConsistencyTaskInstance> listWaitPerformanceTaskFromRocks() {
+    private List<ConsistencyTaskInstance> listWaitPerformanceTaskFromRocks(int capacity) {
         List<ConsistencyTaskInstance> waitPerformanceTaskList = new ArrayList<>();
-        // 获取RocksDB中的数据
+        // 获取RocksDB中的数据 取出的任务会从优先队列中移除，所以不能超过待执行队列的剩余容量
         if (rocksLocalStorage.priorityQueue.size() > 0) {
-            waitPerformanceTaskList = rocksLocalStorage.getTopN(100);
+            waitPerformanceTaskList = rocksLocalStorage.getTopN(Math.min(100, capacity));
         }
         return waitPerformanceTaskList;
     }
@@ -188,77 +306,48 @@ public class TaskScheduleManager {
      * @param taskInstance 任务实例信息
      */
     public void performanceTask(ConsistencyTaskInstance taskInstance) throws Exception {
-        // 获取方法签名 格式：类路径#方法名(参数1的类型,参数2的类型,...参数N的类型)
-        String methodSignName = taskInstance.getMethodSignName();
-        // 获取方法所在的类
-        Class<?> clazz = getTaskMethodClass(methodSignName.split("#")[0]);
-        if (ObjectUtils.isEmpty(clazz)) {
-            return;
-        }
-        Object o = clazz.getDeclaredConstructor().newInstance();
-        Object bean = SpringUtil.getBean(clazz);
-        if (ObjectUtils.isEmpty(bean)) {
-            return;
-        }
-        // 后面把methodName独立出一个字段
-        String methodName = taskInstance.getMethodName();
-        // 获取参数类型的字符串字符串 多个用逗号分隔
-        String[] parameterTypes = StringUtils.isEmpty(taskInstance.getParameterTypes()) ?
-                new String[]{} : taskInstance.getParameterTypes().split(",");
-        // 构造参数类数组
-        Class<?>[] parameterClasses = ReflectTools.buildTypeClassArray(parameterTypes);
-        // 获取目标方法
-        Method targetMethod = getTargetMethod(methodName, parameterClasses, clazz);
-        if (ObjectUtils.isEmpty(targetMethod)) {
+        // 获取任务方法的调用器 同一个任务方法只在第一次执行时进行反射查找
+        TaskInvokerCache.TaskInvoker invoker = taskInvokerCache.getInvoker(taskInstance);
+        if (ObjectUtils.isEmpty(invoker)) {
             return;
         }
         // 构造方法入参
-        Object[] args = ReflectTools.buildArgs(taskInstance.getTaskParameter(), parameterClasses);
+        Object[] args = taskParameterCodecManager.decode(taskInstance, invoker.getMethod());
+        // 配置了执行超时时间时 由看门狗在超时后中断执行线程
+        TaskExecutionWatchdog.Execution execution = taskExecutionWatchdog.watch(taskInstance);
         try {
             // 执行目标方法调用
             ThreadLocalUtil.setFlag(true);
-            targetMethod.invoke(bean, args);
-            ThreadLocalUtil.setFlag(false);
-        } catch (InvocationTargetException e) {
+            invoker.invoke(args);
+        } catch (Exception e) {
+            checkAbandoned(taskInstance, execution);
+            if (execution != null && execution.isTimedOut()) {
+                log.error("调用目标方法超时，执行线程已被中断", e);
+                throw new ConsistencyException("任务执行超时");
+            }
             log.error("调用目标方法时，发生异常", e);
-            Throwable target = e.getTargetException();
-            throw new ConsistencyException((Exception) target);
-        } catch (Exception ex) {
-            throw new ConsistencyException(ex);
+            throw new ConsistencyException(e);
+        } finally {
+            ThreadLocalUtil.setFlag(false);
+            taskExecutionWatchdog.unwatch(execution);
         }
-    }
-
-    /**
-     * 获取目标方法
-     *
-     * @param methodName              方法名称
-     * @param parameterTypeClassArray 入参类数组
-     * @param clazz                   方法所在类的Class对象
-     * @return 目标方法
-     */
-    private Method getTargetMethod(String methodName, Class<?>[] parameterTypeClassArray, Class<?> clazz) {
-        try {
-            return clazz.getMethod(methodName, parameterTypeClassArray);
-        } catch (NoSuchMethodException e) {
-            log.error("获取目标方法失败", e);
-            return null;
+        checkAbandoned(taskInstance, execution);
+        // 超过截止时间后才执行成功的 副作用已经产生 仍然按照执行成功处理 由看门狗记录超时返回的次数
+        if (execution != null && execution.isPastDeadline(System.currentTimeMillis())) {
+            log.warn("[一致性任务框架] 调用目标方法超时后执行成功 id={} taskId={}", taskInstance.getId(), taskInstance.getTaskId());
         }
     }
 
     /**
-     * 构造任务方法所在的类对象
+     * 看门狗放弃执行时已经按照执行失败记录了数据库中的任务 执行线程返回后不再重复记录执行结果
      *
-     * @param className 类名称
-     * @return 类对象
+     * @param taskInstance 任务实例信息
+     * @param execution    执行记录
      */
-    private Class<?> getTaskMethodClass(String className) {
-        Class<?> clazz;
-        try {
-            clazz = Class.forName(className);
-            return clazz;
-        } catch (ClassNotFoundException e) {
-            e.printStackTrace();
-            return null;
+    private void checkAbandoned(ConsistencyTaskInstance taskInstance, TaskExecutionWatchdog.Execution execution) {
+        if (execution != null && execution.isAbandoned() && taskInstance.getId() != null) {
+            log.warn("[一致性任务框架] 被放弃的任务执行线程已返回，执行结果已由看门狗记录 id={}", taskInstance.getId());
+            throw new TaskAbandonedException("任务执行已被放弃");
         }
     }
 
@@ -0,0 +1,347 @@
+package com.consistency.manager;
+
+import com.consistency.config.TendConsistencyConfiguration;
+import com.consistency.exceptions.ConsistencyException;
+import com.consistency.model.ConsistencyTaskInstance;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 调度任务的时间轮
+ * 执行时间在horizonSeconds以内的调度任务(本地初始化的任务，以及调度器从数据库中预取的任务)放入时间轮，
+ * 到达执行时间后直接交给分发器执行，不再等待下一次调度，数据库的定时查询只用于补充和故障恢复。
+ * 时间轮为哈希时间轮，超过一圈的任务通过剩余圈数实现，所有格子只由时间轮线程访问，新加入的任务先放入无锁队列，每一格开始时再转移到格子中。
+ * 到期的任务交给单独的到期处理线程领取租约并分发，时间轮线程不访问数据库，数据库变慢时不会拖慢后面的格子。
+ *
+ * @author xiayang
+ **/
+@Slf4j
+@Component
+public class TaskTimingWheel implements InitializingBean, DisposableBean {
+
+    /**
+     * 时间轮线程的名称
+     */
+    private static final String WHEEL_THREAD_NAME = "TaskTimingWheel";
+    /**
+     * 到期处理线程的名称
+     */
+    private static final String EXPIRE_THREAD_NAME = "TaskTimingWheelExpire";
+    /**
+     * 等待到期处理线程处理的最大批次数 超过后丢弃该批任务，由调度器从数据库中重新查询执行
+     */
+    private static final int EXPIRE_QUEUE_SIZE = 1024;
+
+    /**
+     * 一致性框架配置
+     */
+    @Autowired
+    private TendConsistencyConfiguration tendConsistencyConfiguration;
+    /**
+     * 任务调度管理器
+     */
+    @Autowired
+    private TaskScheduleManager taskScheduleManager;
+
+    /**
+     * 时间轮的格子
+     */
+    private List<LinkedList<WheelEntry>> buckets;
+    /**
+     * 格子下标的掩码
+     */
+    private int mask;
+    /**
+     * 每一格的时间跨度 单位纳秒
+     */
+    private long tickNanos;
+    /**
+     * 时间轮启动的时间 单位纳秒
+     */
+    private long startNanos;
+    /**
+     * 时间轮当前走到的格数
+     */
+    private long tick;
+    /**
+     * 等待转移到格子中的任务
+     */
+    private final Queue<WheelEntry> addedEntries = new ConcurrentLinkedQueue<>();
+    /**
+     * 时间轮中的任务 防止同一个任务重复放入 调度器查询时也会跳过这些任务
+     */
+    private final Set<String> pendingTasks = ConcurrentHashMap.newKeySet();
+    /**
+     * 时间轮中的任务数
+     */
+    private final AtomicInteger pendingCount = new AtomicInteger(0);
+    /**
+     * 时间轮线程
+     */
+    private Thread wheelThread;
+    /**
+     * 到期处理线程 领取到期任务的租约并交给分发器
+     */
+    private ThreadPoolExecutor expireExecutor;
+    /**
+     * 时间轮线程是否在运行
+     */
+    private volatile boolean running = false;
+
+    @Override
+    public void afterPropertiesSet() {
+        if (!isEnabled()) {
+            return;
+        }
+        if (tendConsistencyConfiguration.getTimingWheelTickMillis() <= 0 || tendConsistencyConfiguration.getTimingWheelSize() <= 0) {
+            throw new ConsistencyException("时间轮配置错误！注意：tick-millis和wheel-size必须大于0，配置项为：tend.consistency.timing-wheel");
+        }
+        int wheelSize = normalizeWheelSize(tendConsistencyConfiguration.getTimingWheelSize());
+        buckets = new ArrayList<>(wheelSize);
+        for (int i = 0; i < wheelSize; i++) {
+            buckets.add(new LinkedList<>());
+        }
+        mask = wheelSize - 1;
+        tickNanos = TimeUnit.MILLISECONDS.toNanos(tendConsistencyConfiguration.getTimingWheelTickMillis());
+        startNanos = System.nanoTime();
+        expireExecutor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(EXPIRE_QUEUE_SIZE), r -> {
+            Thread thread = new Thread(r, EXPIRE_THREAD_NAME);
+            thread.setDaemon(true);
+            return thread;
+        });
+        running = true;
+        wheelThread = new Thread(this::tickLoop, WHEEL_THREAD_NAME);
+        wheelThread.setDaemon(true);
+        wheelThread.start();
+        log.info("[一致性任务框架] 调度任务时间轮已开启 tickMillis={} wheelSize={} horizonSeconds={}",
+                tendConsistencyConfiguration.getTimingWheelTickMillis(), wheelSize, tendConsistencyConfiguration.getTimingWheelHorizonSeconds());
+    }
+
+    @Override
+    public void destroy() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        wheelThread.interrupt();
+        expireExecutor.shutdownNow();
+    }
+
+    /**
+     * 是否开启了时间轮
+     *
+     * @return 是否开启
+     */
+    public boolean isEnabled() {
+        return tendConsistencyConfiguration.getTimingWheelEnabled();
+    }
+
+    /**
+     * 获取时间轮的时间范围 单位毫秒
+     *
+     * @return 时间范围
+     */
+    public long getHorizonMillis() {
+        return TimeUnit.SECONDS.toMillis(tendConsistencyConfiguration.getTimingWheelHorizonSeconds());
+    }
+
+    /**
+     * 获取时间轮还可以放入的任务数
+     *
+     * @return 剩余容量
+     */
+    public int remainingCapacity() {
+        return Math.max(0, tendConsistencyConfiguration.getTimingWheelMaxPendingTasks() - pendingCount.get());
+    }
+
+    /**
+     * 任务是否已经在时间轮中
+     *
+     * @param taskInstance 任务实例信息
+     * @return 是否在时间轮中
+     */
+    public boolean contains(ConsistencyTaskInstance taskInstance) {
+        String key = getTaskKey(taskInstance);
+        return key != null && pendingTasks.contains(key);
+    }
+
+    /**
+     * 将任务放入时间轮 到达执行时间后执行
+     *
+     * @param taskInstance 任务实例信息
+     * @return 是否放入了时间轮 没有放入的任务由调度器按照原有方式查询执行
+     */
+    public boolean schedule(ConsistencyTaskInstance taskInstance) {
+        // 存储到RocksDB中的任务没有id 由调度器从RocksDB中获取
+        String key = getTaskKey(taskInstance);
+        if (!running || key == null) {
+            return false;
+        }
+        long delayMillis = taskInstance.getExecuteTime() - System.currentTimeMillis();
+        if (delayMillis > getHorizonMillis()) {
+            return false;
+        }
+        if (pendingCount.get() >= tendConsistencyConfiguration.getTimingWheelMaxPendingTasks() || !pendingTasks.add(key)) {
+            return false;
+        }
+        pendingCount.incrementAndGet();
+        long deadlineNanos = System.nanoTime() - startNanos + TimeUnit.MILLISECONDS.toNanos(Math.max(0, delayMillis));
+        addedEntries.offer(new WheelEntry(key, taskInstance, deadlineNanos));
+        return true;
+    }
+
+    /**
+     * 时间轮线程的主循环
+     */
+    private void tickLoop() {
+        while (running) {
+            try {
+                waitForNextTick();
+                transferAddedEntries();
+                expireBucket(buckets.get((int) (tick & mask)));
+                tick++;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                log.error("[一致性任务框架] 时间轮执行到期任务时，发生异常", e);
+            }
+        }
+    }
+
+    /**
+     * 等待到当前格子的结束时间
+     */
+    private void waitForNextTick() throws InterruptedException {
+        long deadline = tickNanos * (tick + 1);
+        long sleepNanos = deadline - (System.nanoTime() - startNanos);
+        if (sleepNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(sleepNanos);
+        }
+    }
+
+    /**
+     * 将新加入的任务转移到对应的格子中
+     */
+    private void transferAddedEntries() {
+        WheelEntry entry;
+        while ((entry = addedEntries.poll()) != null) {
+            // 向上取整 保证任务不会早于执行时间被执行
+            long targetTick = Math.max(tick, (entry.deadlineNanos + tickNanos - 1) / tickNanos - 1);
+            entry.remainingRounds = (targetTick - tick) / buckets.size();
+            buckets.get((int) (targetTick & mask)).add(entry);
+        }
+    }
+
+    /**
+     * 执行格子中到期的任务 未到期的任务剩余圈数减一
+     *
+     * @param bucket 格子
+     */
+    private void expireBucket(LinkedList<WheelEntry> bucket) {
+        List<ConsistencyTaskInstance> dueTasks = null;
+        Iterator<WheelEntry> iterator = bucket.iterator();
+        while (iterator.hasNext()) {
+            WheelEntry entry = iterator.next();
+            if (entry.remainingRounds > 0) {
+                entry.remainingRounds--;
+                continue;
+            }
+            iterator.remove();
+            pendingTasks.remove(entry.key);
+            pendingCount.decrementAndGet();
+            if (dueTasks == null) {
+                dueTasks = new ArrayList<>();
+            }
+            dueTasks.add(entry.taskInstance);
+        }
+        if (dueTasks != null) {
+            List<ConsistencyTaskInstance> expiredTasks = dueTasks;
+            try {
+                expireExecutor.execute(() -> performanceDueTasks(expiredTasks));
+            } catch (RejectedExecutionException e) {
+                // 任务仍在数据库中 由调度器下一次查询时执行
+                log.warn("[一致性任务框架] 时间轮到期处理线程积压，本批到期任务交由调度器执行 任务数为 {}", expiredTasks.size());
+            }
+        }
+    }
+
+    /**
+     * 在到期处理线程中领取到期任务的租约并分发
+     *
+     * @param dueTasks 到期的任务
+     */
+    private void performanceDueTasks(List<ConsistencyTaskInstance> dueTasks) {
+        try {
+            taskScheduleManager.performanceDueTasks(dueTasks);
+        } catch (Exception e) {
+            log.error("[一致性任务框架] 执行时间轮中到期的任务时，发生异常 任务数为 {}", dueTasks.size(), e);
+        }
+    }
+
+    private int normalizeWheelSize(int wheelSize) {
+        int normalized = 1;
+        while (normalized < wheelSize) {
+            normalized <<= 1;
+        }
+        return normalized;
+    }
+
+    /**
+     * 获取任务的去重key
+     *
+     * @param taskInstance 任务实例信息
+     * @return 去重key
+     */
+    private String getTaskKey(ConsistencyTaskInstance taskInstance) {
+        if (taskInstance.getId() == null) {
+            return null;
+        }
+        return taskInstance.getId() + ":" + taskInstance.getShardKey();
+    }
+
+    /**
+     * 时间轮中的任务
+     */
+    private static class WheelEntry {
+
+        private final String key;
+
+        private final ConsistencyTaskInstance taskInstance;
+
+        /**
+         * 相对于时间轮启动时间的执行时间 单位纳秒
+         */
+        private final long deadlineNanos;
+
+        /**
+         * 剩余的圈数
+         */
+        private long remainingRounds;
+
+        WheelEntry(String key, ConsistencyTaskInstance taskInstance, long deadlineNanos) {
+            this.key = key;
+            this.taskInstance = taskInstance;
+            this.deadlineNanos = deadlineNanos;
+        }
+    }
+
+}
@@ -0,0 +1,63 @@
+package com.consistency.mapper;
+
+import com.consistency.model.ConsistencyTaskPayload;
+import org.apache.ibatis.annotations.*;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+/**
+ * 一致性任务参数溢出表的数据存储接口
+ *
+ * @author xiayang
+ **/
+@Mapper
+@Repository
+public interface TaskPayloadMapper {
+
+    /**
+     * 保存任务参数
+     *
+     * @param taskPayload 任务参数溢出表的记录
+     * @return 存储结果
+     */
+    @Insert("INSERT INTO tend_consistency_task_payload(shard_key,payload,gmt_create) "
+            + "VALUES(#{shardKey},#{payload},#{gmtCreate})")
+    @Options(keyColumn = "id", keyProperty = "id", useGeneratedKeys = true)
+    Long insertPayload(ConsistencyTaskPayload taskPayload);
+
+    /**
+     * 获取任务参数
+     *
+     * @param id       溢出表记录的id
+     * @param shardKey 任务分片键
+     * @return 任务参数
+     */
+    @Select("SELECT payload FROM tend_consistency_task_payload WHERE id=#{id} AND shard_key=#{shardKey}")
+    String getPayload(@Param("id") Long id, @Param("shardKey") Long shardKey);
+
+    /**
+     * 删除任务参数
+     *
+     * @param id       溢出表记录的id
+     * @param shardKey 任务分片键
+     * @return 删除结果
+     */
+    @Delete("DELETE FROM tend_consistency_task_payload WHERE id=#{id} AND shard_key=#{shardKey}")
+    int deletePayload(@Param("id") Long id, @Param("shardKey") Long shardKey);
+
+    /**
+     * 批量删除任务参数 按照(id, shard_key)逐条匹配 分库模式下shardingsphere会根据每个条件中的shard_key路由到对应的库
+     *
+     * @param taskPayloads 任务参数溢出表的记录 只需要id和shardKey
+     * @return 删除结果
+     */
+    @Delete("<script>"
+            + "DELETE FROM tend_consistency_task_payload WHERE "
+            + "<foreach collection='list' item='item' separator=' OR '>"
+            + "(id=#{item.id} and shard_key=#{item.shardKey})"
+            + "</foreach>"
+            + "</script>")
+    int batchDeletePayload(@Param("list") List<ConsistencyTaskPayload> taskPayloads);
+
+}
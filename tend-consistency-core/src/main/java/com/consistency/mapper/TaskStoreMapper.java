@@ -32,6 +32,8 @@ public interface TaskStoreMapper {
                 + "execute_interval_sec,"
                 + "delay_time,"
                 + "task_parameter,"
+                + "parameter_codec,"
+                + "idempotent_key,"
                 + "performance_way,"
                 + "thread_way,"
                 + "error_msg,"
@@ -40,6 +42,7 @@ public interface TaskStoreMapper {
                 + "fallback_class_name,"
                 + "fallback_error_msg,"
                 + "shard_key,"
+                + "priority,"
                 + "gmt_create,"
                 + "gmt_modified"
             + ") VALUES("
@@ -53,6 +56,8 @@ public interface TaskStoreMapper {
                 + "#{executeIntervalSec},"
                 + "#{delayTime},"
                 + "#{taskParameter},"
+                + "#{parameterCodec},"
+                + "#{idempotentKey},"
                 + "#{performanceWay},"
                 + "#{threadWay},"
                 + "#{errorMsg},"
@@ -61,12 +66,76 @@ public interface TaskStoreMapper {
                 + "#{fallbackClassName},"
                 + "#{fallbackErrorMsg},"
                 + "#{shardKey},"
+                + "#{priority},"
                 + "#{gmtCreate},"
                 + "#{gmtModified}"
             + ")")
     @Options(keyColumn = "id", keyProperty = "id", useGeneratedKeys = true)
     Long initTask(ConsistencyTaskInstance consistencyTaskInstance);
 
+    /**
+     * 批量保存最终一致性任务实例 一条多行INSERT语句写入
+     *
+     * @param taskInstances 要存储的最终一致性任务的实例信息列表
+     * @return 存储结果
+     */
+    @Insert("<script>"
+            + "INSERT INTO tend_consistency_task("
+                + "task_id,"
+                + "task_status,"
+                + "execute_times,"
+                + "execute_time,"
+                + "parameter_types,"
+                + "method_name,"
+                + "method_sign_name,"
+                + "execute_interval_sec,"
+                + "delay_time,"
+                + "task_parameter,"
+                + "parameter_codec,"
+                + "idempotent_key,"
+                + "performance_way,"
+                + "thread_way,"
+                + "error_msg,"
+                + "alert_expression,"
+                + "alert_action_bean_name,"
+                + "fallback_class_name,"
+                + "fallback_error_msg,"
+                + "shard_key,"
+                + "priority,"
+                + "gmt_create,"
+                + "gmt_modified"
+            + ") VALUES "
+            + "<foreach collection='list' item='item' separator=','>"
+            + "("
+                + "#{item.taskId},"
+                + "#{item.taskStatus},"
+                + "#{item.executeTimes},"
+                + "#{item.executeTime},"
+                + "#{item.parameterTypes},"
+                + "#{item.methodName},"
+                + "#{item.methodSignName},"
+                + "#{item.executeIntervalSec},"
+                + "#{item.delayTime},"
+                + "#{item.taskParameter},"
+                + "#{item.parameterCodec},"
+                + "#{item.idempotentKey},"
+                + "#{item.performanceWay},"
+                + "#{item.threadWay},"
+                + "#{item.errorMsg},"
+                + "#{item.alertExpression},"
+                + "#{item.alertActionBeanName},"
+                + "#{item.fallbackClassName},"
+                + "#{item.fallbackErrorMsg},"
+                + "#{item.shardKey},"
+                + "#{item.priority},"
+                + "#{item.gmtCreate},"
+                + "#{item.gmtModified}"
+            + ")"
+            + "</foreach>"
+            + "</script>")
+    @Options(keyColumn = "id", keyProperty = "id", useGeneratedKeys = true)
+    int batchInitTask(@Param("list") List<ConsistencyTaskInstance> taskInstances);
+
     /**
      * 根据id获取任务实例信息
      *
@@ -76,9 +145,9 @@ public interface TaskStoreMapper {
      */
     @Select("SELECT " +
             "id,task_id,task_status,execute_times,execute_time,parameter_types,method_name,method_sign_name, " +
-            "execute_interval_sec,delay_time,task_parameter,performance_way," +
+            "execute_interval_sec,delay_time,task_parameter,parameter_codec,idempotent_key,performance_way," +
             "thread_way, error_msg, alert_expression, " +
-            "alert_action_bean_name, fallback_class_name, fallback_error_msg,shard_key," +
+            "alert_action_bean_name, fallback_class_name, fallback_error_msg,shard_key,priority," +
             "gmt_create, gmt_modified " +
             "FROM tend_consistency_task " +
             "where " +
@@ -96,6 +165,8 @@ public interface TaskStoreMapper {
             @Result(column = "delay_time", property = "delayTime"),
             @Result(column = "bean_class_name", property = "beanClassName"),
             @Result(column = "task_parameter", property = "taskParameter"),
+            @Result(column = "parameter_codec", property = "parameterCodec"),
+            @Result(column = "idempotent_key", property = "idempotentKey"),
             @Result(column = "performance_way", property = "performanceWay"),
             @Result(column = "thread_way", property = "threadWay"),
             @Result(column = "error_msg", property = "errorMsg"),
@@ -104,32 +175,34 @@ public interface TaskStoreMapper {
             @Result(column = "fallback_class_name", property = "fallbackClassName"),
             @Result(column = "fallback_error_msg", property = "fallbackErrorMsg"),
             @Result(column = "shard_key", property = "shardKey"),
+            @Result(column = "priority", property = "priority"),
             @Result(column = "gmt_create", property = "gmtCreate"),
             @Result(column = "gmt_modified", property = "gmtModified")
     })
     ConsistencyTaskInstance getTaskByIdAndShardKey(@Param("id") Long id, @Param("shardKey") Long shardKey);
 
     /**
-     * 获取未完成的任务
+     * 获取指定优先级的未完成任务 每个优先级按照权重分配查询的条数 任务积压时低优先级的任务不会挤占高优先级的任务，也不会一直查询不到
      *
      * @param startTime      开始时间
      * @param endTime        结束时间
+     * @param priority       任务的优先级
      * @param limitTaskCount 每次查询限制的条数
      * @return 获取未完成的任务
      */
     @Select("SELECT " +
             "id,task_id,task_status,execute_times,execute_time,parameter_types,method_name,method_sign_name, " +
-            "execute_interval_sec,delay_time,task_parameter,performance_way," +
+            "execute_interval_sec,delay_time,task_parameter,parameter_codec,idempotent_key,performance_way," +
             "thread_way, error_msg, alert_expression, " +
-            "alert_action_bean_name, fallback_class_name, fallback_error_msg,shard_key," +
+            "alert_action_bean_name, fallback_class_name, fallback_error_msg,shard_key,priority," +
             "gmt_create, gmt_modified " +
             "FROM tend_consistency_task " +
             "WHERE " +
             "task_status <= 2 " +
-            "AND execute_time>=#{startTime} AND execute_time<=#{endTime} " +
+            "AND execute_time>=#{startTime} AND execute_time<=#{endTime} AND priority=#{priority} " +
             "order by execute_time desc " +
             "LIMIT #{limitTaskCount}")
-    @Results({
+    @Results(id = "unFinishTaskResultMap", value = {
             @Result(column = "id", property = "id", id = true),
             @Result(column = "task_id", property = "taskId"),
             @Result(column = "task_status", property = "taskStatus"),
@@ -141,6 +214,8 @@ public interface TaskStoreMapper {
             @Result(column = "execute_interval_sec", property = "executeIntervalSec"),
             @Result(column = "delay_time", property = "delayTime"),
             @Result(column = "task_parameter", property = "taskParameter"),
+            @Result(column = "parameter_codec", property = "parameterCodec"),
+            @Result(column = "idempotent_key", property = "idempotentKey"),
             @Result(column = "performance_way", property = "performanceWay"),
             @Result(column = "thread_way", property = "threadWay"),
             @Result(column = "error_msg", property = "errorMsg"),
@@ -149,15 +224,41 @@ public interface TaskStoreMapper {
             @Result(column = "fallback_class_name", property = "fallbackClassName"),
             @Result(column = "fallback_error_msg", property = "fallbackErrorMsg"),
             @Result(column = "shard_key", property = "shardKey"),
+            @Result(column = "priority", property = "priority"),
             @Result(column = "gmt_create", property = "gmtCreate"),
             @Result(column = "gmt_modified", property = "gmtModified")
     })
-    List<ConsistencyTaskInstance> listByUnFinishTask(@Param("startTime") Long startTime, @Param("endTime") Long endTime, @Param("limitTaskCount") Long limitTaskCount);
+    List<ConsistencyTaskInstance> listByUnFinishTask(@Param("startTime") Long startTime, @Param("endTime") Long endTime,
+                                                     @Param("priority") Integer priority, @Param("limitTaskCount") Long limitTaskCount);
+
+    /**
+     * 获取即将到期的未完成任务 按照执行时间升序
+     *
+     * @param startTime      开始时间 不包含
+     * @param endTime        结束时间
+     * @param limitTaskCount 每次查询限制的条数
+     * @return 即将到期的未完成任务
+     */
+    @Select("SELECT " +
+            "id,task_id,task_status,execute_times,execute_time,parameter_types,method_name,method_sign_name, " +
+            "execute_interval_sec,delay_time,task_parameter,parameter_codec,idempotent_key,performance_way," +
+            "thread_way, error_msg, alert_expression, " +
+            "alert_action_bean_name, fallback_class_name, fallback_error_msg,shard_key,priority," +
+            "gmt_create, gmt_modified " +
+            "FROM tend_consistency_task " +
+            "WHERE " +
+            "task_status <= 2 " +
+            "AND execute_time>#{startTime} AND execute_time<=#{endTime} " +
+            "order by execute_time asc " +
+            "LIMIT #{limitTaskCount}")
+    @ResultMap("unFinishTaskResultMap")
+    List<ConsistencyTaskInstance> listNearFutureTask(@Param("startTime") Long startTime, @Param("endTime") Long endTime, @Param("limitTaskCount") Long limitTaskCount);
 
     /**
      * 启动任务
      *  本次优化去掉了 and task_status!=1 的查询条件 之前是为了防止，多线程情况下，任务被抢占重复执行。
      *  本次优化加入了任务分片执行，同一时间，可以保证，只有一个实例，在运行该一致性任务。
+     *  启动时同时领取任务的租约 租约还没有到期时说明任务正在被执行 启动失败
      * @param consistencyTaskInstance 任务实例信息
      * @return 启动任务的结果
      */
@@ -166,29 +267,155 @@ public interface TaskStoreMapper {
             + "SET "
             + "task_status=#{taskStatus},"
             + "execute_times=execute_times+1,"
-            + "execute_time=#{executeTime} "
-            + "WHERE id=#{id} and shard_key=#{shardKey}"
+            + "execute_time=#{executeTime},"
+            + "lease_owner=#{leaseOwner},"
+            + "lease_until=#{leaseUntil} "
+            + "WHERE id=#{id} and shard_key=#{shardKey} "
+            + "and (lease_until is null or lease_until<#{executeTime})"
     )
     int turnOnTask(ConsistencyTaskInstance consistencyTaskInstance);
 
     /**
-     * 标记任务成功
+     * 批量领取任务的租约并启动任务 租约还没有到期的任务不会被领取
+     * 只领取仍然未完成并且已经到期的任务 内存中过期的任务实例(如时间轮中的任务)不会领取到已经被推迟或者重新安排了执行时间的任务
+     *
+     * @param taskInstances 任务实例信息列表
+     * @param leaseOwner    本次领取的租约持有者
+     * @param now           当前时间
+     * @param leaseUntil    租约的到期时间
+     * @return 领取到的任务数
+     */
+    @Update("<script>"
+            + "UPDATE tend_consistency_task SET "
+            + "task_status=1,"
+            + "execute_times=execute_times+1,"
+            + "execute_time=#{now},"
+            + "lease_owner=#{leaseOwner},"
+            + "lease_until=#{leaseUntil} "
+            + "WHERE task_status&lt;=2 AND execute_time&lt;=#{now} AND (lease_until is null or lease_until&lt;#{now}) AND ("
+            + "<foreach collection='list' item='item' separator=' OR '>"
+            + "(id=#{item.id} and shard_key=#{item.shardKey})"
+            + "</foreach>"
+            + ")"
+            + "</script>")
+    int claimTasks(@Param("list") List<ConsistencyTaskInstance> taskInstances, @Param("leaseOwner") String leaseOwner,
+                   @Param("now") Long now, @Param("leaseUntil") Long leaseUntil);
+
+    /**
+     * 获取本次领取到租约的任务 只在没有全部领取成功时查询
+     *
+     * @param taskInstances 任务实例信息列表
+     * @param leaseOwner    本次领取的租约持有者
+     * @return 领取到租约的任务 只包含id和shard_key
+     */
+    @Select("<script>"
+            + "SELECT id, shard_key AS shardKey FROM tend_consistency_task "
+            + "WHERE lease_owner=#{leaseOwner} AND ("
+            + "<foreach collection='list' item='item' separator=' OR '>"
+            + "(id=#{item.id} and shard_key=#{item.shardKey})"
+            + "</foreach>"
+            + ")"
+            + "</script>")
+    List<ConsistencyTaskInstance> listLeasedTasks(@Param("list") List<ConsistencyTaskInstance> taskInstances, @Param("leaseOwner") String leaseOwner);
+
+    /**
+     * 释放领取后没有放入待执行队列的任务的租约 只释放自己持有的租约
+     *
+     * @param taskInstances 任务实例信息列表
+     * @return 释放结果
+     */
+    @Update("<script>"
+            + "UPDATE tend_consistency_task SET lease_owner=NULL, lease_until=NULL WHERE "
+            + "<foreach collection='list' item='item' separator=' OR '>"
+            + "(id=#{item.id} and shard_key=#{item.shardKey} and lease_owner=#{item.leaseOwner})"
+            + "</foreach>"
+            + "</script>")
+    int releaseLease(@Param("list") List<ConsistencyTaskInstance> taskInstances);
+
+    /**
+     * 批量推迟任务的执行时间 不修改任务的状态和执行次数 租约被其他节点持有的任务不会被推迟
+     *
+     * @param taskInstances 任务实例信息列表
+     * @param now           当前时间
+     * @param executeTime   推迟后的执行时间
+     * @return 推迟的任务数
+     */
+    @Update("<script>"
+            + "UPDATE tend_consistency_task SET execute_time=#{executeTime}, lease_owner=NULL, lease_until=NULL WHERE "
+            + "<foreach collection='list' item='item' separator=' OR '>"
+            + "(id=#{item.id} and shard_key=#{item.shardKey} and "
+            + "(lease_until is null or lease_until&lt;#{now} or lease_owner=#{item.leaseOwner}))"
+            + "</foreach>"
+            + "</script>")
+    int deferTasks(@Param("list") List<ConsistencyTaskInstance> taskInstances, @Param("now") long now,
+                   @Param("executeTime") long executeTime);
+
+    /**
+     * 标记任务成功 租约已经被其他节点领取的任务不会被删除
      *
      * @param taskInstance 一致性任务实例信息
      * @return 标记结果
      */
-    @Delete("DELETE FROM tend_consistency_task WHERE id=#{id} and shard_key=#{shardKey}")
+    @Delete("DELETE FROM tend_consistency_task WHERE id=#{id} and shard_key=#{shardKey} "
+            + "and (lease_owner is null or lease_owner=#{leaseOwner})")
     int markSuccess(ConsistencyTaskInstance taskInstance);
 
     /**
-     * 标记任务为失败
+     * 标记任务为失败 租约已经被其他节点领取的任务不会被修改 避免清除其他节点的租约
      *
      * @param taskInstance 一致性任务实例信息
      * @return 标记结果
      */
-    @Update("UPDATE tend_consistency_task SET task_status=2, error_msg=#{errorMsg}, execute_time=#{executeTime} WHERE id=#{id} and shard_key=#{shardKey}")
+    @Update("UPDATE tend_consistency_task SET task_status=#{taskStatus}, error_msg=#{errorMsg}, execute_time=#{executeTime}, "
+            + "lease_owner=NULL, lease_until=NULL WHERE id=#{id} and shard_key=#{shardKey} "
+            + "and (lease_owner is null or lease_owner=#{leaseOwner})")
     int markFail(ConsistencyTaskInstance taskInstance);
 
+    /**
+     * 批量标记任务成功 按照(id, shard_key)逐条匹配 分库模式下shardingsphere会根据每个条件中的shard_key路由到对应的库
+     * 租约已经被其他节点领取的任务不会被删除
+     *
+     * @param taskInstances 一致性任务实例信息列表
+     * @return 标记结果
+     */
+    @Delete("<script>"
+            + "DELETE FROM tend_consistency_task WHERE "
+            + "<foreach collection='list' item='item' separator=' OR '>"
+            + "(id=#{item.id} and shard_key=#{item.shardKey} and (lease_owner is null or lease_owner=#{item.leaseOwner}))"
+            + "</foreach>"
+            + "</script>")
+    int batchMarkSuccess(@Param("list") List<ConsistencyTaskInstance> taskInstances);
+
+    /**
+     * 批量标记任务为失败 每个任务的状态、错误信息和下次执行时间不同 用CASE WHEN逐条设置 租约已经被其他节点领取的任务不会被修改
+     *
+     * @param taskInstances 一致性任务实例信息列表
+     * @return 标记结果
+     */
+    @Update("<script>"
+            + "UPDATE tend_consistency_task SET lease_owner=NULL, lease_until=NULL, "
+            + "task_status=CASE "
+            + "<foreach collection='list' item='item'>"
+            + "WHEN id=#{item.id} and shard_key=#{item.shardKey} THEN #{item.taskStatus} "
+            + "</foreach>"
+            + "END, "
+            + "error_msg=CASE "
+            + "<foreach collection='list' item='item'>"
+            + "WHEN id=#{item.id} and shard_key=#{item.shardKey} THEN #{item.errorMsg} "
+            + "</foreach>"
+            + "END, "
+            + "execute_time=CASE "
+            + "<foreach collection='list' item='item'>"
+            + "WHEN id=#{item.id} and shard_key=#{item.shardKey} THEN #{item.executeTime} "
+            + "</foreach>"
+            + "END "
+            + "WHERE "
+            + "<foreach collection='list' item='item' separator=' OR '>"
+            + "(id=#{item.id} and shard_key=#{item.shardKey} and (lease_owner is null or lease_owner=#{item.leaseOwner}))"
+            + "</foreach>"
+            + "</script>")
+    int batchMarkFail(@Param("list") List<ConsistencyTaskInstance> taskInstances);
+
     /**
      * 标记为降级失败
      *
@@ -36,9 +36,17 @@ public class ConsistencyTaskInstance {
      */
     private String parameterTypes;
     /**
-     * 参数 JSON值
+     * 参数 由parameterCodec对应的编解码器编码后的值
      */
     private String taskParameter;
+    /**
+     * 任务参数的编解码器id 为空时表示json
+     */
+    private String parameterCodec;
+    /**
+     * 幂等键 格式：taskId:幂等键表达式的值 没有配置幂等键时为null
+     */
+    private String idempotentKey;
     /**
      * 任务状态 TaskStatusEnum
      */
@@ -91,6 +99,18 @@ public class ConsistencyTaskInstance {
      * 分片键
      */
     private Long shardKey;
+    /**
+     * 持有任务租约的节点 每次领取租约时生成
+     */
+    private String leaseOwner;
+    /**
+     * 任务租约的到期时间 租约有效期内其他节点不能再领取该任务
+     */
+    private Long leaseUntil;
+    /**
+     * 任务的优先级 TaskPriorityEnum 数值越大优先级越高
+     */
+    private int priority;
 
     private Date gmtCreate;
 
@@ -0,0 +1,35 @@
+package com.consistency.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Date;
+
+/**
+ * 一致性任务参数溢出表的记录 超过阈值的任务参数存储在溢出表中，任务表中只保存对该记录的引用
+ *
+ * @author xiayang
+ **/
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class ConsistencyTaskPayload {
+
+    private Long id;
+    /**
+     * 任务分片键 与所属任务的分片键相同
+     */
+    private Long shardKey;
+    /**
+     * 任务参数
+     */
+    private String payload;
+    /**
+     * 创建时间
+     */
+    private Date gmtCreate;
+
+}
@@ -0,0 +1,26 @@
+package com.consistency.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 编程式提交任务的结果
+ *
+ * @author xiayang
+ **/
+@Getter
+@AllArgsConstructor
+public class TaskSubmission {
+
+    /**
+     * 任务持久化完成(写入数据库 或者数据库不可用时写入RocksDB)后完成
+     */
+    private final CompletableFuture<ConsistencyTaskInstance> stored;
+    /**
+     * 任务执行成功(或者降级逻辑执行成功)后完成 执行失败等待下次重试时不会完成
+     */
+    private final CompletableFuture<ConsistencyTaskInstance> executed;
+
+}
@@ -0,0 +1,144 @@
+package com.consistency.model;
+
+import com.consistency.enums.ConsistencyTaskStatusEnum;
+import com.consistency.enums.TransactionModeEnum;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import org.springframework.expression.Expression;
+
+import java.lang.reflect.Method;
+import java.util.Date;
+
+/**
+ * 一致性任务的模板
+ * 启动时根据@ConsistencyTask注解以及方法信息预先计算好，每次调用只需要填充本次调用相关的字段即可
+ *
+ * @author xiayang
+ **/
+@Getter
+@Builder
+@AllArgsConstructor
+public class TaskTemplate {
+
+    /**
+     * 被注解的方法
+     */
+    private final Method method;
+    /**
+     * 方法所在的目标类
+     */
+    private final Class<?> targetClass;
+    /**
+     * 用户在主接中自定义的task名称/action名称 如果没有则使用方法签名
+     */
+    private final String taskId;
+    /**
+     * 方法签名：格式：类路径#方法名(参数1的类型,参数2的类型,...参数N的类型)
+     */
+    private final String methodSignName;
+    /**
+     * 方法名
+     */
+    private final String methodName;
+    /**
+     * 参数的类路径名称 多个用逗号分隔
+     */
+    private final String parameterTypes;
+    /**
+     * 执行模式
+     */
+    private final Integer performanceWay;
+    /**
+     * 线程模型
+     */
+    private final Integer threadWay;
+    /**
+     * 执行间隔
+     */
+    private final int executeIntervalSec;
+    /**
+     * 初始化延迟时间
+     */
+    private final int delayTime;
+    /**
+     * 初始化延迟时间 单位毫秒 立即执行的任务为0
+     */
+    private final long delayTimeMillis;
+    /**
+     * 告警表达式
+     */
+    private final String alertExpression;
+    /**
+     * 告警的动作执行实现类的beanName
+     */
+    private final String alertActionBeanName;
+    /**
+     * 降级类的class
+     */
+    private final String fallbackClassName;
+    /**
+     * 预先解析好的幂等键表达式 没有配置时为null
+     */
+    private final Expression idempotentKeyExpression;
+    /**
+     * 任务所属的隔离舱名称 没有指定时为空字符串
+     */
+    private final String bulkhead;
+    /**
+     * 任务方法的执行超时时间 单位毫秒 没有指定时为0
+     */
+    private final long timeoutMs;
+    /**
+     * 任务执行失败后的重试策略id 没有指定时为空字符串
+     */
+    private final String retryPolicy;
+    /**
+     * 任务最多执行的次数 没有指定时为0
+     */
+    private final int maxAttempts;
+    /**
+     * 任务每秒最多执行的次数 没有指定时为0
+     */
+    private final double rateLimit;
+    /**
+     * 任务的优先级
+     */
+    private final Integer priority;
+    /**
+     * 执行任务时的事务模式
+     */
+    private final TransactionModeEnum transactionMode;
+
+    /**
+     * 根据模板创建任务实例 只填充模板中的固定字段 参数、执行时间、分片键由调用方填充
+     *
+     * @param now 当前时间
+     * @return 一致性任务实例
+     */
+    public ConsistencyTaskInstance newTaskInstance(long now) {
+        Date date = new Date(now);
+        ConsistencyTaskInstance instance = new ConsistencyTaskInstance();
+        instance.setTaskId(taskId);
+        instance.setMethodName(methodName);
+        instance.setParameterTypes(parameterTypes);
+        instance.setMethodSignName(methodSignName);
+        instance.setPerformanceWay(performanceWay);
+        instance.setThreadWay(threadWay);
+        instance.setPriority(priority);
+        instance.setExecuteIntervalSec(executeIntervalSec);
+        instance.setDelayTime(delayTime);
+        instance.setExecuteTimes(0);
+        instance.setTaskStatus(ConsistencyTaskStatusEnum.INIT.getCode());
+        instance.setErrorMsg("");
+        instance.setAlertExpression(alertExpression);
+        instance.setAlertActionBeanName(alertActionBeanName);
+        instance.setFallbackClassName(fallbackClassName);
+        instance.setFallbackErrorMsg("");
+        instance.setExecuteTime(now + delayTimeMillis);
+        instance.setGmtCreate(date);
+        instance.setGmtModified(date);
+        return instance;
+    }
+
+}
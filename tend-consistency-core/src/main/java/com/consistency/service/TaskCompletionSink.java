@@ -0,0 +1,268 @@
+package com.consistency.service;
+
+import com.consistency.config.TendConsistencyConfiguration;
+import com.consistency.manager.TaskParameterCodecManager;
+import com.consistency.mapper.TaskStoreMapper;
+import com.consistency.model.ConsistencyTaskInstance;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 任务执行结果的批量写入器
+ * 执行成功的任务(DELETE)和执行失败的任务(UPDATE)先放入缓冲队列，由刷写线程收集几毫秒或者凑满N条后，各用一条语句写入任务表。
+ * 调用方不等待写入完成，还没有写入的任务会被记录下来，调度器再次查询到这些任务时会跳过，避免重复执行。
+ *
+ * @author xiayang
+ **/
+@Slf4j
+@Component
+public class TaskCompletionSink implements InitializingBean, DisposableBean {
+
+    /**
+     * 刷写线程的名称
+     */
+    private static final String FLUSH_THREAD_NAME = "TaskCompletionSink";
+    /**
+     * 刷写线程从队列中获取任务的超时时间 单位毫秒
+     */
+    private static final long POLL_TIMEOUT_MILLIS = 100L;
+
+    /**
+     * 任务存储的mapper组件
+     */
+    @Autowired
+    private TaskStoreMapper taskStoreMapper;
+    /**
+     * 一致性框架配置
+     */
+    @Autowired
+    private TendConsistencyConfiguration tendConsistencyConfiguration;
+    /**
+     * 任务参数编解码管理器
+     */
+    @Autowired
+    private TaskParameterCodecManager taskParameterCodecManager;
+
+    /**
+     * 等待写入的执行结果队列
+     */
+    private final BlockingQueue<Completion> pendingQueue = new LinkedBlockingQueue<>();
+    /**
+     * 已经放入队列但还没有写入任务表的任务
+     */
+    private final Set<String> pendingKeys = ConcurrentHashMap.newKeySet();
+    /**
+     * 刷写线程
+     */
+    private Thread flushThread;
+    /**
+     * 刷写线程是否在运行
+     */
+    private volatile boolean running = false;
+
+    @Override
+    public void afterPropertiesSet() {
+        if (!tendConsistencyConfiguration.getCompletionBatchEnabled()) {
+            return;
+        }
+        running = true;
+        flushThread = new Thread(this::flushLoop, FLUSH_THREAD_NAME);
+        flushThread.setDaemon(true);
+        flushThread.start();
+        log.info("[一致性任务框架] 任务执行结果批量写入已开启 maxBatchSize={} maxWaitMillis={}",
+                tendConsistencyConfiguration.getCompletionBatchMaxBatchSize(), tendConsistencyConfiguration.getCompletionBatchMaxWaitMillis());
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        if (!running) {
+            return;
+        }
+        running = false;
+        flushThread.join(TimeUnit.SECONDS.toMillis(5));
+        // 刷写线程退出后还没来得及写入的结果 直接写入
+        List<Completion> leftCompletions = new ArrayList<>();
+        pendingQueue.drainTo(leftCompletions);
+        if (!leftCompletions.isEmpty()) {
+            flush(leftCompletions);
+        }
+    }
+
+    /**
+     * 是否开启了批量写入
+     *
+     * @return 是否开启
+     */
+    public boolean isEnabled() {
+        return running;
+    }
+
+    /**
+     * 记录任务执行成功 批量写入时删除任务
+     *
+     * @param taskInstance 任务实例信息
+     */
+    public void markSuccess(ConsistencyTaskInstance taskInstance) {
+        offer(new Completion(taskInstance, true));
+    }
+
+    /**
+     * 记录任务执行失败 批量写入时更新任务的错误信息和下次执行时间
+     *
+     * @param taskInstance 任务实例信息
+     */
+    public void markFail(ConsistencyTaskInstance taskInstance) {
+        offer(new Completion(taskInstance, false));
+    }
+
+    /**
+     * 任务的执行结果是否还没有写入任务表
+     *
+     * @param taskInstance 任务实例信息
+     * @return 是否还没有写入
+     */
+    public boolean isPending(ConsistencyTaskInstance taskInstance) {
+        return !pendingKeys.isEmpty() && taskInstance.getId() != null && pendingKeys.contains(getKey(taskInstance));
+    }
+
+    private void offer(Completion completion) {
+        pendingKeys.add(getKey(completion.taskInstance));
+        pendingQueue.offer(completion);
+    }
+
+    /**
+     * 刷写线程的主循环 收集maxWaitMillis毫秒内或者maxBatchSize条结果后进行一次批量写入
+     */
+    private void flushLoop() {
+        int maxBatchSize = tendConsistencyConfiguration.getCompletionBatchMaxBatchSize();
+        long maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(tendConsistencyConfiguration.getCompletionBatchMaxWaitMillis());
+        List<Completion> batch = new ArrayList<>(maxBatchSize);
+        while (running || !pendingQueue.isEmpty()) {
+            try {
+                Completion first = pendingQueue.poll(POLL_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + maxWaitNanos;
+                while (batch.size() < maxBatchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    Completion next = remaining > 0 ? pendingQueue.poll(remaining, TimeUnit.NANOSECONDS) : pendingQueue.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                flush(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                flush(batch);
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * 将一批执行结果写入任务表 执行成功的任务用一条DELETE 执行失败的任务用一条UPDATE
+     *
+     * @param batch 一批等待写入的执行结果
+     */
+    private void flush(List<Completion> batch) {
+        List<ConsistencyTaskInstance> successTasks = new ArrayList<>();
+        List<ConsistencyTaskInstance> failTasks = new ArrayList<>();
+        for (Completion completion : batch) {
+            (completion.success ? successTasks : failTasks).add(completion.taskInstance);
+        }
+        try {
+            if (!successTasks.isEmpty()) {
+                flushSuccess(successTasks);
+            }
+            if (!failTasks.isEmpty()) {
+                flushFail(failTasks);
+            }
+        } finally {
+            batch.forEach(completion -> pendingKeys.remove(getKey(completion.taskInstance)));
+        }
+    }
+
+    private void flushSuccess(List<ConsistencyTaskInstance> taskInstances) {
+        List<ConsistencyTaskInstance> removedTasks = taskInstances;
+        try {
+            int count = taskStoreMapper.batchMarkSuccess(taskInstances);
+            log.info("[一致性任务框架] 批量标记为执行成功 任务数为 [{}] 删除的任务数为 [{}]", taskInstances.size(), count);
+            if (count < taskInstances.size()) {
+                // 部分任务的租约已经被其他节点领取 无法区分哪些任务被删除 溢出表中的参数保留 不影响其他节点执行
+                removedTasks = Collections.emptyList();
+            }
+        } catch (Exception e) {
+            // 批量写入失败时逐条写入 仍然失败的任务等待下一次调度重新执行 由业务服务的幂等保障机制来处理
+            log.error("[一致性任务框架] 批量标记为执行成功时，发生异常，改为逐条写入 任务数为 {}", taskInstances.size(), e);
+            removedTasks = new ArrayList<>(taskInstances.size());
+            for (ConsistencyTaskInstance taskInstance : taskInstances) {
+                try {
+                    if (taskStoreMapper.markSuccess(taskInstance) > 0) {
+                        removedTasks.add(taskInstance);
+                    }
+                } catch (Exception ex) {
+                    log.error("[一致性任务框架] 标记为执行成功时，发生异常 id={}", taskInstance.getId(), ex);
+                }
+            }
+        }
+        // 任务记录删除之后 再用一条语句删除溢出表中的参数 任务记录没有删除的任务重新执行时仍然需要参数
+        try {
+            taskParameterCodecManager.removeOverflowParameters(removedTasks);
+        } catch (Exception e) {
+            log.error("[一致性任务框架] 批量删除溢出表中的任务参数时，发生异常 任务数为 {}", removedTasks.size(), e);
+        }
+    }
+
+    private void flushFail(List<ConsistencyTaskInstance> taskInstances) {
+        try {
+            int count = taskStoreMapper.batchMarkFail(taskInstances);
+            log.info("[一致性任务框架] 批量标记为执行失败 任务数为 [{}] 更新的任务数为 [{}]", taskInstances.size(), count);
+        } catch (Exception e) {
+            log.error("[一致性任务框架] 批量标记为执行失败时，发生异常，改为逐条写入 任务数为 {}", taskInstances.size(), e);
+            for (ConsistencyTaskInstance taskInstance : taskInstances) {
+                try {
+                    taskStoreMapper.markFail(taskInstance);
+                } catch (Exception ex) {
+                    log.error("[一致性任务框架] 标记为执行失败时，发生异常 id={}", taskInstance.getId(), ex);
+                }
+            }
+        }
+    }
+
+    private String getKey(ConsistencyTaskInstance taskInstance) {
+        return taskInstance.getId() + ":" + taskInstance.getShardKey();
+    }
+
+    /**
+     * 等待写入的执行结果
+     */
+    private static class Completion {
+
+        private final ConsistencyTaskInstance taskInstance;
+
+        private final boolean success;
+
+        Completion(ConsistencyTaskInstance taskInstance, boolean success) {
+            this.taskInstance = taskInstance;
+            this.success = success;
+        }
+    }
+
+}
@@ -0,0 +1,367 @@
+package com.consistency.service;
+
+import cn.hutool.json.JSONUtil;
+import com.consistency.config.TendConsistencyConfiguration;
+import com.consistency.localstorage.RocksLocalStorage;
+import com.consistency.manager.TaskIdempotencyGuard;
+import com.consistency.manager.TaskParameterCodecManager;
+import com.consistency.mapper.TaskStoreMapper;
+import com.consistency.model.ConsistencyTaskInstance;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+/**
+ * 任务初始化的组提交器
+ * 1、调用方处于事务中时：同一事务内的任务先缓存起来，在事务提交前(beforeCommit)用一条多行INSERT写入，仍然与业务数据在同一个事务中
+ * 2、调用方不在事务中时：并发调用方的任务由刷写线程收集几毫秒或者凑满N条后，用一条多行INSERT写入，调用方阻塞到写入完成后再返回
+ *
+ * @author xiayang
+ **/
+@Slf4j
+@Component
+public class TaskInitGroupCommitter implements InitializingBean, DisposableBean {
+
+    /**
+     * 刷写线程的名称
+     */
+    private static final String FLUSH_THREAD_NAME = "TaskInitGroupCommitter";
+    /**
+     * 刷写线程从队列中获取任务的超时时间 单位毫秒
+     */
+    private static final long POLL_TIMEOUT_MILLIS = 100L;
+
+    /**
+     * 任务存储的mapper组件
+     */
+    @Autowired
+    private TaskStoreMapper taskStoreMapper;
+    /**
+     * 一致性框架配置
+     */
+    @Autowired
+    private TendConsistencyConfiguration tendConsistencyConfiguration;
+    /**
+     * RocksDB工具类
+     */
+    @Autowired
+    private RocksLocalStorage rocksLocalStorage;
+    /**
+     * 任务幂等守卫
+     */
+    @Autowired
+    private TaskIdempotencyGuard taskIdempotencyGuard;
+    /**
+     * 任务参数编解码管理器
+     */
+    @Autowired
+    private TaskParameterCodecManager taskParameterCodecManager;
+
+    /**
+     * 等待组提交的任务队列
+     */
+    private final BlockingQueue<PendingTask> pendingQueue = new LinkedBlockingQueue<>();
+    /**
+     * 刷写线程
+     */
+    private Thread flushThread;
+    /**
+     * 刷写线程是否在运行
+     */
+    private volatile boolean running = false;
+
+    @Override
+    public void afterPropertiesSet() {
+        if (!tendConsistencyConfiguration.getGroupCommitEnabled()) {
+            return;
+        }
+        running = true;
+        flushThread = new Thread(this::flushLoop, FLUSH_THREAD_NAME);
+        flushThread.setDaemon(true);
+        flushThread.start();
+        log.info("[一致性任务框架] 任务初始化组提交模式已开启 maxBatchSize={} maxWaitMillis={}",
+                tendConsistencyConfiguration.getGroupCommitMaxBatchSize(), tendConsistencyConfiguration.getGroupCommitMaxWaitMillis());
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        if (!running) {
+            return;
+        }
+        running = false;
+        flushThread.join(TimeUnit.SECONDS.toMillis(5));
+        // 刷写线程退出后还没来得及写入的任务 通知调用方进行降级
+        List<PendingTask> leftTasks = new ArrayList<>();
+        pendingQueue.drainTo(leftTasks);
+        leftTasks.forEach(pendingTask -> pendingTask.future.complete(false));
+    }
+
+    /**
+     * 以组提交的方式初始化任务实例
+     *
+     * @param taskInstance 要存储的最终一致性任务的实例信息
+     */
+    public void initTask(ConsistencyTaskInstance taskInstance) {
+        // 调用方处于事务中 任务合并到当前事务中 在事务提交前统一写入
+        if (TransactionSynchronizationManager.isActualTransactionActive()
+                && TransactionSynchronizationManager.isSynchronizationActive()) {
+            getOrRegisterTransactionBuffer().add(taskInstance);
+            return;
+        }
+        if (!running) {
+            initTaskOrStoreLocal(taskInstance);
+            return;
+        }
+        PendingTask pendingTask = new PendingTask(taskInstance);
+        pendingQueue.offer(pendingTask);
+        boolean result;
+        try {
+            result = pendingTask.future.get(tendConsistencyConfiguration.getGroupCommitMaxBlockMillis(), TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            result = false;
+        } catch (InterruptedException | TimeoutException e) {
+            boolean interrupted = e instanceof InterruptedException;
+            // 刷写线程还没有取走任务时 由调用方自己单条写入
+            if (pendingTask.take()) {
+                log.warn("[一致性任务框架] 等待组提交超时，改为单条写入任务 等待时间为 [{}] 毫秒",
+                        tendConsistencyConfiguration.getGroupCommitMaxBlockMillis());
+                initTaskOrStoreLocal(taskInstance);
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+                return;
+            }
+            // 刷写线程已经取走任务 写入结果未知时不能持久化到本地 否则任务会存储两次 继续等待写入结果 等待时间由JDBC的语句超时限制
+            result = awaitFlushResult(pendingTask, interrupted);
+        }
+        if (!result) {
+            storeLocal(taskInstance);
+        }
+    }
+
+    /**
+     * 等待刷写线程写入已经取走的任务 等待期间不响应中断 返回前恢复中断标记
+     *
+     * @param pendingTask 等待组提交的任务
+     * @param interrupted 调用方线程是否已经被中断过
+     * @return 是否写入成功
+     */
+    private boolean awaitFlushResult(PendingTask pendingTask, boolean interrupted) {
+        try {
+            while (true) {
+                try {
+                    return pendingTask.future.get();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    return false;
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * 获取当前事务的任务缓冲区 如果没有则注册一个
+     * 这里从事务同步器列表中查找，而不是bindResource，是因为同步器会随着REQUIRES_NEW等新事务一起挂起和恢复
+     *
+     * @return 当前事务的任务缓冲区
+     */
+    private TransactionBufferSynchronization getOrRegisterTransactionBuffer() {
+        for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+            if (synchronization instanceof TransactionBufferSynchronization) {
+                return (TransactionBufferSynchronization) synchronization;
+            }
+        }
+        TransactionBufferSynchronization buffer = new TransactionBufferSynchronization();
+        TransactionSynchronizationManager.registerSynchronization(buffer);
+        return buffer;
+    }
+
+    /**
+     * 刷写线程的主循环 收集maxWaitMillis毫秒内或者maxBatchSize条任务后进行一次批量写入
+     */
+    private void flushLoop() {
+        int maxBatchSize = tendConsistencyConfiguration.getGroupCommitMaxBatchSize();
+        long maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(tendConsistencyConfiguration.getGroupCommitMaxWaitMillis());
+        List<PendingTask> batch = new ArrayList<>(maxBatchSize);
+        while (running || !pendingQueue.isEmpty()) {
+            try {
+                PendingTask first = pendingQueue.poll(POLL_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + maxWaitNanos;
+                while (batch.size() < maxBatchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    PendingTask next = remaining > 0 ? pendingQueue.poll(remaining, TimeUnit.NANOSECONDS) : pendingQueue.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                // 调用方等待超时后已经自己写入的任务 不再写入
+                batch.removeIf(pendingTask -> !pendingTask.take());
+                if (!batch.isEmpty()) {
+                    flush(batch);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                batch.forEach(pendingTask -> pendingTask.future.complete(false));
+                return;
+            } catch (Exception e) {
+                log.error("[一致性任务框架] 组提交刷写任务时，发生异常", e);
+                batch.forEach(pendingTask -> pendingTask.future.complete(false));
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * 将一批任务写入数据库并通知调用方
+     *
+     * @param batch 一批等待写入的任务
+     */
+    private void flush(List<PendingTask> batch) {
+        List<ConsistencyTaskInstance> taskInstances = batch.stream()
+                .map(pendingTask -> pendingTask.taskInstance)
+                .collect(Collectors.toList());
+        boolean result;
+        try {
+            int count = batchInitTask(taskInstances);
+            log.info("[一致性任务框架] 组提交初始化任务 任务数为 [{}] 结果为 [{}]", taskInstances.size(), count > 0);
+            result = true;
+        } catch (Exception e) {
+            log.error("[一致性任务框架] 组提交初始化任务到数据库时，发生异常，调用方会将任务持久化到RocksDB本地存储中, 任务数为 {}",
+                    taskInstances.size(), e);
+            result = false;
+        }
+        for (PendingTask pendingTask : batch) {
+            pendingTask.future.complete(result);
+        }
+    }
+
+    /**
+     * 用一条多行INSERT批量写入任务 如果批次中存在幂等键重复的任务，则改为逐条写入并跳过重复的任务
+     *
+     * @param taskInstances 任务实例列表
+     * @return 写入的任务数
+     */
+    public int batchInitTask(List<ConsistencyTaskInstance> taskInstances) {
+        try {
+            return taskParameterCodecManager.insertWithOverflow(taskInstances, () -> taskStoreMapper.batchInitTask(taskInstances));
+        } catch (DuplicateKeyException e) {
+            log.info("[一致性任务框架] 批量初始化任务时存在幂等键重复的任务，改为逐条写入");
+            int count = 0;
+            for (ConsistencyTaskInstance taskInstance : taskInstances) {
+                if (initTaskOrStoreLocal(taskInstance)) {
+                    count++;
+                }
+            }
+            return count;
+        }
+    }
+
+    /**
+     * 单条写入任务 如果写入失败则存储到RocksDB中 如果幂等键重复则丢弃
+     *
+     * @param taskInstance 任务实例信息
+     * @return 是否写入了数据库
+     */
+    private boolean initTaskOrStoreLocal(ConsistencyTaskInstance taskInstance) {
+        try {
+            Long result = taskParameterCodecManager.insertWithOverflow(taskInstance, () -> taskStoreMapper.initTask(taskInstance));
+            log.info("[一致性任务框架] 初始化任务结果为 [{}]", result > 0);
+            return true;
+        } catch (DuplicateKeyException e) {
+            taskIdempotencyGuard.markDuplicate(taskInstance);
+            return false;
+        } catch (Exception e) {
+            storeLocal(taskInstance);
+            return false;
+        }
+    }
+
+    /**
+     * 将任务存储到RocksDB中
+     *
+     * @param taskInstance 任务实例信息
+     */
+    private void storeLocal(ConsistencyTaskInstance taskInstance) {
+        log.error("[一致性任务框架] 组提交初始化任务失败，执行降级逻辑，将任务持久化到RocksDB本地存储中, 任务信息为 {}",
+                JSONUtil.toJsonStr(taskInstance));
+        rocksLocalStorage.put(taskInstance);
+    }
+
+    /**
+     * 等待组提交的任务
+     */
+    private static class PendingTask {
+
+        private final ConsistencyTaskInstance taskInstance;
+
+        private final CompletableFuture<Boolean> future = new CompletableFuture<>();
+
+        /**
+         * 任务是否已经被刷写线程或者等待超时的调用方取走 只有取走任务的一方才能写入任务
+         */
+        private final AtomicBoolean taken = new AtomicBoolean();
+
+        PendingTask(ConsistencyTaskInstance taskInstance) {
+            this.taskInstance = taskInstance;
+        }
+
+        boolean take() {
+            return taken.compareAndSet(false, true);
+        }
+    }
+
+    /**
+     * 事务内的任务缓冲区 在事务提交前将同一事务内的任务用一条语句写入
+     */
+    private class TransactionBufferSynchronization extends TransactionSynchronizationAdapter {
+
+        private final List<ConsistencyTaskInstance> taskInstances = new ArrayList<>();
+
+        void add(ConsistencyTaskInstance taskInstance) {
+            taskInstances.add(taskInstance);
+        }
+
+        @Override
+        public void beforeCommit(boolean readOnly) {
+            if (taskInstances.isEmpty()) {
+                return;
+            }
+            try {
+                int count = batchInitTask(taskInstances);
+                log.info("[一致性任务框架] 事务内组提交初始化任务 任务数为 [{}] 结果为 [{}]", taskInstances.size(), count > 0);
+            } catch (Exception e) {
+                log.error("[一致性任务框架] 事务内组提交初始化任务时，发生异常，执行降级逻辑，将任务持久化到RocksDB本地存储中", e);
+                taskInstances.forEach(TaskInitGroupCommitter.this::storeLocal);
+            }
+        }
+    }
+
+}
@@ -18,6 +18,13 @@ public interface TaskStoreService {
      */
     void initTask(ConsistencyTaskInstance consistencyTaskInstance);
 
+    /**
+     * 批量保存最终一致性任务实例 用一条多行INSERT写入，立即执行的任务在事务提交后统一提交执行
+     *
+     * @param taskInstances 要存储的最终一致性任务的实例信息列表
+     */
+    void submitAll(List<ConsistencyTaskInstance> taskInstances);
+
     /**
      * 根据id获取任务实例信息
      *
@@ -34,6 +41,15 @@ public interface TaskStoreService {
      */
     List<ConsistencyTaskInstance> listByUnFinishTask();
 
+    /**
+     * 获取即将到期的未完成任务 用于预取到时间轮中
+     *
+     * @param horizonMillis  从当前时间开始的时间范围 单位毫秒
+     * @param limitTaskCount 最多查询的任务数
+     * @return 即将到期的未完成任务
+     */
+    List<ConsistencyTaskInstance> listNearFutureTask(long horizonMillis, long limitTaskCount);
+
     /**
      * 启动任务
      *
@@ -42,6 +58,30 @@ public interface TaskStoreService {
      */
     int turnOnTask(ConsistencyTaskInstance consistencyTaskInstance);
 
+    /**
+     * 批量领取任务的租约并启动任务 一条语句完成 代替逐个任务的turnOnTask
+     *
+     * @param taskInstances 任务实例信息列表
+     * @return 领取到租约的任务 以及本地存储中不需要领取租约的任务
+     */
+    List<ConsistencyTaskInstance> claimTasks(List<ConsistencyTaskInstance> taskInstances);
+
+    /**
+     * 释放领取后没有执行的任务的租约
+     *
+     * @param taskInstances 任务实例信息列表
+     */
+    void releaseLease(List<ConsistencyTaskInstance> taskInstances);
+
+    /**
+     * 用一条语句推迟一批任务的执行时间 同时释放自己持有的租约
+     *
+     * @param taskInstances 任务实例信息列表
+     * @param executeTime   推迟后的执行时间
+     * @return 推迟的任务数
+     */
+    int deferTasks(List<ConsistencyTaskInstance> taskInstances, long executeTime);
+
     /**
      * 标记任务成功
      *
@@ -5,27 +5,43 @@ import com.consistency.config.TendConsistencyConfiguration;
 import com.consistency.custom.query.TaskTimeRangeQuery;
 import com.consistency.enums.ConsistencyTaskStatusEnum;
 import com.consistency.enums.PerformanceEnum;
+import com.consistency.enums.TaskPriorityEnum;
 import com.consistency.enums.ThreadWayEnum;
 import com.consistency.exceptions.ConsistencyException;
 import com.consistency.localstorage.RocksLocalStorage;
+import com.consistency.manager.LocalFirstTaskManager;
+import com.consistency.manager.TaskDispatcher;
 import com.consistency.manager.TaskEngineExecutor;
+import com.consistency.manager.TaskTimingWheel;
+import com.consistency.manager.TaskIdempotencyGuard;
+import com.consistency.manager.TaskParameterCodecManager;
 import com.consistency.mapper.TaskStoreMapper;
 import com.consistency.model.ConsistencyTaskInstance;
+import com.consistency.utils.NetUtils;
 import com.consistency.utils.ReflectTools;
 import com.consistency.utils.SpringUtil;
+import com.google.common.collect.Lists;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.transaction.support.TransactionSynchronizationAdapter;
 import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.CollectionUtils;
 import org.springframework.util.StringUtils;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.CompletionService;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
 
 /**
  * 任务存储的service实现类
@@ -37,15 +53,15 @@ import java.util.concurrent.CompletionService;
 public class TaskStoreServiceImpl implements TaskStoreService {
 
     /**
-     * 任务存储的mapper组件
+     * 批量写入、领取租约、推迟任务时 一条SQL语句最多包含的任务数 避免单条SQL过大 与组提交的批次大小无关
      */
-    @Autowired
-    private TaskStoreMapper taskStoreMapper;
+    private static final int MAX_TASKS_PER_STATEMENT = 500;
+
     /**
-     * 任务执行线程池
+     * 任务存储的mapper组件
      */
     @Autowired
-    private CompletionService<ConsistencyTaskInstance> consistencyTaskPool;
+    private TaskStoreMapper taskStoreMapper;
     /**
      * 一致性框架配置
      */
@@ -61,6 +77,50 @@ public class TaskStoreServiceImpl implements TaskStoreService {
      */
     @Autowired
     private RocksLocalStorage rocksLocalStorage;
+    /**
+     * 任务初始化的组提交器
+     */
+    @Autowired
+    private TaskInitGroupCommitter taskInitGroupCommitter;
+    /**
+     * 任务参数编解码管理器
+     */
+    @Autowired
+    private TaskParameterCodecManager taskParameterCodecManager;
+    /**
+     * 任务幂等守卫
+     */
+    @Autowired
+    private TaskIdempotencyGuard taskIdempotencyGuard;
+    /**
+     * 立即执行任务的本地优先模式
+     */
+    @Autowired
+    private LocalFirstTaskManager localFirstTaskManager;
+    /**
+     * 调度任务的时间轮
+     */
+    @Autowired
+    private TaskTimingWheel taskTimingWheel;
+    /**
+     * 调度任务的持续分发器
+     */
+    @Autowired
+    private TaskDispatcher taskDispatcher;
+    /**
+     * 任务执行结果的批量写入器
+     */
+    @Autowired
+    private TaskCompletionSink taskCompletionSink;
+
+    /**
+     * 当前进程的租约持有者前缀
+     */
+    private final String leaseOwnerPrefix = NetUtils.getCurrentPeerAddress() + "-" + UUID.randomUUID().toString().substring(0, 8);
+    /**
+     * 租约领取的序号 每次领取生成不同的租约持有者 用于查询本次领取到的任务
+     */
+    private final AtomicLong leaseSequence = new AtomicLong();
 
     /**
      * 初始化最终一致性任务实例到数据库
@@ -69,36 +129,124 @@ public class TaskStoreServiceImpl implements TaskStoreService {
      */
     @Override
     public void initTask(ConsistencyTaskInstance taskInstance) {
-        Long result = null;
-        // 如果写数据到MySQL失败了，那么可以将数据加入到RocksDB
-        try {
-            result = taskStoreMapper.initTask(taskInstance);
-            log.info("[一致性任务框架] 初始化任务结果为 [{}]", result > 0);
-        } catch (Exception e) {
-            log.error("[一致性任务框架] 初始化任务到数据库时，发生异常，执行降级逻辑，将任务持久化到RocksDB本地存储中, 任务信息为 {}",
-                    JSONUtil.toJsonStr(taskInstance), e);
-            // 将数据存储到RocksDB中
-            rocksLocalStorage.put(taskInstance);
+        // 最近已经提交过相同幂等键的任务 直接丢弃
+        if (!taskIdempotencyGuard.tryAcquire(taskInstance)) {
+            return;
+        }
+        // 本地优先模式 立即执行的任务先保存到本地并直接执行 执行失败或超时未确认时才写入任务表
+        if (localFirstTaskManager.isEnabled()
+                && PerformanceEnum.PERFORMANCE_RIGHT_NOW.getCode().equals(taskInstance.getPerformanceWay())) {
+            localFirstTaskManager.initTask(taskInstance);
+            recordIdempotentKey(taskInstance);
+            return;
         }
-        // 如果执行模式不是立即执行的任务
+        if (tendConsistencyConfiguration.getGroupCommitEnabled()) {
+            // 组提交模式 与其他任务合并为一条多行INSERT写入
+            taskInitGroupCommitter.initTask(taskInstance);
+        } else {
+            Long result = null;
+            // 如果写数据到MySQL失败了，那么可以将数据加入到RocksDB
+            try {
+                result = taskParameterCodecManager.insertWithOverflow(taskInstance, () -> taskStoreMapper.initTask(taskInstance));
+                log.info("[一致性任务框架] 初始化任务结果为 [{}]", result > 0);
+            } catch (DuplicateKeyException e) {
+                // 相同幂等键的任务已经存在 不再提交执行
+                taskIdempotencyGuard.markDuplicate(taskInstance);
+                return;
+            } catch (Exception e) {
+                log.error("[一致性任务框架] 初始化任务到数据库时，发生异常，执行降级逻辑，将任务持久化到RocksDB本地存储中, 任务信息为 {}",
+                        JSONUtil.toJsonStr(taskInstance), e);
+                // 将数据存储到RocksDB中
+                rocksLocalStorage.put(taskInstance);
+            }
+        }
+        recordIdempotentKey(taskInstance);
+        // 如果执行模式不是立即执行的任务 开启时间轮时 即将到期的任务在事务提交后放入时间轮
         if (!PerformanceEnum.PERFORMANCE_RIGHT_NOW.getCode().equals(taskInstance.getPerformanceWay())) {
+            if (taskTimingWheel.isEnabled()) {
+                runAfterCommit(() -> taskTimingWheel.schedule(taskInstance));
+            }
             return;
         }
 
         // 判断当前Action是否包含在事务里面，如果是，等事务提交后，再执行Action
-        boolean synchronizationActive = TransactionSynchronizationManager.isSynchronizationActive();
-        if (synchronizationActive) {
+        runAfterCommit(() -> submitTaskInstance(taskInstance));
+    }
+
+    /**
+     * 任务所在的事务提交后记录任务的幂等键 事务回滚时不记录，上游重试时可以重新提交
+     *
+     * @param taskInstance 任务实例信息
+     */
+    private void recordIdempotentKey(ConsistencyTaskInstance taskInstance) {
+        if (taskInstance.getIdempotentKey() != null) {
+            runAfterCommit(() -> taskIdempotencyGuard.onStored(taskInstance));
+        }
+    }
+
+    /**
+     * 当前处于事务中时 在事务提交后执行 否则立即执行
+     *
+     * @param action 要执行的动作
+     */
+    private void runAfterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
             TransactionSynchronizationManager.registerSynchronization(
                     new TransactionSynchronizationAdapter() {
                         @Override
                         public void afterCommit() {
-                            submitTaskInstance(taskInstance);
+                            action.run();
                         }
                     }
             );
         } else {
-            submitTaskInstance(taskInstance);
+            action.run();
+        }
+    }
+
+    /**
+     * 批量保存最终一致性任务实例 用一条多行INSERT写入，立即执行的任务在事务提交后统一提交执行
+     *
+     * @param taskInstances 要存储的最终一致性任务的实例信息列表
+     */
+    @Override
+    public void submitAll(List<ConsistencyTaskInstance> taskInstances) {
+        if (CollectionUtils.isEmpty(taskInstances)) {
+            return;
+        }
+        // 丢弃最近已经提交过相同幂等键的任务
+        taskInstances = taskInstances.stream().filter(taskIdempotencyGuard::tryAcquire).collect(Collectors.toList());
+        for (List<ConsistencyTaskInstance> batch : partition(taskInstances)) {
+            try {
+                int count = taskInitGroupCommitter.batchInitTask(batch);
+                log.info("[一致性任务框架] 批量初始化任务 任务数为 [{}] 结果为 [{}]", batch.size(), count > 0);
+            } catch (Exception e) {
+                log.error("[一致性任务框架] 批量初始化任务到数据库时，发生异常，执行降级逻辑，将任务持久化到RocksDB本地存储中, 任务数为 {}",
+                        batch.size(), e);
+                batch.forEach(rocksLocalStorage::put);
+            }
+        }
+        // 在事务中时 只注册一个事务同步器 事务提交后统一记录幂等键
+        List<ConsistencyTaskInstance> idempotentTasks = taskInstances.stream()
+                .filter(taskInstance -> taskInstance.getIdempotentKey() != null)
+                .collect(Collectors.toList());
+        if (!idempotentTasks.isEmpty()) {
+            runAfterCommit(() -> idempotentTasks.forEach(taskIdempotencyGuard::onStored));
+        }
+        List<ConsistencyTaskInstance> rightNowTasks = taskInstances.stream()
+                .filter(taskInstance -> PerformanceEnum.PERFORMANCE_RIGHT_NOW.getCode().equals(taskInstance.getPerformanceWay()))
+                .collect(Collectors.toList());
+        List<ConsistencyTaskInstance> scheduleTasks = taskTimingWheel.isEnabled() ? taskInstances.stream()
+                .filter(taskInstance -> !PerformanceEnum.PERFORMANCE_RIGHT_NOW.getCode().equals(taskInstance.getPerformanceWay()))
+                .collect(Collectors.toList()) : Collections.emptyList();
+        if (rightNowTasks.isEmpty() && scheduleTasks.isEmpty()) {
+            return;
         }
+        // 在事务中时 只注册一个事务同步器 事务提交后统一提交执行
+        runAfterCommit(() -> {
+            rightNowTasks.forEach(this::submitTaskInstance);
+            scheduleTasks.forEach(taskTimingWheel::schedule);
+        });
     }
 
     /**
@@ -113,6 +261,19 @@ public class TaskStoreServiceImpl implements TaskStoreService {
         return taskStoreMapper.getTaskByIdAndShardKey(id, shardKey);
     }
 
+    /**
+     * 获取即将到期的未完成任务 用于预取到时间轮中
+     *
+     * @param horizonMillis  从当前时间开始的时间范围 单位毫秒
+     * @param limitTaskCount 最多查询的任务数
+     * @return 即将到期的未完成任务
+     */
+    @Override
+    public List<ConsistencyTaskInstance> listNearFutureTask(long horizonMillis, long limitTaskCount) {
+        long now = System.currentTimeMillis();
+        return taskStoreMapper.listNearFutureTask(now, now + horizonMillis, limitTaskCount);
+    }
+
     /**
      * 获取未完成的任务
      *
@@ -131,7 +292,7 @@ public class TaskStoreServiceImpl implements TaskStoreService {
                 startTime = taskTimeRangeQuery.getStartTime();
                 endTime = taskTimeRangeQuery.getEndTime();
                 limitTaskCount = taskTimeRangeQuery.limitTaskCount();
-                return taskStoreMapper.listByUnFinishTask(startTime.getTime(), endTime.getTime(), limitTaskCount);
+                return listByPriorityQuota(startTime.getTime(), endTime.getTime(), limitTaskCount);
             } else {
                 startTime = TaskTimeRangeQuery.defaultGetStartTime();
                 endTime = TaskTimeRangeQuery.defaultGetEndTime();
@@ -141,7 +302,56 @@ public class TaskStoreServiceImpl implements TaskStoreService {
             log.error("[一致性任务框架] 调用业务服务实现具体的告警通知类时，发生异常", e);
             throw new ConsistencyException(e);
         }
-        return taskStoreMapper.listByUnFinishTask(startTime.getTime(), endTime.getTime(), limitTaskCount);
+        return listByPriorityQuota(startTime.getTime(), endTime.getTime(), limitTaskCount);
+    }
+
+    /**
+     * 按照各个优先级的权重分配查询的条数 每个优先级单独查询
+     * 某个优先级的任务不足时 剩余的条数依次分配给较低的优先级 最后仍有剩余时再分配给查询满了的优先级
+     *
+     * @param startTime      开始时间
+     * @param endTime        结束时间
+     * @param limitTaskCount 每次查询限制的条数
+     * @return 未完成的任务 高优先级的任务在前
+     */
+    private List<ConsistencyTaskInstance> listByPriorityQuota(long startTime, long endTime, long limitTaskCount) {
+        TaskPriorityEnum[] priorities = TaskPriorityEnum.values();
+        long[] weights = new long[priorities.length];
+        long totalWeight = 0;
+        for (int i = 0; i < priorities.length; i++) {
+            weights[i] = getPriorityWeight(priorities[i]);
+            totalWeight += weights[i];
+        }
+        long[] limits = new long[priorities.length];
+        List<List<ConsistencyTaskInstance>> results = new ArrayList<>(priorities.length);
+        long spare = 0;
+        for (int i = 0; i < priorities.length; i++) {
+            limits[i] = Math.max(1, limitTaskCount * weights[i] / totalWeight) + spare;
+            List<ConsistencyTaskInstance> result = taskStoreMapper.listByUnFinishTask(startTime, endTime, priorities[i].getCode(), limits[i]);
+            results.add(result);
+            spare = limits[i] - result.size();
+        }
+        // 较低优先级的任务不足时 剩余的条数按照优先级从高到低补充给查询满了的优先级
+        for (int i = 0; i < priorities.length - 1 && spare > 0; i++) {
+            if (results.get(i).size() < limits[i]) {
+                continue;
+            }
+            List<ConsistencyTaskInstance> result = taskStoreMapper.listByUnFinishTask(startTime, endTime, priorities[i].getCode(), limits[i] + spare);
+            spare -= result.size() - results.get(i).size();
+            results.set(i, result);
+        }
+        return results.stream().flatMap(List::stream).collect(Collectors.toList());
+    }
+
+    private long getPriorityWeight(TaskPriorityEnum priority) {
+        switch (priority) {
+            case HIGH:
+                return tendConsistencyConfiguration.getPriorityHighWeight();
+            case LOW:
+                return tendConsistencyConfiguration.getPriorityLowWeight();
+            default:
+                return tendConsistencyConfiguration.getPriorityNormalWeight();
+        }
     }
 
     /**
@@ -170,13 +380,132 @@ public class TaskStoreServiceImpl implements TaskStoreService {
     @Transactional(rollbackFor = Exception.class, propagation = Propagation.REQUIRES_NEW)
     @Override
     public int turnOnTask(ConsistencyTaskInstance consistencyTaskInstance) {
-        consistencyTaskInstance.setExecuteTime(System.currentTimeMillis());
+        long now = System.currentTimeMillis();
+        consistencyTaskInstance.setExecuteTime(now);
         consistencyTaskInstance.setTaskStatus(ConsistencyTaskStatusEnum.START.getCode());
+        consistencyTaskInstance.setLeaseOwner(nextLeaseOwner());
+        consistencyTaskInstance.setLeaseUntil(now + TimeUnit.SECONDS.toMillis(tendConsistencyConfiguration.getLeaseSeconds()));
         return taskStoreMapper.turnOnTask(consistencyTaskInstance);
     }
 
     /**
-     * 标记任务成功
+     * 批量领取任务的租约并启动任务 全部领取成功时只需要一条语句 部分领取成功时再查询一次本次领取到的任务
+     *
+     * @param taskInstances 任务实例信息列表
+     * @return 领取到租约的任务 以及本地存储中不需要领取租约的任务
+     */
+    @Override
+    public List<ConsistencyTaskInstance> claimTasks(List<ConsistencyTaskInstance> taskInstances) {
+        List<ConsistencyTaskInstance> claimedTasks = new ArrayList<>(taskInstances.size());
+        List<ConsistencyTaskInstance> databaseTasks = new ArrayList<>(taskInstances.size());
+        for (ConsistencyTaskInstance taskInstance : taskInstances) {
+            // 初始化时就存储到RocksDB中的任务没有id 只在本地执行 不需要领取租约
+            (taskInstance.getId() == null ? claimedTasks : databaseTasks).add(taskInstance);
+        }
+        for (List<ConsistencyTaskInstance> batch : partition(databaseTasks)) {
+            claimedTasks.addAll(claimBatch(batch));
+        }
+        return claimedTasks;
+    }
+
+    private List<ConsistencyTaskInstance> claimBatch(List<ConsistencyTaskInstance> batch) {
+        long now = System.currentTimeMillis();
+        long leaseUntil = now + TimeUnit.SECONDS.toMillis(tendConsistencyConfiguration.getLeaseSeconds());
+        String leaseOwner = nextLeaseOwner();
+        int count = taskStoreMapper.claimTasks(batch, leaseOwner, now, leaseUntil);
+        List<ConsistencyTaskInstance> claimedTasks = batch;
+        if (count < batch.size()) {
+            // 部分任务的租约还没有到期 正在被执行
+            Set<String> leasedKeys = taskStoreMapper.listLeasedTasks(batch, leaseOwner).stream()
+                    .map(e -> e.getId() + ":" + e.getShardKey())
+                    .collect(Collectors.toSet());
+            claimedTasks = batch.stream()
+                    .filter(e -> leasedKeys.contains(e.getId() + ":" + e.getShardKey()))
+                    .collect(Collectors.toList());
+            log.info("[一致性任务框架] 批量领取任务租约 任务数为 [{}] 领取到的任务数为 [{}]", batch.size(), claimedTasks.size());
+        }
+        for (ConsistencyTaskInstance taskInstance : claimedTasks) {
+            taskInstance.setExecuteTime(now);
+            taskInstance.setTaskStatus(ConsistencyTaskStatusEnum.START.getCode());
+            taskInstance.setLeaseOwner(leaseOwner);
+            taskInstance.setLeaseUntil(leaseUntil);
+        }
+        return claimedTasks;
+    }
+
+    /**
+     * 释放领取后没有执行的任务的租约 释放失败时等待租约到期
+     *
+     * @param taskInstances 任务实例信息列表
+     */
+    @Override
+    public void releaseLease(List<ConsistencyTaskInstance> taskInstances) {
+        List<ConsistencyTaskInstance> leasedTasks = taskInstances.stream()
+                .filter(e -> e.getId() != null && e.getLeaseOwner() != null)
+                .collect(Collectors.toList());
+        if (leasedTasks.isEmpty()) {
+            return;
+        }
+        try {
+            taskStoreMapper.releaseLease(leasedTasks);
+        } catch (Exception e) {
+            log.error("[一致性任务框架] 释放任务租约时，发生异常，任务将在租约到期后重新执行 任务数为 {}", leasedTasks.size(), e);
+        }
+        leasedTasks.forEach(e -> {
+            e.setLeaseOwner(null);
+            e.setLeaseUntil(null);
+        });
+    }
+
+    /**
+     * 用一条语句推迟一批任务的执行时间 同时释放自己持有的租约
+     *
+     * @param taskInstances 任务实例信息列表
+     * @param executeTime   推迟后的执行时间
+     * @return 推迟的任务数
+     */
+    @Override
+    public int deferTasks(List<ConsistencyTaskInstance> taskInstances, long executeTime) {
+        List<ConsistencyTaskInstance> storedTasks = taskInstances.stream()
+                .filter(e -> e.getId() != null)
+                .collect(Collectors.toList());
+        if (storedTasks.isEmpty()) {
+            return 0;
+        }
+        long now = System.currentTimeMillis();
+        int count = 0;
+        for (List<ConsistencyTaskInstance> batch : partition(storedTasks)) {
+            count += taskStoreMapper.deferTasks(batch, now, executeTime);
+        }
+        storedTasks.forEach(e -> {
+            e.setExecuteTime(executeTime);
+            e.setLeaseOwner(null);
+            e.setLeaseUntil(null);
+        });
+        return count;
+    }
+
+    /**
+     * 按照一条SQL语句最多包含的任务数拆分任务列表
+     *
+     * @param taskInstances 任务实例信息列表
+     * @return 拆分后的任务列表
+     */
+    private static List<List<ConsistencyTaskInstance>> partition(List<ConsistencyTaskInstance> taskInstances) {
+        return Lists.partition(taskInstances, MAX_TASKS_PER_STATEMENT);
+    }
+
+    /**
+     * 生成本次领取的租约持有者
+     *
+     * @return 租约持有者
+     */
+    private String nextLeaseOwner() {
+        return leaseOwnerPrefix + "-" + leaseSequence.incrementAndGet();
+    }
+
+    /**
+     * 标记任务成功 开启批量写入时在事务提交后放入批量写入的缓冲区 返回1
      *
      * @param consistencyTaskInstance 任务实例信息
      * @return 标记结果
@@ -184,11 +513,21 @@ public class TaskStoreServiceImpl implements TaskStoreService {
     @Transactional(rollbackFor = Exception.class)
     @Override
     public int markSuccess(ConsistencyTaskInstance consistencyTaskInstance) {
-        return taskStoreMapper.markSuccess(consistencyTaskInstance);
+        if (taskCompletionSink.isEnabled()) {
+            // 事务回滚时业务数据也会回滚 任务不能被删除
+            runAfterCommit(() -> taskCompletionSink.markSuccess(consistencyTaskInstance));
+            return 1;
+        }
+        int result = taskStoreMapper.markSuccess(consistencyTaskInstance);
+        // 任务参数存储在溢出表中的 在同一个事务中一并删除 租约已经被其他节点领取时任务没有被删除 参数仍然需要保留
+        if (result > 0) {
+            taskParameterCodecManager.removeOverflowParameter(consistencyTaskInstance);
+        }
+        return result;
     }
 
     /**
-     * 标记任务为失败
+     * 标记任务为失败 开启批量写入时在事务提交后放入批量写入的缓冲区 返回1
      *
      * @param consistencyTaskInstance 一致性任务信息
      * @return 标记结果
@@ -196,6 +535,10 @@ public class TaskStoreServiceImpl implements TaskStoreService {
     @Transactional(rollbackFor = Exception.class)
     @Override
     public int markFail(ConsistencyTaskInstance consistencyTaskInstance) {
+        if (taskCompletionSink.isEnabled()) {
+            runAfterCommit(() -> taskCompletionSink.markFail(consistencyTaskInstance));
+            return 1;
+        }
         return taskStoreMapper.markFail(consistencyTaskInstance);
     }
 
@@ -217,14 +560,16 @@ public class TaskStoreServiceImpl implements TaskStoreService {
      */
     @Override
     public void submitTaskInstance(ConsistencyTaskInstance taskInstance) {
+        // 写入数据库时发现幂等键重复的任务 不提交执行
+        if (taskIdempotencyGuard.isDuplicate(taskInstance)) {
+            return;
+        }
         if (ThreadWayEnum.SYNC.getCode().equals(taskInstance.getThreadWay())) {
             // 选择事务事务模型并执行任务
             taskEngineExecutor.executeTaskInstance(taskInstance);
         } else if (ThreadWayEnum.ASYNC.getCode().equals(taskInstance.getThreadWay())) {
-            consistencyTaskPool.submit(() -> {
-                taskEngineExecutor.executeTaskInstance(taskInstance);
-                return taskInstance;
-            });
+            // 交给分发器 按照任务所属的隔离舱执行 队列已满时按照配置的过载策略处理
+            taskDispatcher.dispatchNow(taskInstance);
         }
     }
 
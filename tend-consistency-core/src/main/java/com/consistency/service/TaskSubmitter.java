@@ -0,0 +1,36 @@
+package com.consistency.service;
+
+import com.consistency.model.ConsistencyTaskInstance;
+import com.consistency.model.TaskSubmission;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 编程式提交一致性任务的接口
+ * 与在方法上使用@ConsistencyTask注解的效果相同，但调用方不会阻塞在任务的持久化上，适合在响应式或事件循环线程中使用
+ * 注意：任务实例的创建(计算幂等键、编码参数)以及持久化都在框架的提交线程池中进行，不会加入调用方的事务，提交后调用方不要再修改方法入参
+ * 相同幂等键的任务已经提交过时，返回的future以DuplicateTaskException异常完成
+ *
+ * @author xiayang
+ **/
+public interface TaskSubmitter {
+
+    /**
+     * 提交任务
+     *
+     * @param taskId 任务模板的id 即@ConsistencyTask注解中的id，如果注解中没有指定则为方法签名
+     * @param args   任务方法的入参
+     * @return 任务持久化完成后完成的future
+     */
+    CompletableFuture<ConsistencyTaskInstance> submit(String taskId, Object... args);
+
+    /**
+     * 提交任务 并观察任务的执行结果
+     *
+     * @param taskId 任务模板的id 即@ConsistencyTask注解中的id，如果注解中没有指定则为方法签名
+     * @param args   任务方法的入参
+     * @return 任务持久化完成以及执行成功后分别完成的future
+     */
+    TaskSubmission submitAndWatch(String taskId, Object... args);
+
+}
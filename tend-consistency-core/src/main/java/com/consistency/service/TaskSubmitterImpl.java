@@ -0,0 +1,149 @@
+package com.consistency.service;
+
+import com.consistency.enums.PerformanceEnum;
+import com.consistency.exceptions.ConsistencyException;
+import com.consistency.exceptions.DuplicateTaskException;
+import com.consistency.manager.TaskExecutionWatcher;
+import com.consistency.manager.TaskIdempotencyGuard;
+import com.consistency.model.ConsistencyTaskInstance;
+import com.consistency.model.TaskSubmission;
+import com.consistency.model.TaskTemplate;
+import com.consistency.template.TaskInstanceFactory;
+import com.consistency.template.TaskTemplateRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * 编程式提交一致性任务的实现类
+ *
+ * @author xiayang
+ **/
+@Slf4j
+@Service
+public class TaskSubmitterImpl implements TaskSubmitter {
+
+    /**
+     * 一致性任务存储的service
+     */
+    @Autowired
+    private TaskStoreService taskStoreService;
+    /**
+     * 一致性任务模板注册表
+     */
+    @Autowired
+    private TaskTemplateRegistry taskTemplateRegistry;
+    /**
+     * 一致性任务实例工厂
+     */
+    @Autowired
+    private TaskInstanceFactory taskInstanceFactory;
+    /**
+     * 任务执行结果的观察器
+     */
+    @Autowired
+    private TaskExecutionWatcher taskExecutionWatcher;
+    /**
+     * 任务幂等守卫
+     */
+    @Autowired
+    private TaskIdempotencyGuard taskIdempotencyGuard;
+    /**
+     * 提交任务的线程池
+     */
+    @Autowired
+    private ThreadPoolExecutor taskSubmitPool;
+
+    @Override
+    public CompletableFuture<ConsistencyTaskInstance> submit(String taskId, Object... args) {
+        return doSubmit(taskId, args, false).getStored();
+    }
+
+    @Override
+    public TaskSubmission submitAndWatch(String taskId, Object... args) {
+        return doSubmit(taskId, args, true);
+    }
+
+    /**
+     * 调用方线程中只查找任务模板 创建任务实例(计算幂等键、编码参数)以及持久化任务都在提交线程池中进行
+     *
+     * @param taskId 任务模板的id
+     * @param args   任务方法的入参
+     * @param watch  是否观察任务的执行结果
+     * @return 提交结果
+     */
+    private TaskSubmission doSubmit(String taskId, Object[] args, boolean watch) {
+        CompletableFuture<ConsistencyTaskInstance> stored = new CompletableFuture<>();
+        TaskTemplate template;
+        try {
+            template = taskTemplateRegistry.getTemplate(taskId);
+        } catch (Exception e) {
+            stored.completeExceptionally(e);
+            return new TaskSubmission(stored, watch ? stored : null);
+        }
+        CompletableFuture<ConsistencyTaskInstance> executed = watch ? new CompletableFuture<>() : null;
+        try {
+            taskSubmitPool.execute(() -> createAndStore(template, args, stored, executed));
+        } catch (RejectedExecutionException e) {
+            log.warn("[一致性任务框架] 提交任务的线程池已满，拒绝任务 {}", taskId);
+            ConsistencyException ex = new ConsistencyException("提交任务的线程池已满，请稍后重试");
+            stored.completeExceptionally(ex);
+            if (executed != null) {
+                executed.completeExceptionally(ex);
+            }
+        }
+        return new TaskSubmission(stored, executed);
+    }
+
+    /**
+     * 创建任务实例并持久化任务 并通知调用方
+     *
+     * @param template 任务模板
+     * @param args     任务方法的入参
+     * @param stored   持久化完成后完成的future
+     * @param executed 执行成功后完成的future 为null时表示不观察
+     */
+    private void createAndStore(TaskTemplate template, Object[] args, CompletableFuture<ConsistencyTaskInstance> stored,
+                                CompletableFuture<ConsistencyTaskInstance> executed) {
+        ConsistencyTaskInstance taskInstance;
+        try {
+            taskInstance = taskInstanceFactory.create(template, args);
+            // 需要在任务持久化之前开始观察 立即执行的任务在持久化后可能马上就执行完成了
+            if (executed != null) {
+                taskExecutionWatcher.watch(taskInstance, executed);
+            }
+            taskStoreService.initTask(taskInstance);
+        } catch (Exception e) {
+            log.error("[一致性任务框架] 编程式提交任务时，持久化任务发生异常", e);
+            stored.completeExceptionally(e);
+            if (executed != null) {
+                executed.completeExceptionally(e);
+            }
+            return;
+        }
+        // 相同幂等键的任务已经提交过 本次的任务被丢弃 不会执行
+        if (taskIdempotencyGuard.isDuplicate(taskInstance)) {
+            DuplicateTaskException ex = new DuplicateTaskException(
+                    String.format("幂等键 [%s] 的任务已经提交过，丢弃重复的任务", taskInstance.getIdempotentKey()));
+            stored.completeExceptionally(ex);
+            if (executed != null) {
+                executed.completeExceptionally(ex);
+            }
+            return;
+        }
+        stored.complete(taskInstance);
+        if (executed == null) {
+            return;
+        }
+        boolean watchable = taskExecutionWatcher.onStored(taskInstance);
+        // 降级存储到RocksDB的调度型任务 之后从RocksDB中加载出来的是新的任务实例 无法再关联到调用方
+        if (!watchable && !PerformanceEnum.PERFORMANCE_RIGHT_NOW.getCode().equals(taskInstance.getPerformanceWay())) {
+            executed.completeExceptionally(new ConsistencyException("任务已降级存储到RocksDB本地存储中，无法观察执行结果"));
+        }
+    }
+
+}
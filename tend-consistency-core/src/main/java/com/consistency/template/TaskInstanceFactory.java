@@ -0,0 +1,200 @@
+package com.consistency.template;
+
+import cn.hutool.core.util.ReflectUtil;
+import com.consistency.config.TendConsistencyConfiguration;
+import com.consistency.custom.shard.SnowflakeShardingKeyGenerator;
+import com.consistency.election.PeerElectionHandler;
+import com.consistency.manager.TaskParameterCodecManager;
+import com.consistency.model.ConsistencyTaskInstance;
+import com.consistency.model.TaskTemplate;
+import com.consistency.utils.ReflectTools;
+import com.google.common.hash.Hashing;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.expression.MethodBasedEvaluationContext;
+import org.springframework.core.DefaultParameterNameDiscoverer;
+import org.springframework.core.ParameterNameDiscoverer;
+import org.springframework.expression.EvaluationContext;
+import org.springframework.stereotype.Component;
+import org.springframework.util.ObjectUtils;
+import org.springframework.util.StringUtils;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 一致性任务实例工厂
+ * 根据任务模板以及本次调用的参数创建任务实例，切面和编程式提交任务的TaskSubmitter都通过该类创建任务实例
+ *
+ * @author xiayang
+ **/
+@Slf4j
+@Component
+public class TaskInstanceFactory implements InitializingBean {
+
+    /**
+     * 缓存生成任务分片key的对象实例
+     */
+    private static Object cacheGenerateShardKeyClassInstance = null;
+    /**
+     * 缓存生成任务分片key的方法
+     */
+    private static Method cacheGenerateShardKeyMethod = null;
+    /**
+     * 雪花算法workId
+     */
+    private static String workId;
+    /**
+     * 用于在幂等键表达式中通过参数名称引用方法入参
+     */
+    private static final ParameterNameDiscoverer PARAMETER_NAME_DISCOVERER = new DefaultParameterNameDiscoverer();
+
+    /**
+     * 框架配置
+     */
+    @Autowired
+    private TendConsistencyConfiguration tendConsistencyConfiguration;
+    /**
+     * 选举处理器
+     */
+    @Autowired
+    private PeerElectionHandler peerElectionHandler;
+    /**
+     * 任务参数编解码管理器
+     */
+    @Autowired
+    private TaskParameterCodecManager taskParameterCodecManager;
+    /**
+     * 一致性任务模板注册表
+     */
+    @Autowired
+    private TaskTemplateRegistry taskTemplateRegistry;
+
+    @Override
+    public void afterPropertiesSet() {
+        // 设置框架自带的分片键生成器的序列号分段数
+        SnowflakeShardingKeyGenerator.getInstance().setStripes(tendConsistencyConfiguration.getSnowflakeStripes());
+    }
+
+    /**
+     * 根据任务模板创建任务实例
+     *
+     * @param template 任务模板
+     * @param args     本次调用的参数
+     * @return 一致性任务实例
+     */
+    public ConsistencyTaskInstance create(TaskTemplate template, Object[] args) {
+        // 根据模板创建任务实例 同时设置好执行时间
+        ConsistencyTaskInstance instance = template.newTaskInstance(System.currentTimeMillis());
+        // 计算幂等键
+        if (template.getIdempotentKeyExpression() != null) {
+            instance.setIdempotentKey(evaluateIdempotentKey(template, args));
+        }
+        // 设置分片key 分库模式下有幂等键的任务根据幂等键计算分片key，相同幂等键的任务路由到同一个库，唯一索引才能去重
+        if (!tendConsistencyConfiguration.getTaskSharded()) {
+            instance.setShardKey(0L);
+        } else if (instance.getIdempotentKey() != null) {
+            instance.setShardKey(idempotentShardKey(instance.getIdempotentKey()));
+        } else {
+            instance.setShardKey(generateShardKey());
+        }
+        // 使用配置的编解码器编码本次调用的参数
+        taskParameterCodecManager.encode(instance, args, template.getMethod());
+        return instance;
+    }
+
+    /**
+     * 根据方法入参计算幂等键 表达式的值为空时不进行幂等校验
+     *
+     * @param template 任务模板
+     * @param args     本次调用的参数
+     * @return 幂等键 格式：taskId:幂等键表达式的值
+     */
+    private String evaluateIdempotentKey(TaskTemplate template, Object[] args) {
+        EvaluationContext context = new MethodBasedEvaluationContext(null, template.getMethod(), args, PARAMETER_NAME_DISCOVERER);
+        Object value = template.getIdempotentKeyExpression().getValue(context);
+        if (ObjectUtils.isEmpty(value)) {
+            log.warn("[一致性任务框架] 任务 [{}] 的幂等键表达式的值为空，不进行幂等校验", template.getTaskId());
+            return null;
+        }
+        return template.getTaskId() + ":" + value;
+    }
+
+    /**
+     * 根据幂等键计算分片键 相同的幂等键总是得到相同的非负分片键
+     *
+     * @param idempotentKey 幂等键
+     * @return 分片键
+     */
+    private Long idempotentShardKey(String idempotentKey) {
+        return Hashing.murmur3_128().hashString(idempotentKey, StandardCharsets.UTF_8).asLong() & Long.MAX_VALUE;
+    }
+
+    /**
+     * 根据taskId对应的任务模板创建任务实例 可以配合TaskStoreService.submitAll批量提交任务
+     *
+     * @param taskId 任务模板的id 即@ConsistencyTask注解中的id，如果注解中没有指定则为方法签名
+     * @param args   任务方法的入参
+     * @return 一致性任务实例
+     */
+    public ConsistencyTaskInstance createByTaskId(String taskId, Object... args) {
+        return create(taskTemplateRegistry.getTemplate(taskId), args);
+    }
+
+    /**
+     * 获取分片键
+     *
+     * @return 生成分片键
+     */
+    private Long generateShardKey() {
+        SnowflakeShardingKeyGenerator instance = SnowflakeShardingKeyGenerator.getInstance();
+        if (!ObjectUtils.isEmpty(peerElectionHandler.getConsistencyTaskShardingContext()) && StringUtils.isEmpty(workId)) {
+            if (!ObjectUtils.isEmpty(peerElectionHandler.getConsistencyTaskShardingContext().getCurrentPeerId())) {
+                workId = peerElectionHandler.getConsistencyTaskShardingContext().getCurrentPeerId();
+                instance.setWorkerId(workId);
+            }
+        }
+
+        // 如果配置文件中，没有配置自定义任务分片键生成类，则使用框架自带的
+        if (StringUtils.isEmpty(tendConsistencyConfiguration.getShardingKeyGeneratorClassName())) {
+            return instance.generateShardKey();
+        }
+        // 如果生成任务CACHE_GENERATE_SHARD_KEY_METHOD的方法存在，就直接调用该方法
+        if (!ObjectUtils.isEmpty(cacheGenerateShardKeyMethod)
+                && !ObjectUtils.isEmpty(cacheGenerateShardKeyClassInstance)) {
+            try {
+                return (Long) cacheGenerateShardKeyMethod.invoke(cacheGenerateShardKeyClassInstance);
+            } catch (IllegalAccessException | InvocationTargetException e) {
+                log.error("使用自定义类生成任务分片键时，发生异常", e);
+            }
+        }
+        // 获取用户自定义的任务分片键的class
+        Class<?> shardingKeyGeneratorClass = getUserCustomShardingKeyGenerator();
+        if (!ObjectUtils.isEmpty(shardingKeyGeneratorClass)) {
+            String methodName = "generateShardKey";
+            Method generateShardKeyMethod = ReflectUtil.getMethod(shardingKeyGeneratorClass, methodName);
+            try {
+                Constructor<?> constructor = ReflectUtil.getConstructor(shardingKeyGeneratorClass);
+                cacheGenerateShardKeyClassInstance = constructor.newInstance();
+                cacheGenerateShardKeyMethod = generateShardKeyMethod;
+                return (Long) cacheGenerateShardKeyMethod.invoke(cacheGenerateShardKeyClassInstance);
+            } catch (IllegalAccessException | InvocationTargetException | InstantiationException e) {
+                log.error("使用自定义类生成任务分片键时，发生异常", e);
+                // 如果指定的自定义分片键生成报错，使用框架自带的
+                return instance.generateShardKey();
+            }
+        }
+        return instance.generateShardKey();
+    }
+
+    /**
+     * 获取ShardingKeyGenerator的实现类
+     */
+    private Class<?> getUserCustomShardingKeyGenerator() {
+        return ReflectTools.getClassByName(tendConsistencyConfiguration.getShardingKeyGeneratorClassName());
+    }
+
+}
@@ -0,0 +1,249 @@
+package com.consistency.template;
+
+import com.consistency.annotation.ConsistencyTask;
+import com.consistency.enums.PerformanceEnum;
+import com.consistency.enums.TransactionModeEnum;
+import com.consistency.exceptions.ConsistencyException;
+import com.consistency.model.TaskTemplate;
+import com.consistency.utils.ReflectTools;
+import com.consistency.utils.TimeUtils;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.core.MethodClassKey;
+import org.springframework.core.annotation.AnnotationUtils;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * 一致性任务模板注册表
+ * 启动时扫描所有标注了@ConsistencyTask注解的方法，预先构造好任务模板，切面拦截时直接根据方法获取模板
+ *
+ * @author xiayang
+ **/
+@Slf4j
+@Component
+public class TaskTemplateRegistry implements BeanPostProcessor {
+
+    /**
+     * 幂等键表达式的解析器
+     */
+    private static final SpelExpressionParser EXPRESSION_PARSER = new SpelExpressionParser();
+
+    /**
+     * 任务模板 key为 方法 + 目标类
+     */
+    private final Map<MethodClassKey, TaskTemplate> templates = new ConcurrentHashMap<>(64);
+    /**
+     * 任务模板 key为taskId 供编程式提交任务时使用
+     */
+    private final Map<String, TaskTemplate> templatesByTaskId = new ConcurrentHashMap<>(64);
+    /**
+     * 被多个不同方法使用的taskId 这些taskId无法用来编程式提交任务
+     */
+    private final Set<String> ambiguousTaskIds = ConcurrentHashMap.newKeySet();
+    /**
+     * 任务模板 key为方法签名 调度器从数据库中查询出的任务实例只有方法签名，执行时根据方法签名获取注解中的配置
+     */
+    private final Map<String, TaskTemplate> templatesByMethodSignName = new ConcurrentHashMap<>(64);
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) throws BeansException {
+        Class<?> targetClass = AopUtils.getTargetClass(bean);
+        if (!AnnotationUtils.isCandidateClass(targetClass, ConsistencyTask.class)) {
+            return bean;
+        }
+        for (Method method : targetClass.getMethods()) {
+            ConsistencyTask task = method.getAnnotation(ConsistencyTask.class);
+            if (task == null) {
+                continue;
+            }
+            TaskTemplate template = buildTemplate(method, targetClass, task);
+            templates.put(new MethodClassKey(method, targetClass), template);
+            register(template);
+            log.info("[一致性任务框架] 注册任务模板 {}", template.getMethodSignName());
+        }
+        return bean;
+    }
+
+    /**
+     * 获取任务模板 启动时没有扫描到的方法（如通过接口代理的方法），首次调用时构造并缓存
+     *
+     * @param method      被拦截的方法
+     * @param targetClass 目标类
+     * @param task        一致性任务注解信息
+     * @return 任务模板
+     */
+    public TaskTemplate getTemplate(Method method, Class<?> targetClass, ConsistencyTask task) {
+        MethodClassKey key = new MethodClassKey(method, targetClass);
+        TaskTemplate template = templates.get(key);
+        if (template == null) {
+            template = templates.computeIfAbsent(key, k -> buildTemplate(method, targetClass, task));
+            register(template);
+        }
+        return template;
+    }
+
+    /**
+     * 根据taskId获取任务模板
+     *
+     * @param taskId 注解中的任务id 如果注解中没有指定则为方法签名
+     * @return 任务模板
+     */
+    public TaskTemplate getTemplate(String taskId) {
+        if (ambiguousTaskIds.contains(taskId)) {
+            throw new ConsistencyException(String.format("taskId [%s] 被多个方法使用，无法确定要提交的任务，请在@ConsistencyTask注解中为这些方法指定不同的id", taskId));
+        }
+        TaskTemplate template = templatesByTaskId.get(taskId);
+        if (template == null) {
+            throw new ConsistencyException(String.format("未找到taskId为 [%s] 的任务模板", taskId));
+        }
+        return template;
+    }
+
+    /**
+     * 获取任务所属的隔离舱
+     *
+     * @param methodSignName 方法签名
+     * @return 隔离舱名称 没有指定时为空字符串
+     */
+    public String getBulkhead(String methodSignName) {
+        return getAttribute(methodSignName, TaskTemplate::getBulkhead, "");
+    }
+
+    /**
+     * 获取任务方法的执行超时时间
+     *
+     * @param methodSignName 方法签名
+     * @return 执行超时时间 单位毫秒 没有指定时为0
+     */
+    public long getTimeoutMs(String methodSignName) {
+        return getAttribute(methodSignName, TaskTemplate::getTimeoutMs, 0L);
+    }
+
+    /**
+     * 获取任务的重试策略id
+     *
+     * @param methodSignName 方法签名
+     * @return 重试策略id 没有指定时为空字符串
+     */
+    public String getRetryPolicy(String methodSignName) {
+        return getAttribute(methodSignName, TaskTemplate::getRetryPolicy, "");
+    }
+
+    /**
+     * 获取任务最多执行的次数
+     *
+     * @param methodSignName 方法签名
+     * @return 最多执行的次数 没有指定时为0
+     */
+    public int getMaxAttempts(String methodSignName) {
+        return getAttribute(methodSignName, TaskTemplate::getMaxAttempts, 0);
+    }
+
+    /**
+     * 获取任务每秒最多执行的次数
+     *
+     * @param methodSignName 方法签名
+     * @return 每秒最多执行的次数 没有指定时为0
+     */
+    public double getRateLimit(String methodSignName) {
+        return getAttribute(methodSignName, TaskTemplate::getRateLimit, 0D);
+    }
+
+    /**
+     * 获取执行任务时的事务模式
+     *
+     * @param methodSignName 方法签名
+     * @return 事务模式 没有注册的任务方法为REQUIRED
+     */
+    public TransactionModeEnum getTransactionMode(String methodSignName) {
+        return getAttribute(methodSignName, TaskTemplate::getTransactionMode, TransactionModeEnum.REQUIRED);
+    }
+
+    /**
+     * 根据方法签名获取任务模板中的属性
+     *
+     * @param methodSignName 方法签名
+     * @param getter         获取属性的方法
+     * @param defaultValue   任务方法没有注册时的默认值
+     * @param <T>            属性的类型
+     * @return 属性值
+     */
+    private <T> T getAttribute(String methodSignName, Function<TaskTemplate, T> getter, T defaultValue) {
+        TaskTemplate template = methodSignName == null ? null : templatesByMethodSignName.get(methodSignName);
+        return template == null ? defaultValue : getter.apply(template);
+    }
+
+    /**
+     * 注册任务模板 启动时扫描到的方法以及首次调用时才构造模板的方法都通过这里注册
+     *
+     * @param template 任务模板
+     */
+    private void register(TaskTemplate template) {
+        templatesByMethodSignName.put(template.getMethodSignName(), template);
+        registerTaskId(template);
+    }
+
+    /**
+     * 按照taskId注册任务模板 同一个taskId被不同的方法使用时标记为不可用
+     *
+     * @param template 任务模板
+     */
+    private void registerTaskId(TaskTemplate template) {
+        TaskTemplate existTemplate = templatesByTaskId.putIfAbsent(template.getTaskId(), template);
+        if (existTemplate != null && !existTemplate.getMethodSignName().equals(template.getMethodSignName())) {
+            log.warn("[一致性任务框架] taskId [{}] 同时被 {} 和 {} 使用，无法通过该taskId编程式提交任务",
+                    template.getTaskId(), existTemplate.getMethodSignName(), template.getMethodSignName());
+            ambiguousTaskIds.add(template.getTaskId());
+        }
+    }
+
+    /**
+     * 根据注解以及方法信息构造任务模板
+     *
+     * @param method      被注解的方法
+     * @param targetClass 目标类
+     * @param task        一致性任务注解信息
+     * @return 任务模板
+     */
+    private TaskTemplate buildTemplate(Method method, Class<?> targetClass, ConsistencyTask task) {
+        Class<?>[] parameterClasses = method.getParameterTypes();
+        // 获取方法的全限定名称 格式：类路径#方法名(参数1的类型,参数2的类型,...参数N的类型)
+        String methodSignName = ReflectTools.getMethodFullyQualifiedName(targetClass, method.getName(), parameterClasses);
+        boolean isSchedule = PerformanceEnum.PERFORMANCE_SCHEDULE.equals(task.performanceWay());
+        return TaskTemplate.builder()
+                .method(method)
+                .targetClass(targetClass)
+                .taskId(StringUtils.isEmpty(task.id()) ? methodSignName : task.id())
+                .methodSignName(methodSignName)
+                .methodName(method.getName())
+                .parameterTypes(ReflectTools.getClassNames(parameterClasses))
+                .performanceWay(task.performanceWay().getCode())
+                .threadWay(task.threadWay().getCode())
+                .executeIntervalSec(task.executeIntervalSec())
+                .delayTime(task.delayTime())
+                .delayTimeMillis(isSchedule ? TimeUtils.secToMill(task.delayTime()) : 0L)
+                .alertExpression(StringUtils.isEmpty(task.alertExpression()) ? "" : task.alertExpression())
+                .alertActionBeanName(StringUtils.isEmpty(task.alertActionBeanName()) ? "" : task.alertActionBeanName())
+                .fallbackClassName(ReflectTools.getFullyQualifiedClassName(task.fallbackClass()))
+                .idempotentKeyExpression(StringUtils.isEmpty(task.idempotentKey()) ? null : EXPRESSION_PARSER.parseExpression(task.idempotentKey()))
+                .bulkhead(task.bulkhead())
+                .timeoutMs(task.timeoutMs())
+                .retryPolicy(task.retryPolicy())
+                .maxAttempts(task.maxAttempts())
+                .rateLimit(task.rateLimit())
+                .priority(task.priority().getCode())
+                .transactionMode(task.transactionMode())
+                .build();
+    }
+
+}
@@ -0,0 +1,179 @@
+package com.consistency.utils;
+
+import com.consistency.model.ConsistencyTaskInstance;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.expression.EvaluationContext;
+import org.springframework.expression.Expression;
+import org.springframework.expression.spel.SpelCompilerMode;
+import org.springframework.expression.spel.SpelParserConfiguration;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
+import org.springframework.expression.spel.support.SimpleEvaluationContext;
+import org.springframework.util.StringUtils;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 告警规则的缓存 每个不同的告警表达式只解析一次
+ * 只由executeTimes比较条件组成的表达式(如 executeTimes > 1 && executeTimes < 5)直接编译为Java的Predicate，
+ * 其他表达式以任务实例为根对象解析为SpEL，并使用IMMEDIATE模式编译为字节码，求值时使用共享的只读上下文，
+ * 任务大量失败时告警规则的判断不再需要每次重新解析表达式。
+ *
+ * @author xiayang
+ **/
+@Slf4j
+public class AlertRuleCache {
+
+    /**
+     * 缓存的告警规则数上限 告警表达式来自注解 正常情况下不会超过
+     */
+    private static final int MAX_CACHE_SIZE = 1024;
+    /**
+     * executeTimes比较条件 如 executeTimes >= 3
+     */
+    private static final Pattern EXECUTE_TIMES_CLAUSE = Pattern.compile("^\\s*executeTimes\\s*(>=|<=|==|!=|>|<)\\s*(-?\\d+)\\s*$");
+    /**
+     * 编译模式的SpEL解析器
+     */
+    private static final SpelExpressionParser COMPILED_PARSER = new SpelExpressionParser(
+            new SpelParserConfiguration(SpelCompilerMode.IMMEDIATE, AlertRuleCache.class.getClassLoader()));
+    /**
+     * 解释模式的SpEL解析器 表达式无法编译时使用
+     */
+    private static final SpelExpressionParser INTERPRETED_PARSER = new SpelExpressionParser();
+    /**
+     * 之前版本的告警表达式中引用任务实例的变量名 改为引用根对象
+     */
+    private static final String TASK_INSTANCE_VARIABLE = "#taskInstance.";
+    /**
+     * 共享的只读求值上下文 不保存任何状态 可以被多个线程同时使用
+     */
+    private static final EvaluationContext EVALUATION_CONTEXT = SimpleEvaluationContext.forReadOnlyDataBinding()
+            .withInstanceMethods()
+            .build();
+    /**
+     * 告警规则 key为告警表达式
+     */
+    private static final Map<String, Predicate<ConsistencyTaskInstance>> RULES = new ConcurrentHashMap<>(64);
+
+    private AlertRuleCache() {
+    }
+
+    /**
+     * 任务实例是否满足告警表达式
+     *
+     * @param alertExpression 告警表达式
+     * @param taskInstance    任务实例信息
+     * @return 是否满足 表达式解析或者求值失败时返回false
+     */
+    public static boolean matches(String alertExpression, ConsistencyTaskInstance taskInstance) {
+        try {
+            Predicate<ConsistencyTaskInstance> rule = RULES.get(alertExpression);
+            if (rule == null) {
+                rule = compile(alertExpression);
+                if (RULES.size() < MAX_CACHE_SIZE) {
+                    RULES.put(alertExpression, rule);
+                }
+            }
+            return rule.test(taskInstance);
+        } catch (Exception e) {
+            log.error("解析表达式{}时，发生异常", alertExpression, e);
+            return false;
+        }
+    }
+
+    /**
+     * 将告警表达式编译为告警规则
+     *
+     * @param alertExpression 告警表达式
+     * @return 告警规则
+     */
+    private static Predicate<ConsistencyTaskInstance> compile(String alertExpression) {
+        Predicate<ConsistencyTaskInstance> rule = compileExecuteTimesRule(alertExpression);
+        if (rule != null) {
+            return rule;
+        }
+        return new SpelRule(alertExpression);
+    }
+
+    /**
+     * 将只由executeTimes比较条件以及&&或者||组成的表达式编译为Predicate 同时包含&&和||的表达式不处理
+     *
+     * @param alertExpression 告警表达式
+     * @return 告警规则 不是这类表达式时返回null
+     */
+    private static Predicate<ConsistencyTaskInstance> compileExecuteTimesRule(String alertExpression) {
+        boolean and = alertExpression.contains("&&");
+        boolean or = alertExpression.contains("||");
+        if (and && or) {
+            return null;
+        }
+        Predicate<ConsistencyTaskInstance> rule = null;
+        for (String clause : alertExpression.split(and ? "&&" : "\\|\\|")) {
+            Matcher matcher = EXECUTE_TIMES_CLAUSE.matcher(clause);
+            if (!matcher.matches()) {
+                return null;
+            }
+            Predicate<ConsistencyTaskInstance> clauseRule = compileClause(matcher.group(1), Integer.parseInt(matcher.group(2)));
+            rule = rule == null ? clauseRule : and ? rule.and(clauseRule) : rule.or(clauseRule);
+        }
+        return rule;
+    }
+
+    private static Predicate<ConsistencyTaskInstance> compileClause(String operator, int value) {
+        switch (operator) {
+            case ">=":
+                return taskInstance -> taskInstance.getExecuteTimes() >= value;
+            case "<=":
+                return taskInstance -> taskInstance.getExecuteTimes() <= value;
+            case "==":
+                return taskInstance -> taskInstance.getExecuteTimes() == value;
+            case "!=":
+                return taskInstance -> taskInstance.getExecuteTimes() != value;
+            case ">":
+                return taskInstance -> taskInstance.getExecuteTimes() > value;
+            default:
+                return taskInstance -> taskInstance.getExecuteTimes() < value;
+        }
+    }
+
+    /**
+     * 以任务实例为根对象的SpEL告警规则 表达式中可以直接访问任务实例的属性 如 executeTimes、taskId
+     */
+    private static class SpelRule implements Predicate<ConsistencyTaskInstance> {
+
+        private final String alertExpression;
+
+        private volatile Expression expression;
+
+        /**
+         * 是否已经改为解释模式
+         */
+        private volatile boolean interpreted;
+
+        SpelRule(String alertExpression) {
+            this.alertExpression = StringUtils.replace(alertExpression, TASK_INSTANCE_VARIABLE, "#root.");
+            this.expression = COMPILED_PARSER.parseExpression(this.alertExpression);
+        }
+
+        @Override
+        public boolean test(ConsistencyTaskInstance taskInstance) {
+            try {
+                return Boolean.TRUE.equals(expression.getValue(EVALUATION_CONTEXT, taskInstance, Boolean.class));
+            } catch (RuntimeException e) {
+                if (interpreted) {
+                    throw e;
+                }
+                // IMMEDIATE模式下表达式编译失败时直接抛出异常 改为使用解释模式
+                log.warn("[一致性任务框架] 告警表达式无法编译，改为使用解释模式 {}", alertExpression, e);
+                expression = INTERPRETED_PARSER.parseExpression(alertExpression);
+                interpreted = true;
+                return Boolean.TRUE.equals(expression.getValue(EVALUATION_CONTEXT, taskInstance, Boolean.class));
+            }
+        }
+    }
+
+}
@@ -0,0 +1,61 @@
+package com.consistency.utils;
+
+import com.consistency.exceptions.ConsistencyException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * 字符串压缩工具 压缩结果使用Base64编码后以字符串形式保存
+ *
+ * @author xiayang
+ */
+public class CompressUtils {
+
+    /**
+     * 使用Deflate压缩字符串
+     *
+     * @param text 要压缩的字符串
+     * @return Base64编码后的压缩结果
+     */
+    public static String deflate(String text) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(text.length() / 2);
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try (DeflaterOutputStream deflaterOut = new DeflaterOutputStream(out, deflater)) {
+            deflaterOut.write(text.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new ConsistencyException(e);
+        } finally {
+            deflater.end();
+        }
+        return Base64.getEncoder().encodeToString(out.toByteArray());
+    }
+
+    /**
+     * 解压使用deflate方法压缩的字符串
+     *
+     * @param compressed Base64编码后的压缩结果
+     * @return 原始字符串
+     */
+    public static String inflate(String compressed) {
+        byte[] bytes = Base64.getDecoder().decode(compressed);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length * 4);
+        try (InflaterInputStream inflaterIn = new InflaterInputStream(new ByteArrayInputStream(bytes))) {
+            byte[] buffer = new byte[1024];
+            int len;
+            while ((len = inflaterIn.read(buffer)) > 0) {
+                out.write(buffer, 0, len);
+            }
+        } catch (IOException e) {
+            throw new ConsistencyException(e);
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+}
@@ -4,6 +4,8 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.util.ObjectUtils;
 import org.springframework.util.StringUtils;
 
+import java.util.Map;
+
 /**
  * 默认值工具类
  *
@@ -68,5 +70,33 @@ public class DefaultValueUtils {
         return value;
     }
 
+    /**
+     * 获取参数的值
+     *
+     * @param value        给定的值
+     * @param defaultValue 默认值
+     * @return 参数值
+     */
+    public static Double getOrDefault(Double value, Double defaultValue) {
+        if (ObjectUtils.isEmpty(value)) {
+            return defaultValue;
+        }
+        return value;
+    }
+
+    /**
+     * 获取参数的值
+     *
+     * @param value        给定的值
+     * @param defaultValue 默认值
+     * @return 参数值
+     */
+    public static <K, V> Map<K, V> getOrDefault(Map<K, V> value, Map<K, V> defaultValue) {
+        if (ObjectUtils.isEmpty(value)) {
+            return defaultValue;
+        }
+        return value;
+    }
+
 
 }
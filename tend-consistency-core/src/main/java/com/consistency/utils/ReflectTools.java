@@ -12,7 +12,6 @@ import org.springframework.cglib.core.ReflectUtils;
 import org.springframework.util.ObjectUtils;
 
 import java.util.HashMap;
-import java.util.StringJoiner;
 
 /**
  * 反射工具类
@@ -114,15 +113,24 @@ public class ReflectTools {
      */
     public static String getArgsClassNames(Signature signature) {
         MethodSignature methodSignature = (MethodSignature) signature;
-        Class<?>[] parameterTypes = methodSignature.getParameterTypes();
-        StringBuilder parameterStrTypes = new StringBuilder();
-        for (int i = 0; i < parameterTypes.length; i++) {
-            parameterStrTypes.append(parameterTypes[i].getName());
-            if (parameterTypes.length != (i + 1)) {
-                parameterStrTypes.append(",");
+        return getClassNames(methodSignature.getParameterTypes());
+    }
+
+    /**
+     * 获取类名称数组
+     *
+     * @param classes 类对象数组
+     * @return 类名称字符串 (多个用逗号分隔)
+     */
+    public static String getClassNames(Class<?>[] classes) {
+        StringBuilder classNames = new StringBuilder();
+        for (int i = 0; i < classes.length; i++) {
+            classNames.append(classes[i].getName());
+            if (classes.length != (i + 1)) {
+                classNames.append(",");
             }
         }
-        return parameterStrTypes.toString();
+        return classNames.toString();
     }
 
     /**
@@ -133,21 +141,19 @@ public class ReflectTools {
      * @return 被拦截方法的全限定名称
      */
     public static String getTargetMethodFullyQualifiedName(JoinPoint point, Class<?>[] argsClazz) {
-        StringJoiner methodSignNameJoiner = new StringJoiner("", "", "");
-        methodSignNameJoiner
-                .add(point.getTarget().getClass().getName())
-                .add("#")
-                .add(point.getSignature().getName());
-        methodSignNameJoiner.add("(");
-        for (int i = 0; i < argsClazz.length; i++) {
-            String className = argsClazz[i].getName();
-            methodSignNameJoiner.add(className);
-            if (argsClazz.length != (i + 1)) {
-                methodSignNameJoiner.add(",");
-            }
-        }
-        methodSignNameJoiner.add(")");
-        return methodSignNameJoiner.toString();
+        return getMethodFullyQualifiedName(point.getTarget().getClass(), point.getSignature().getName(), argsClazz);
+    }
+
+    /**
+     * 获取方法的全限定名称 格式：类路径#方法名(参数1的类型,参数2的类型,...参数N的类型)
+     *
+     * @param targetClass 方法所在的类
+     * @param methodName  方法名称
+     * @param argsClazz   入参的Class对象
+     * @return 方法的全限定名称
+     */
+    public static String getMethodFullyQualifiedName(Class<?> targetClass, String methodName, Class<?>[] argsClazz) {
+        return targetClass.getName() + "#" + methodName + "(" + getClassNames(argsClazz) + ")";
     }
 
     /**
@@ -0,0 +1,56 @@
+package com.consistency.utils;
+
+import com.consistency.exceptions.ConsistencyException;
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * 虚拟线程工具类
+ * 框架需要兼容JDK8，所以通过反射调用JDK21的虚拟线程API，运行在低版本JDK上时返回不支持
+ *
+ * @author xiayang
+ **/
+@Slf4j
+public class VirtualThreadUtils {
+
+    /**
+     * 当前JDK是否支持虚拟线程
+     *
+     * @return 是否支持
+     */
+    public static boolean isSupported() {
+        try {
+            Thread.class.getMethod("ofVirtual");
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 创建每个任务一个虚拟线程的线程池 等价于 Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(prefix, 1).factory())
+     *
+     * @param threadNamePrefix 线程名称前缀
+     * @return 线程池
+     * @throws ConsistencyException 当前JDK不支持虚拟线程 调用前应先通过isSupported检查
+     */
+    public static ExecutorService newVirtualThreadPerTaskExecutor(String threadNamePrefix) {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            // 通过公开的Thread.Builder接口获取方法 具体的实现类不是public的
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, threadNamePrefix, 1L);
+            ThreadFactory threadFactory = (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+            Method newThreadPerTaskExecutor = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+            return (ExecutorService) newThreadPerTaskExecutor.invoke(null, threadFactory);
+        } catch (ReflectiveOperationException e) {
+            log.error("[一致性任务框架] 创建虚拟线程池时，发生异常 java.version={}", System.getProperty("java.version"), e);
+            throw new ConsistencyException(e);
+        }
+    }
+
+}
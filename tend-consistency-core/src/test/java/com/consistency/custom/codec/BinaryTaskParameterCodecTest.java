@@ -0,0 +1,142 @@
+package com.consistency.custom.codec;
+
+import lombok.Data;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Method;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 二进制任务参数编解码器的测试 编码结果会持久化到任务表中 格式变更时需要保证已有的任务仍然可以解码
+ *
+ * @author xiayang
+ **/
+class BinaryTaskParameterCodecTest {
+
+    private final BinaryTaskParameterCodec codec = new BinaryTaskParameterCodec();
+
+    @Test
+    void roundTrip() throws Exception {
+        Method method = getMethod("submitOrders", List.class, int.class, String.class);
+        OrderInfoDTO order = newOrder(1);
+        OrderInfoDTO emptyOrder = new OrderInfoDTO();
+        Object[] args = new Object[]{Arrays.asList(order, emptyOrder, null), 3, null};
+
+        Object[] decoded = codec.decode(codec.encode(args, method), method);
+
+        assertEquals(3, decoded.length);
+        assertEquals(args[0], decoded[0]);
+        assertEquals(3, decoded[1]);
+        assertNull(decoded[2]);
+    }
+
+    @Test
+    void encodedSizeIsSmallerThanJson() throws Exception {
+        Method method = getMethod("submitOrders", List.class, int.class, String.class);
+        List<OrderInfoDTO> orders = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            OrderInfoDTO order = newOrder(i);
+            // 部分字段为null json编码时会省略
+            if (i % 2 == 0) {
+                order.setRemark(null);
+                order.setItems(null);
+            }
+            orders.add(order);
+        }
+        Object[] args = new Object[]{orders, 3, "remark"};
+
+        String binary = codec.encode(args, method);
+        String json = new JsonTaskParameterCodec().encode(args, method);
+
+        assertTrue(binary.length() < json.length(),
+                String.format("binary length %d should be smaller than json length %d", binary.length(), json.length()));
+        // 字段结构每个类只写入一次
+        String bytes = new String(Base64.getDecoder().decode(binary), StandardCharsets.ISO_8859_1);
+        assertEquals(bytes.indexOf("orderNo"), bytes.lastIndexOf("orderNo"));
+    }
+
+    @Test
+    void decodeAfterFieldChange() throws Exception {
+        Method oldMethod = getMethod("submitOrders", List.class, int.class, String.class);
+        Method newMethod = getMethod("submitNewOrders", List.class, int.class, String.class);
+        OrderInfoDTO order = newOrder(7);
+
+        Object[] decoded = codec.decode(codec.encode(new Object[]{Arrays.asList(order), 1, "remark"}, oldMethod), newMethod);
+
+        NewOrderInfoDTO newOrder = (NewOrderInfoDTO) ((List<?>) decoded[0]).get(0);
+        assertEquals(order.getOrderNo(), newOrder.getOrderNo());
+        assertEquals(order.getAmount(), newOrder.getAmount());
+        assertEquals(order.getItems(), newOrder.getItems());
+        // 类型发生变更的字段和新增的字段保持默认值
+        assertEquals(-1L, newOrder.getUserId());
+        assertEquals("default", newOrder.getChannel());
+        assertEquals("remark", decoded[2]);
+    }
+
+    private OrderInfoDTO newOrder(int index) {
+        OrderInfoDTO order = new OrderInfoDTO();
+        order.setOrderNo("ORDER" + index);
+        order.setUserId(10000 + index);
+        order.setAmount(new BigDecimal("99.90"));
+        order.setCreateTime(new Date(1600000000000L + index));
+        order.setRemark("remark" + index);
+        order.setItems(Arrays.asList("item" + index, "gift"));
+        return order;
+    }
+
+    private Method getMethod(String name, Class<?>... parameterTypes) throws NoSuchMethodException {
+        return BinaryTaskParameterCodecTest.class.getDeclaredMethod(name, parameterTypes);
+    }
+
+    @SuppressWarnings("unused")
+    private void submitOrders(List<OrderInfoDTO> orders, int retryTimes, String remark) {
+    }
+
+    @SuppressWarnings("unused")
+    private void submitNewOrders(List<NewOrderInfoDTO> orders, int retryTimes, String remark) {
+    }
+
+    @Data
+    static class OrderInfoDTO {
+
+        private String orderNo;
+
+        private Integer userId;
+
+        private BigDecimal amount;
+
+        private Date createTime;
+
+        private String remark;
+
+        private List<String> items;
+    }
+
+    /**
+     * 字段变更后的订单 删除了createTime和remark userId的类型由Integer变更为Long 新增了channel
+     */
+    @Data
+    static class NewOrderInfoDTO {
+
+        private String orderNo;
+
+        private Long userId = -1L;
+
+        private BigDecimal amount;
+
+        private List<String> items;
+
+        private String channel = "default";
+    }
+
+}